@@ -71,8 +71,10 @@ import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.SettingsFilter;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.PageCacheRecycler;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.common.xcontent.NamedXContentRegistry;
 import org.elasticsearch.env.Environment;
@@ -96,6 +98,8 @@ import org.elasticsearch.script.ScriptService;
 import org.elasticsearch.search.internal.ScrollContext;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.tasks.Task;
+import org.elasticsearch.threadpool.ExecutorBuilder;
+import org.elasticsearch.threadpool.FixedExecutorBuilder;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.RemoteClusterService;
 import org.elasticsearch.transport.Transport;
@@ -110,10 +114,18 @@ import org.elasticsearch.transport.TransportResponseHandler;
 import org.elasticsearch.transport.TransportService;
 import org.elasticsearch.watcher.ResourceWatcherService;
 
+import com.floragunn.searchguard.action.cachestats.CacheStatsAction;
+import com.floragunn.searchguard.action.cachestats.TransportCacheStatsAction;
+import com.floragunn.searchguard.action.clientblocks.ClientBlocksAction;
+import com.floragunn.searchguard.action.clientblocks.TransportClientBlocksAction;
 import com.floragunn.searchguard.action.configupdate.ConfigUpdateAction;
 import com.floragunn.searchguard.action.configupdate.TransportConfigUpdateAction;
 import com.floragunn.searchguard.action.licenseinfo.LicenseInfoAction;
 import com.floragunn.searchguard.action.licenseinfo.TransportLicenseInfoAction;
+import com.floragunn.searchguard.action.sharedcache.SharedCacheEntriesAction;
+import com.floragunn.searchguard.action.sharedcache.TransportSharedCacheEntriesAction;
+import com.floragunn.searchguard.action.usercache.InvalidateUserCacheAction;
+import com.floragunn.searchguard.action.usercache.TransportInvalidateUserCacheAction;
 import com.floragunn.searchguard.action.whoami.TransportWhoAmIAction;
 import com.floragunn.searchguard.action.whoami.WhoAmIAction;
 import com.floragunn.searchguard.auditlog.AuditLog;
@@ -121,6 +133,8 @@ import com.floragunn.searchguard.auditlog.AuditLog.Origin;
 import com.floragunn.searchguard.auditlog.AuditLogSslExceptionHandler;
 import com.floragunn.searchguard.auditlog.NullAuditLog;
 import com.floragunn.searchguard.auth.BackendRegistry;
+import com.floragunn.searchguard.auth.ClusterSharedAuthenticationCache;
+import com.floragunn.searchguard.auth.blocking.ClientBlockPropagator;
 import com.floragunn.searchguard.auth.internal.InternalAuthenticationBackend;
 import com.floragunn.searchguard.compliance.ComplianceConfig;
 import com.floragunn.searchguard.compliance.ComplianceIndexingOperationListener;
@@ -141,7 +155,9 @@ import com.floragunn.searchguard.privileges.PrivilegesEvaluator;
 import com.floragunn.searchguard.privileges.PrivilegesInterceptor;
 import com.floragunn.searchguard.resolver.IndexResolverReplacer;
 import com.floragunn.searchguard.rest.KibanaInfoAction;
+import com.floragunn.searchguard.rest.SearchGuardCacheStatsAction;
 import com.floragunn.searchguard.rest.SearchGuardHealthAction;
+import com.floragunn.searchguard.rest.SearchGuardUserCacheAction;
 import com.floragunn.searchguard.rest.SearchGuardInfoAction;
 import com.floragunn.searchguard.rest.SearchGuardLicenseAction;
 import com.floragunn.searchguard.rest.TenantInfoAction;
@@ -153,9 +169,9 @@ import com.floragunn.searchguard.ssl.util.SSLConfigConstants;
 import com.floragunn.searchguard.support.ConfigConstants;
 import com.floragunn.searchguard.support.HeaderHelper;
 import com.floragunn.searchguard.support.ModuleInfo;
+import com.floragunn.searchguard.support.PatternSet;
 import com.floragunn.searchguard.support.ReflectionHelper;
 import com.floragunn.searchguard.support.SgUtils;
-import com.floragunn.searchguard.support.WildcardMatcher;
 import com.floragunn.searchguard.transport.DefaultInterClusterRequestEvaluator;
 import com.floragunn.searchguard.transport.InterClusterRequestEvaluator;
 import com.floragunn.searchguard.transport.SearchGuardInterceptor;
@@ -446,6 +462,8 @@ public final class SearchGuardPlugin extends SearchGuardSSLPlugin implements Clu
                 handlers.add(new KibanaInfoAction(settings, restController, Objects.requireNonNull(evaluator), Objects.requireNonNull(threadPool)));
                 handlers.add(new SearchGuardLicenseAction(settings, restController));
                 handlers.add(new SearchGuardHealthAction(settings, restController, Objects.requireNonNull(backendRegistry)));
+                handlers.add(new SearchGuardCacheStatsAction(settings, restController));
+                handlers.add(new SearchGuardUserCacheAction(settings, restController));
                 handlers.add(new TenantInfoAction(settings, restController, Objects.requireNonNull(evaluator), Objects.requireNonNull(threadPool),
                         Objects.requireNonNull(cs), Objects.requireNonNull(adminDns)));
 
@@ -469,6 +487,24 @@ public final class SearchGuardPlugin extends SearchGuardSSLPlugin implements Clu
         return (rh) -> sgRestHandler.wrap(rh);
     }
 
+    @Override
+    public List<ExecutorBuilder<?>> getExecutorBuilders(Settings settings) {
+        final List<ExecutorBuilder<?>> builders = new ArrayList<>(super.getExecutorBuilders(settings));
+        if (!client && !tribeNodeClient && !disabled && !sslOnly) {
+            //authentication (and authorization backend lookups) for requests received on network threads
+            final int processors = EsExecutors.numberOfProcessors(settings);
+            builders.add(new FixedExecutorBuilder(settings, ConfigConstants.SG_AUTH_THREAD_POOL, Math.max(4, processors), 1000,
+                    "thread_pool." + ConfigConstants.SG_AUTH_THREAD_POOL));
+            //password hashing of the internal users backend, bounded so that a login storm can not eat all cpus
+            builders.add(new FixedExecutorBuilder(settings, ConfigConstants.SG_BCRYPT_THREAD_POOL, processors, 1000,
+                    "thread_pool." + ConfigConstants.SG_BCRYPT_THREAD_POOL));
+            //parallel reload of the roles, shut down with the node
+            builders.add(new FixedExecutorBuilder(settings, ConfigConstants.SG_CONFIG_RELOAD_THREAD_POOL, Math.min(10, processors), 1000,
+                    "thread_pool." + ConfigConstants.SG_CONFIG_RELOAD_THREAD_POOL));
+        }
+        return builders;
+    }
+
     @Override
     public List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> getActions() {
         List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> actions = new ArrayList<>(1);
@@ -476,6 +512,10 @@ public final class SearchGuardPlugin extends SearchGuardSSLPlugin implements Clu
             actions.add(new ActionHandler<>(ConfigUpdateAction.INSTANCE, TransportConfigUpdateAction.class));
             actions.add(new ActionHandler<>(LicenseInfoAction.INSTANCE, TransportLicenseInfoAction.class));
             actions.add(new ActionHandler<>(WhoAmIAction.INSTANCE, TransportWhoAmIAction.class));
+            actions.add(new ActionHandler<>(InvalidateUserCacheAction.INSTANCE, TransportInvalidateUserCacheAction.class));
+            actions.add(new ActionHandler<>(ClientBlocksAction.INSTANCE, TransportClientBlocksAction.class));
+            actions.add(new ActionHandler<>(SharedCacheEntriesAction.INSTANCE, TransportSharedCacheEntriesAction.class));
+            actions.add(new ActionHandler<>(CacheStatsAction.INSTANCE, TransportCacheStatsAction.class));
         }
         return actions;
     }
@@ -776,10 +816,21 @@ public final class SearchGuardPlugin extends SearchGuardSSLPlugin implements Clu
                 clusterService, auditLog, complianceConfig);
         cr.subscribeOnLicenseChange(complianceConfig);
         cr.subscribeOnChange(ConfigConstants.CONFIGNAME_CONFIG, irr);
-        final InternalAuthenticationBackend iab = new InternalAuthenticationBackend(cr);
+        final InternalAuthenticationBackend iab = new InternalAuthenticationBackend(cr, threadPool);
         final XFFResolver xffResolver = new XFFResolver(threadPool);
         cr.subscribeOnChange(ConfigConstants.CONFIGNAME_CONFIG, xffResolver);
-        backendRegistry = new BackendRegistry(settings, configPath, adminDns, xffResolver, iab, auditLog, threadPool);
+        final ClientBlockPropagator clientBlockPropagator = settings.getAsBoolean(ConfigConstants.SEARCHGUARD_AUTH_FAILURE_PROPAGATION_ENABLED, true)
+                ? new ClientBlockPropagator(threadPool, localClient, clusterService,
+                        settings.getAsTime(ConfigConstants.SEARCHGUARD_AUTH_FAILURE_PROPAGATION_INTERVAL, TimeValue.timeValueSeconds(1)))
+                : null;
+        final boolean sharedCacheEnabled = settings.getAsBoolean(ConfigConstants.SEARCHGUARD_CACHE_SHARED_ENABLED, false);
+        final ClusterSharedAuthenticationCache clusterSharedAuthenticationCache = sharedCacheEnabled
+                ? new ClusterSharedAuthenticationCache(threadPool, localClient, clusterService,
+                        settings.getAsTime(ConfigConstants.SEARCHGUARD_CACHE_SHARED_PROPAGATION_INTERVAL, TimeValue.timeValueMillis(500)),
+                        settings.getAsLong(ConfigConstants.SEARCHGUARD_CACHE_SHARED_MAX_SIZE, 100_000L))
+                : null;
+        backendRegistry = new BackendRegistry(settings, configPath, adminDns, xffResolver, iab, auditLog, threadPool, clientBlockPropagator,
+                clusterSharedAuthenticationCache);
         cr.subscribeOnChange(ConfigConstants.CONFIGNAME_CONFIG, backendRegistry);
         final ActionGroupHolder ah = new ActionGroupHolder(cr);
         evaluator = new PrivilegesEvaluator(clusterService, threadPool, cr, ah, resolver, auditLog, settings, privilegesInterceptor, cih, irr,
@@ -872,6 +923,21 @@ public final class SearchGuardPlugin extends SearchGuardSSLPlugin implements Clu
             settings.add(Setting.boolSetting(ConfigConstants.SEARCHGUARD_DISABLED, false, Property.NodeScope, Property.Filtered));
 
             settings.add(Setting.intSetting(ConfigConstants.SEARCHGUARD_CACHE_TTL_MINUTES, 60, 0, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.groupSetting(ConfigConstants.SEARCHGUARD_CACHE_USER_CACHES + ".", Property.NodeScope, Property.Filtered));
+            settings.add(Setting.boolSetting(ConfigConstants.SEARCHGUARD_CACHE_SHARED_ENABLED, false, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.longSetting(ConfigConstants.SEARCHGUARD_CACHE_SHARED_MAX_SIZE, 100_000L, 0L, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.timeSetting(ConfigConstants.SEARCHGUARD_CACHE_SHARED_PROPAGATION_INTERVAL, TimeValue.timeValueMillis(500),
+                    Property.NodeScope, Property.Filtered));
+            settings.add(Setting.simpleString(ConfigConstants.SEARCHGUARD_CACHE_SHARED_IMPL, Property.NodeScope, Property.Filtered));
+            settings.add(BackendRegistry.SHARED_CACHE_SECRET);
+            settings.add(Setting.boolSetting(ConfigConstants.SEARCHGUARD_AUTH_ASYNC, true, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.boolSetting(ConfigConstants.SEARCHGUARD_AUTH_FAILURE_PROPAGATION_ENABLED, true, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.timeSetting(ConfigConstants.SEARCHGUARD_AUTH_FAILURE_PROPAGATION_INTERVAL, TimeValue.timeValueSeconds(1),
+                    Property.NodeScope, Property.Filtered));
+            settings.add(Setting.boolSetting(ConfigConstants.SEARCHGUARD_COMPAT_JAVA_HEADER_SERIALIZATION, false, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.boolSetting(ConfigConstants.SEARCHGUARD_TRANSPORT_HEADER_DEDUP_ENABLED, false, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.timeSetting(ConfigConstants.SEARCHGUARD_TRANSPORT_HEADER_DEDUP_WINDOW, TimeValue.timeValueMinutes(1),
+                    Property.NodeScope, Property.Filtered));
 
             //SG6
             settings.add(Setting.boolSetting(ConfigConstants.SEARCHGUARD_ENTERPRISE_MODULES_ENABLED, true, Property.NodeScope, Property.Filtered));
@@ -1130,9 +1196,11 @@ public final class SearchGuardPlugin extends SearchGuardSSLPlugin implements Clu
                 }
 
                 if (!excludesSet.isEmpty()) {
-                    return field -> !WildcardMatcher.matchAny(excludesSet, handleKeyword(field));
+                    final PatternSet excludes = PatternSet.compile(excludesSet);
+                    return field -> !excludes.matches(handleKeyword(field));
                 } else {
-                    return field -> WildcardMatcher.matchAny(includesSet, handleKeyword(field));
+                    final PatternSet includes = PatternSet.compile(includesSet);
+                    return field -> includes.matches(handleKeyword(field));
                 }
             }
         };
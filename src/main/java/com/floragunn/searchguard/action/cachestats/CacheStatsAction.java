@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.floragunn.searchguard.action.cachestats;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+public class CacheStatsAction extends Action<CacheStatsRequest, CacheStatsResponse, CacheStatsRequestBuilder> {
+
+    public static final CacheStatsAction INSTANCE = new CacheStatsAction();
+    public static final String NAME = "cluster:monitor/searchguard/cache/stats";
+
+    protected CacheStatsAction() {
+        super(NAME);
+    }
+
+    @Override
+    public CacheStatsRequestBuilder newRequestBuilder(final ElasticsearchClient client) {
+        return new CacheStatsRequestBuilder(client, this);
+    }
+
+    @Override
+    public CacheStatsResponse newResponse() {
+        return new CacheStatsResponse();
+    }
+
+}
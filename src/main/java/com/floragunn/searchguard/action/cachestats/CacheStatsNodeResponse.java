@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.floragunn.searchguard.action.cachestats;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import com.google.common.cache.CacheStats;
+
+public class CacheStatsNodeResponse extends BaseNodeResponse {
+
+    private Map<String, Long> sizes = Collections.emptyMap();
+    private Map<String, CacheStats> stats = Collections.emptyMap();
+
+    CacheStatsNodeResponse() {
+    }
+
+    /**
+     * @param sizes number of entries per cache name
+     * @param stats statistics per cache name, same keys and iteration order as sizes
+     */
+    public CacheStatsNodeResponse(final DiscoveryNode node, final Map<String, Long> sizes, final Map<String, CacheStats> stats) {
+        super(node);
+        this.sizes = sizes;
+        this.stats = stats;
+    }
+
+    public static CacheStatsNodeResponse readNodeResponse(StreamInput in) throws IOException {
+        CacheStatsNodeResponse nodeResponse = new CacheStatsNodeResponse();
+        nodeResponse.readFrom(in);
+        return nodeResponse;
+    }
+
+    public Map<String, Long> getSizes() {
+        return sizes;
+    }
+
+    public Map<String, CacheStats> getStats() {
+        return stats;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(stats.size());
+        for (Map.Entry<String, CacheStats> entry : stats.entrySet()) {
+            final CacheStats cacheStats = entry.getValue();
+            out.writeString(entry.getKey());
+            out.writeVLong(sizes.get(entry.getKey()));
+            out.writeVLong(cacheStats.hitCount());
+            out.writeVLong(cacheStats.missCount());
+            out.writeVLong(cacheStats.loadSuccessCount());
+            out.writeVLong(cacheStats.loadExceptionCount());
+            out.writeVLong(cacheStats.totalLoadTime());
+            out.writeVLong(cacheStats.evictionCount());
+        }
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        final int count = in.readVInt();
+        sizes = new LinkedHashMap<>(count);
+        stats = new LinkedHashMap<>(count);
+        for (int i = 0; i < count; i++) {
+            final String name = in.readString();
+            sizes.put(name, in.readVLong());
+            stats.put(name, new CacheStats(in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong()));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.floragunn.searchguard.action.cachestats;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Provider;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import com.floragunn.searchguard.auth.BackendRegistry;
+import com.floragunn.searchguard.support.HeaderCache;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+
+public class TransportCacheStatsAction
+extends
+TransportNodesAction<CacheStatsRequest, CacheStatsResponse, TransportCacheStatsAction.NodeCacheStatsRequest, CacheStatsNodeResponse> {
+
+    private final Provider<BackendRegistry> backendRegistry;
+
+    @Inject
+    public TransportCacheStatsAction(final Settings settings,
+            final ThreadPool threadPool, final ClusterService clusterService, final TransportService transportService,
+            final ActionFilters actionFilters, final IndexNameExpressionResolver indexNameExpressionResolver,
+            Provider<BackendRegistry> backendRegistry) {
+
+        super(settings, CacheStatsAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                indexNameExpressionResolver, CacheStatsRequest::new, TransportCacheStatsAction.NodeCacheStatsRequest::new,
+                ThreadPool.Names.MANAGEMENT, CacheStatsNodeResponse.class);
+
+        this.backendRegistry = backendRegistry;
+    }
+
+    public static class NodeCacheStatsRequest extends BaseNodeRequest {
+
+        CacheStatsRequest request;
+
+        public NodeCacheStatsRequest() {
+        }
+
+        public NodeCacheStatsRequest(final String nodeId, final CacheStatsRequest request) {
+            super(nodeId);
+            this.request = request;
+        }
+
+        @Override
+        public void readFrom(final StreamInput in) throws IOException {
+            super.readFrom(in);
+            request = new CacheStatsRequest();
+            request.readFrom(in);
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            super.writeTo(out);
+            request.writeTo(out);
+        }
+    }
+
+    protected NodeCacheStatsRequest newNodeRequest(final String nodeId, final CacheStatsRequest request) {
+        return new NodeCacheStatsRequest(nodeId, request);
+    }
+
+    @Override
+    protected CacheStatsNodeResponse newNodeResponse() {
+        return new CacheStatsNodeResponse(clusterService.localNode(), Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    @Override
+    protected CacheStatsResponse newResponse(CacheStatsRequest request, List<CacheStatsNodeResponse> responses,
+            List<FailedNodeException> failures) {
+        return new CacheStatsResponse(this.clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected CacheStatsNodeResponse nodeOperation(final NodeCacheStatsRequest request) {
+        final Map<String, Cache<?, ?>> caches = new LinkedHashMap<>(backendRegistry.get().getCaches());
+        caches.put("transport_headers", HeaderCache.getCache());
+
+        final Map<String, Long> sizes = new LinkedHashMap<>(caches.size());
+        final Map<String, CacheStats> stats = new LinkedHashMap<>(caches.size());
+        for (Map.Entry<String, Cache<?, ?>> entry : caches.entrySet()) {
+            sizes.put(entry.getKey(), entry.getValue().size());
+            stats.put(entry.getKey(), entry.getValue().stats());
+        }
+
+        return new CacheStatsNodeResponse(clusterService.localNode(), sizes, stats);
+    }
+}
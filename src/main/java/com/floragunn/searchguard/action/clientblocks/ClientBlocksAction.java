@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.floragunn.searchguard.action.clientblocks;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+public class ClientBlocksAction extends Action<ClientBlocksRequest, ClientBlocksResponse, ClientBlocksRequestBuilder> {
+
+    public static final ClientBlocksAction INSTANCE = new ClientBlocksAction();
+    public static final String NAME = "internal:searchguard/auth/client_blocks";
+
+    protected ClientBlocksAction() {
+        super(NAME);
+    }
+
+    @Override
+    public ClientBlocksRequestBuilder newRequestBuilder(final ElasticsearchClient client) {
+        return new ClientBlocksRequestBuilder(client, this);
+    }
+
+    @Override
+    public ClientBlocksResponse newResponse() {
+        return new ClientBlocksResponse();
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.floragunn.searchguard.action.clientblocks;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+public class ClientBlocksNodeResponse extends BaseNodeResponse {
+
+    private int appliedEntries;
+
+    ClientBlocksNodeResponse() {
+    }
+
+    public ClientBlocksNodeResponse(final DiscoveryNode node, final int appliedEntries) {
+        super(node);
+        this.appliedEntries = appliedEntries;
+    }
+
+    public static ClientBlocksNodeResponse readNodeResponse(StreamInput in) throws IOException {
+        ClientBlocksNodeResponse nodeResponse = new ClientBlocksNodeResponse();
+        nodeResponse.readFrom(in);
+        return nodeResponse;
+    }
+
+    public int getAppliedEntries() {
+        return appliedEntries;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(appliedEntries);
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        appliedEntries = in.readVInt();
+    }
+
+    @Override
+    public String toString() {
+        return "ClientBlocksNodeResponse [appliedEntries=" + appliedEntries + "]";
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.floragunn.searchguard.action.clientblocks;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.support.nodes.BaseNodesRequest;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+/**
+ * Failed logins and blocks observed by one node, per auth failure listener name and client id
+ */
+public class ClientBlocksRequest extends BaseNodesRequest<ClientBlocksRequest> {
+
+    private String originNodeId;
+    private Map<String, Map<String, Integer>> failures = new HashMap<>();
+    private Map<String, Set<String>> blocks = new HashMap<>();
+
+    public ClientBlocksRequest() {
+        super();
+    }
+
+    public ClientBlocksRequest(final String originNodeId, final Map<String, Map<String, Integer>> failures, final Map<String, Set<String>> blocks) {
+        super();
+        this.originNodeId = originNodeId;
+        this.failures = failures;
+        this.blocks = blocks;
+    }
+
+    @Override
+    public void readFrom(final StreamInput in) throws IOException {
+        super.readFrom(in);
+        this.originNodeId = in.readString();
+
+        final int failureListeners = in.readVInt();
+        this.failures = new HashMap<>(failureListeners);
+        for (int i = 0; i < failureListeners; i++) {
+            final String listener = in.readString();
+            final int clients = in.readVInt();
+            final Map<String, Integer> clientFailures = new HashMap<>(clients);
+            for (int k = 0; k < clients; k++) {
+                clientFailures.put(in.readString(), in.readVInt());
+            }
+            failures.put(listener, clientFailures);
+        }
+
+        final int blockListeners = in.readVInt();
+        this.blocks = new HashMap<>(blockListeners);
+        for (int i = 0; i < blockListeners; i++) {
+            final String listener = in.readString();
+            final Set<String> clients = new HashSet<>();
+            for (final String client : in.readStringArray()) {
+                clients.add(client);
+            }
+            blocks.put(listener, clients);
+        }
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(originNodeId);
+
+        out.writeVInt(failures.size());
+        for (final Map.Entry<String, Map<String, Integer>> entry : failures.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeVInt(entry.getValue().size());
+            for (final Map.Entry<String, Integer> clientFailures : entry.getValue().entrySet()) {
+                out.writeString(clientFailures.getKey());
+                out.writeVInt(clientFailures.getValue());
+            }
+        }
+
+        out.writeVInt(blocks.size());
+        for (final Map.Entry<String, Set<String>> entry : blocks.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeStringArray(entry.getValue().toArray(new String[0]));
+        }
+    }
+
+    public String getOriginNodeId() {
+        return originNodeId;
+    }
+
+    public Map<String, Map<String, Integer>> getFailures() {
+        return failures;
+    }
+
+    public Map<String, Set<String>> getBlocks() {
+        return blocks;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        if (originNodeId == null) {
+            final ActionRequestValidationException e = new ActionRequestValidationException();
+            e.addValidationError("no origin node given");
+            return e;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.floragunn.searchguard.action.clientblocks;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Provider;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import com.floragunn.searchguard.auth.BackendRegistry;
+
+public class TransportClientBlocksAction
+extends
+TransportNodesAction<ClientBlocksRequest, ClientBlocksResponse, TransportClientBlocksAction.NodeClientBlocksRequest, ClientBlocksNodeResponse> {
+
+    private final Provider<BackendRegistry> backendRegistry;
+
+    @Inject
+    public TransportClientBlocksAction(final Settings settings,
+            final ThreadPool threadPool, final ClusterService clusterService, final TransportService transportService,
+            final ActionFilters actionFilters, final IndexNameExpressionResolver indexNameExpressionResolver,
+            Provider<BackendRegistry> backendRegistry) {
+
+        super(settings, ClientBlocksAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                indexNameExpressionResolver, ClientBlocksRequest::new, TransportClientBlocksAction.NodeClientBlocksRequest::new,
+                ThreadPool.Names.MANAGEMENT, ClientBlocksNodeResponse.class);
+
+        this.backendRegistry = backendRegistry;
+    }
+
+    public static class NodeClientBlocksRequest extends BaseNodeRequest {
+
+        ClientBlocksRequest request;
+
+        public NodeClientBlocksRequest() {
+        }
+
+        public NodeClientBlocksRequest(final String nodeId, final ClientBlocksRequest request) {
+            super(nodeId);
+            this.request = request;
+        }
+
+        @Override
+        public void readFrom(final StreamInput in) throws IOException {
+            super.readFrom(in);
+            request = new ClientBlocksRequest();
+            request.readFrom(in);
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            super.writeTo(out);
+            request.writeTo(out);
+        }
+    }
+
+    protected NodeClientBlocksRequest newNodeRequest(final String nodeId, final ClientBlocksRequest request) {
+        return new NodeClientBlocksRequest(nodeId, request);
+    }
+
+    @Override
+    protected ClientBlocksNodeResponse newNodeResponse() {
+        return new ClientBlocksNodeResponse(clusterService.localNode(), 0);
+    }
+
+    @Override
+    protected ClientBlocksResponse newResponse(ClientBlocksRequest request, List<ClientBlocksNodeResponse> responses,
+            List<FailedNodeException> failures) {
+        return new ClientBlocksResponse(this.clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected ClientBlocksNodeResponse nodeOperation(final NodeClientBlocksRequest request) {
+        if (clusterService.localNode().getId().equals(request.request.getOriginNodeId())) {
+            // already applied when observed
+            return new ClientBlocksNodeResponse(clusterService.localNode(), 0);
+        }
+
+        final int applied = backendRegistry.get().applyRemoteClientBlocks(request.request.getFailures(), request.request.getBlocks());
+        return new ClientBlocksNodeResponse(clusterService.localNode(), applied);
+    }
+}
@@ -42,6 +42,7 @@ import com.floragunn.searchguard.auth.BackendRegistry;
 import com.floragunn.searchguard.configuration.ConfigurationRepository;
 import com.floragunn.searchguard.configuration.IndexBaseConfigurationRepository;
 import com.floragunn.searchguard.configuration.SearchGuardLicense;
+import com.floragunn.searchguard.support.ConfigConstants;
 import com.floragunn.searchguard.support.LicenseHelper;
 
 public class TransportConfigUpdateAction
@@ -110,7 +111,10 @@ TransportNodesAction<ConfigUpdateRequest, ConfigUpdateResponse, TransportConfigU
 	
     @Override
     protected ConfigUpdateNodeResponse nodeOperation(final NodeConfigUpdateRequest request) {
-        final Map<String, Settings> setn = configurationRepository.reloadConfiguration(Arrays.asList(request.request.getConfigTypes()));
+        final List<String> configTypes = Arrays.asList(request.request.getConfigTypes());
+        final Settings previousInternalUsers = configTypes.contains(ConfigConstants.CONFIGNAME_INTERNAL_USERS)
+                ? configurationRepository.getConfiguration(ConfigConstants.CONFIGNAME_INTERNAL_USERS) : null;
+        final Map<String, Settings> setn = configurationRepository.reloadConfiguration(configTypes);
         String licenseText = null;
         
         if(setn.get("config") != null) {
@@ -131,7 +135,7 @@ TransportNodesAction<ConfigUpdateRequest, ConfigUpdateResponse, TransportConfigU
             }
         }
 
-        backendRegistry.get().invalidateCache();
+        backendRegistry.get().invalidateCache(configTypes, previousInternalUsers, setn.get(ConfigConstants.CONFIGNAME_INTERNAL_USERS));
         return new ConfigUpdateNodeResponse(clusterService.localNode(), setn.keySet().toArray(new String[0]), null); 
     }
 }
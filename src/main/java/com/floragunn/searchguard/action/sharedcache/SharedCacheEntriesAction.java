@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.floragunn.searchguard.action.sharedcache;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+public class SharedCacheEntriesAction extends Action<SharedCacheEntriesRequest, SharedCacheEntriesResponse, SharedCacheEntriesRequestBuilder> {
+
+    public static final SharedCacheEntriesAction INSTANCE = new SharedCacheEntriesAction();
+    public static final String NAME = "internal:searchguard/auth/shared_cache";
+
+    protected SharedCacheEntriesAction() {
+        super(NAME);
+    }
+
+    @Override
+    public SharedCacheEntriesRequestBuilder newRequestBuilder(final ElasticsearchClient client) {
+        return new SharedCacheEntriesRequestBuilder(client, this);
+    }
+
+    @Override
+    public SharedCacheEntriesResponse newResponse() {
+        return new SharedCacheEntriesResponse();
+    }
+
+}
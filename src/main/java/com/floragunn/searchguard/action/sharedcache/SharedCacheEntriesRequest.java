@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.action.sharedcache;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.support.nodes.BaseNodesRequest;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import com.floragunn.searchguard.auth.SharedAuthenticationCache.Entry;
+
+/**
+ * Signed shared authentication cache entries put by one node, by cache key
+ */
+public class SharedCacheEntriesRequest extends BaseNodesRequest<SharedCacheEntriesRequest> {
+
+    private String originNodeId;
+    private Map<String, Entry> entries = new HashMap<>();
+
+    public SharedCacheEntriesRequest() {
+        super();
+    }
+
+    public SharedCacheEntriesRequest(final String originNodeId, final Map<String, Entry> entries) {
+        super();
+        this.originNodeId = originNodeId;
+        this.entries = entries;
+    }
+
+    @Override
+    public void readFrom(final StreamInput in) throws IOException {
+        super.readFrom(in);
+        this.originNodeId = in.readString();
+
+        final int size = in.readVInt();
+        this.entries = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            final String key = in.readString();
+            entries.put(key, new Entry(in.readString(), in.readLong(), in.readString(), in.readByteArray()));
+        }
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(originNodeId);
+
+        out.writeVInt(entries.size());
+        for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeString(entry.getValue().getUsername());
+            out.writeLong(entry.getValue().getExpiresAt());
+            out.writeString(entry.getValue().getUser());
+            out.writeByteArray(entry.getValue().getSignature());
+        }
+    }
+
+    public String getOriginNodeId() {
+        return originNodeId;
+    }
+
+    public Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        if (originNodeId == null) {
+            final ActionRequestValidationException e = new ActionRequestValidationException();
+            e.addValidationError("no origin node given");
+            return e;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.floragunn.searchguard.action.sharedcache;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Provider;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import com.floragunn.searchguard.auth.BackendRegistry;
+
+public class TransportSharedCacheEntriesAction
+extends
+TransportNodesAction<SharedCacheEntriesRequest, SharedCacheEntriesResponse, TransportSharedCacheEntriesAction.NodeSharedCacheEntriesRequest, SharedCacheEntriesNodeResponse> {
+
+    private final Provider<BackendRegistry> backendRegistry;
+
+    @Inject
+    public TransportSharedCacheEntriesAction(final Settings settings,
+            final ThreadPool threadPool, final ClusterService clusterService, final TransportService transportService,
+            final ActionFilters actionFilters, final IndexNameExpressionResolver indexNameExpressionResolver,
+            Provider<BackendRegistry> backendRegistry) {
+
+        super(settings, SharedCacheEntriesAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                indexNameExpressionResolver, SharedCacheEntriesRequest::new, TransportSharedCacheEntriesAction.NodeSharedCacheEntriesRequest::new,
+                ThreadPool.Names.MANAGEMENT, SharedCacheEntriesNodeResponse.class);
+
+        this.backendRegistry = backendRegistry;
+    }
+
+    public static class NodeSharedCacheEntriesRequest extends BaseNodeRequest {
+
+        SharedCacheEntriesRequest request;
+
+        public NodeSharedCacheEntriesRequest() {
+        }
+
+        public NodeSharedCacheEntriesRequest(final String nodeId, final SharedCacheEntriesRequest request) {
+            super(nodeId);
+            this.request = request;
+        }
+
+        @Override
+        public void readFrom(final StreamInput in) throws IOException {
+            super.readFrom(in);
+            request = new SharedCacheEntriesRequest();
+            request.readFrom(in);
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            super.writeTo(out);
+            request.writeTo(out);
+        }
+    }
+
+    protected NodeSharedCacheEntriesRequest newNodeRequest(final String nodeId, final SharedCacheEntriesRequest request) {
+        return new NodeSharedCacheEntriesRequest(nodeId, request);
+    }
+
+    @Override
+    protected SharedCacheEntriesNodeResponse newNodeResponse() {
+        return new SharedCacheEntriesNodeResponse(clusterService.localNode(), 0);
+    }
+
+    @Override
+    protected SharedCacheEntriesResponse newResponse(SharedCacheEntriesRequest request, List<SharedCacheEntriesNodeResponse> responses,
+            List<FailedNodeException> failures) {
+        return new SharedCacheEntriesResponse(this.clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected SharedCacheEntriesNodeResponse nodeOperation(final NodeSharedCacheEntriesRequest request) {
+        if (clusterService.localNode().getId().equals(request.request.getOriginNodeId())) {
+            // already kept when put
+            return new SharedCacheEntriesNodeResponse(clusterService.localNode(), 0);
+        }
+
+        final int applied = backendRegistry.get().applyRemoteSharedCacheEntries(request.request.getEntries());
+        return new SharedCacheEntriesNodeResponse(clusterService.localNode(), applied);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.floragunn.searchguard.action.usercache;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+public class InvalidateUserCacheNodeResponse extends BaseNodeResponse {
+
+    private int invalidatedEntries;
+
+    InvalidateUserCacheNodeResponse() {
+    }
+
+    public InvalidateUserCacheNodeResponse(final DiscoveryNode node, final int invalidatedEntries) {
+        super(node);
+        this.invalidatedEntries = invalidatedEntries;
+    }
+
+    public static InvalidateUserCacheNodeResponse readNodeResponse(StreamInput in) throws IOException {
+        InvalidateUserCacheNodeResponse nodeResponse = new InvalidateUserCacheNodeResponse();
+        nodeResponse.readFrom(in);
+        return nodeResponse;
+    }
+
+    public int getInvalidatedEntries() {
+        return invalidatedEntries;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(invalidatedEntries);
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        invalidatedEntries = in.readVInt();
+    }
+
+    @Override
+    public String toString() {
+        return "InvalidateUserCacheNodeResponse [invalidatedEntries=" + invalidatedEntries + "]";
+    }
+}
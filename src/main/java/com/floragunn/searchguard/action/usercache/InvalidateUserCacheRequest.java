@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.floragunn.searchguard.action.usercache;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.support.nodes.BaseNodesRequest;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+public class InvalidateUserCacheRequest extends BaseNodesRequest<InvalidateUserCacheRequest> {
+
+    private String[] usernames;
+
+    public InvalidateUserCacheRequest() {
+        super();
+    }
+
+    public InvalidateUserCacheRequest(final String[] usernames) {
+        super();
+        this.usernames = usernames;
+    }
+
+    @Override
+    public void readFrom(final StreamInput in) throws IOException {
+        super.readFrom(in);
+        this.usernames = in.readStringArray();
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeStringArray(usernames);
+    }
+
+    public String[] getUsernames() {
+        return usernames;
+    }
+
+    public void setUsernames(final String[] usernames) {
+        this.usernames = usernames;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        if (usernames == null || usernames.length == 0) {
+            final ActionRequestValidationException e = new ActionRequestValidationException();
+            e.addValidationError("no usernames given");
+            return e;
+        }
+        return null;
+    }
+}
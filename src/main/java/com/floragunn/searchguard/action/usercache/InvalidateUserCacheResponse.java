@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.floragunn.searchguard.action.usercache;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.nodes.BaseNodesResponse;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+public class InvalidateUserCacheResponse extends BaseNodesResponse<InvalidateUserCacheNodeResponse> {
+
+    public InvalidateUserCacheResponse() {
+    }
+
+    public InvalidateUserCacheResponse(final ClusterName clusterName, List<InvalidateUserCacheNodeResponse> nodes, List<FailedNodeException> failures) {
+        super(clusterName, nodes, failures);
+    }
+
+    @Override
+    public List<InvalidateUserCacheNodeResponse> readNodesFrom(final StreamInput in) throws IOException {
+        return in.readList(InvalidateUserCacheNodeResponse::readNodeResponse);
+    }
+
+    @Override
+    public void writeNodesTo(final StreamOutput out, List<InvalidateUserCacheNodeResponse> nodes) throws IOException {
+        out.writeStreamableList(nodes);
+    }
+}
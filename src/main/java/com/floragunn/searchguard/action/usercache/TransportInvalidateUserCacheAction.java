@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.floragunn.searchguard.action.usercache;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Provider;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import com.floragunn.searchguard.auth.BackendRegistry;
+
+public class TransportInvalidateUserCacheAction
+extends
+TransportNodesAction<InvalidateUserCacheRequest, InvalidateUserCacheResponse, TransportInvalidateUserCacheAction.NodeInvalidateUserCacheRequest, InvalidateUserCacheNodeResponse> {
+
+    private final Provider<BackendRegistry> backendRegistry;
+
+    @Inject
+    public TransportInvalidateUserCacheAction(final Settings settings,
+            final ThreadPool threadPool, final ClusterService clusterService, final TransportService transportService,
+            final ActionFilters actionFilters, final IndexNameExpressionResolver indexNameExpressionResolver,
+            Provider<BackendRegistry> backendRegistry) {
+
+        super(settings, InvalidateUserCacheAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                indexNameExpressionResolver, InvalidateUserCacheRequest::new, TransportInvalidateUserCacheAction.NodeInvalidateUserCacheRequest::new,
+                ThreadPool.Names.MANAGEMENT, InvalidateUserCacheNodeResponse.class);
+
+        this.backendRegistry = backendRegistry;
+    }
+
+    public static class NodeInvalidateUserCacheRequest extends BaseNodeRequest {
+
+        InvalidateUserCacheRequest request;
+
+        public NodeInvalidateUserCacheRequest() {
+        }
+
+        public NodeInvalidateUserCacheRequest(final String nodeId, final InvalidateUserCacheRequest request) {
+            super(nodeId);
+            this.request = request;
+        }
+
+        @Override
+        public void readFrom(final StreamInput in) throws IOException {
+            super.readFrom(in);
+            request = new InvalidateUserCacheRequest();
+            request.readFrom(in);
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            super.writeTo(out);
+            request.writeTo(out);
+        }
+    }
+
+    protected NodeInvalidateUserCacheRequest newNodeRequest(final String nodeId, final InvalidateUserCacheRequest request) {
+        return new NodeInvalidateUserCacheRequest(nodeId, request);
+    }
+
+    @Override
+    protected InvalidateUserCacheNodeResponse newNodeResponse() {
+        return new InvalidateUserCacheNodeResponse(clusterService.localNode(), 0);
+    }
+
+    @Override
+    protected InvalidateUserCacheResponse newResponse(InvalidateUserCacheRequest request, List<InvalidateUserCacheNodeResponse> responses,
+            List<FailedNodeException> failures) {
+        return new InvalidateUserCacheResponse(this.clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected InvalidateUserCacheNodeResponse nodeOperation(final NodeInvalidateUserCacheRequest request) {
+        final int invalidated = backendRegistry.get().invalidateUsers(new HashSet<>(Arrays.asList(request.request.getUsernames())));
+        return new InvalidateUserCacheNodeResponse(clusterService.localNode(), invalidated);
+    }
+}
@@ -19,12 +19,18 @@ package com.floragunn.searchguard.auth;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -32,7 +38,9 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
 
 import javax.naming.InvalidNameException;
 import javax.naming.ldap.LdapName;
@@ -41,6 +49,9 @@ import javax.naming.ldap.Rdn;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.ElasticsearchSecurityException;
+import org.elasticsearch.common.settings.SecureSetting;
+import org.elasticsearch.common.settings.SecureString;
+import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.TransportAddress;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
@@ -53,10 +64,12 @@ import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportRequest;
 
 import com.floragunn.searchguard.auditlog.AuditLog;
+import com.floragunn.searchguard.auth.blocking.ClientBlockPropagator;
 import com.floragunn.searchguard.auth.blocking.ClientBlockRegistry;
 import com.floragunn.searchguard.auth.internal.InternalAuthenticationBackend;
 import com.floragunn.searchguard.auth.internal.NoOpAuthenticationBackend;
 import com.floragunn.searchguard.auth.internal.NoOpAuthorizationBackend;
+import com.floragunn.searchguard.auth.limiting.AbstractRateLimiter;
 import com.floragunn.searchguard.auth.limiting.AddressBasedRateLimiter;
 import com.floragunn.searchguard.auth.limiting.UserNameBasedRateLimiter;
 import com.floragunn.searchguard.configuration.AdminDNs;
@@ -76,12 +89,19 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 public class BackendRegistry implements ConfigurationChangeListener {
 
+    /**
+     * Secret of the shared authentication cache, must be the same on all nodes and is read from the keystore
+     */
+    public static final Setting<SecureString> SHARED_CACHE_SECRET = SecureSetting.secureString(ConfigConstants.SEARCHGUARD_CACHE_SHARED_SECRET, null);
+
     protected final Logger log = LogManager.getLogger(this.getClass());
     private final Map<String, String> authImplMap = new HashMap<>();
     private SortedSet<AuthDomain> restAuthDomains;
@@ -93,6 +113,8 @@ public class BackendRegistry implements ConfigurationChangeListener {
     private Multimap<String, AuthFailureListener> authBackendFailureListeners;
     private List<ClientBlockRegistry<InetAddress>> ipClientBlockRegistries;
     private Multimap<String, ClientBlockRegistry<String>> authBackendClientBlockRegistries;
+    private volatile Map<String, AbstractRateLimiter<?>> rateLimiters = Collections.emptyMap(); //by auth_failure_listeners name
+    private final ClientBlockPropagator clientBlockPropagator; //optional, shares failed logins with the other nodes
     private volatile boolean initialized;
     private final AdminDNs adminDns;
     private final XFFResolver xffResolver;
@@ -103,6 +125,7 @@ public class BackendRegistry implements ConfigurationChangeListener {
     private final AuditLog auditLog;
     private final ThreadPool threadPool;
     private final UserInjector userInjector;
+    private static final long DEFAULT_MAX_CACHE_SIZE = 100_000;
     private final int ttlInMin;
     private Cache<AuthCredentials, User> userCache; //rest standard
     private Cache<String, User> restImpersonationCache; //used for rest impersonation
@@ -112,11 +135,15 @@ public class BackendRegistry implements ConfigurationChangeListener {
     private Cache<User, Set<String>> transportRoleCache; //
     private Cache<User, Set<String>> restRoleCache; //
     private Cache<String, User> transportImpersonationCache; //used for transport impersonation
+    private RestAuthenticationCache restAuthenticationCache; //rest fast path, raw authorization header to userCache entry
+    private Map<String, Cache<?, ?>> caches; //all of the above by name, for stats
+    private final ClusterSharedAuthenticationCache clusterSharedAuthenticationCache; //optional, store of the shared cache kept by all nodes
+    private final SharedUserCache sharedUserCache; //optional, shared by all nodes
 
     private volatile String transportUsernameAttribute = null;
 
     private void createCaches() {
-        userCache = CacheBuilder.newBuilder().expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
+        userCache = this.<AuthCredentials, User>newCacheBuilder("rest_users", BackendRegistry::weighUser)
                 .removalListener(new RemovalListener<AuthCredentials, User>() {
                     @Override
                     public void onRemoval(RemovalNotification<AuthCredentials, User> notification) {
@@ -124,7 +151,7 @@ public class BackendRegistry implements ConfigurationChangeListener {
                     }
                 }).build();
 
-        userCacheTransport = CacheBuilder.newBuilder().expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
+        userCacheTransport = this.<String, User>newCacheBuilder("transport_users", BackendRegistry::weighUser)
                 .removalListener(new RemovalListener<String, User>() {
                     @Override
                     public void onRemoval(RemovalNotification<String, User> notification) {
@@ -132,7 +159,7 @@ public class BackendRegistry implements ConfigurationChangeListener {
                     }
                 }).build();
 
-        authenticatedUserCacheTransport = CacheBuilder.newBuilder().expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
+        authenticatedUserCacheTransport = this.<AuthCredentials, User>newCacheBuilder("transport_authenticated_users", BackendRegistry::weighUser)
                 .removalListener(new RemovalListener<AuthCredentials, User>() {
                     @Override
                     public void onRemoval(RemovalNotification<AuthCredentials, User> notification) {
@@ -140,7 +167,7 @@ public class BackendRegistry implements ConfigurationChangeListener {
                     }
                 }).build();
 
-        restImpersonationCache = CacheBuilder.newBuilder().expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
+        restImpersonationCache = this.<String, User>newCacheBuilder("rest_impersonation", BackendRegistry::weighUser)
                 .removalListener(new RemovalListener<String, User>() {
                     @Override
                     public void onRemoval(RemovalNotification<String, User> notification) {
@@ -148,34 +175,107 @@ public class BackendRegistry implements ConfigurationChangeListener {
                     }
                 }).build();
 
-        transportRoleCache = CacheBuilder.newBuilder().expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
-                .removalListener(new RemovalListener<User, Set<String>>() {
+        transportRoleCache = newRoleCache("transport_roles");
+
+        restRoleCache = newRoleCache("rest_roles");
+
+        transportImpersonationCache = this.<String, User>newCacheBuilder("transport_impersonation", BackendRegistry::weighUser)
+                .removalListener(new RemovalListener<String, User>() {
                     @Override
-                    public void onRemoval(RemovalNotification<User, Set<String>> notification) {
+                    public void onRemoval(RemovalNotification<String, User> notification) {
                         log.debug("Clear user cache for {} due to {}", notification.getKey(), notification.getCause());
                     }
                 }).build();
 
-        restRoleCache = CacheBuilder.newBuilder().expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
+        restAuthenticationCache = new RestAuthenticationCache(ttlInMin, getCacheSettings("rest_authorization_headers").getAsLong("max_size", DEFAULT_MAX_CACHE_SIZE));
+
+        final Map<String, Cache<?, ?>> caches0 = new LinkedHashMap<>();
+        caches0.put("rest_users", userCache);
+        caches0.put("rest_impersonation", restImpersonationCache);
+        caches0.put("rest_roles", restRoleCache);
+        caches0.put("rest_authorization_headers", restAuthenticationCache.getCache());
+        caches0.put("transport_users", userCacheTransport);
+        caches0.put("transport_authenticated_users", authenticatedUserCacheTransport);
+        caches0.put("transport_impersonation", transportImpersonationCache);
+        caches0.put("transport_roles", transportRoleCache);
+        caches = Collections.unmodifiableMap(caches0);
+    }
+
+    private SharedUserCache createSharedUserCache(final Settings settings) {
+        final String className = settings.get(ConfigConstants.SEARCHGUARD_CACHE_SHARED_IMPL);
+
+        if (Strings.isNullOrEmpty(className) && clusterSharedAuthenticationCache == null) {
+            return null;
+        }
+
+        final String storeName = Strings.isNullOrEmpty(className) ? clusterSharedAuthenticationCache.getClass().getName() : className;
+
+        final byte[] secret;
+
+        try (SecureString secureSecret = SHARED_CACHE_SECRET.get(settings)) {
+            if (secureSecret.length() == 0) {
+                log.error("{} is required in the keystore for the shared authentication cache, will not use {}",
+                        ConfigConstants.SEARCHGUARD_CACHE_SHARED_SECRET, storeName);
+                return null;
+            }
+
+            final ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(secureSecret.getChars()));
+            secret = Arrays.copyOf(encoded.array(), encoded.limit());
+            Arrays.fill(encoded.array(), (byte) 0);
+        }
+
+        //a configured implementation takes precedence over the store kept by the nodes
+        final SharedAuthenticationCache store = Strings.isNullOrEmpty(className) ? clusterSharedAuthenticationCache
+                : ReflectionHelper.instantiateSharedAuthenticationCache(className, settings);
+        return store == null ? null : new SharedUserCache(store, secret, ttlInMin);
+    }
+
+    private Settings getCacheSettings(final String name) {
+        return esSettings.getByPrefix(ConfigConstants.SEARCHGUARD_CACHE_USER_CACHES + "." + name + ".");
+    }
+
+    /**
+     * Size bounded, ttl expiring and stats recording builder for the cache with the given name.
+     * A configured max_weight takes precedence over max_size and is measured with the given weigher.
+     */
+    @SuppressWarnings("unchecked")
+    private <K, V> CacheBuilder<K, V> newCacheBuilder(final String name, final Weigher<K, V> weigher) {
+        final Settings cacheSettings = getCacheSettings(name);
+        final long maxWeight = cacheSettings.getAsLong("max_weight", -1L);
+        final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().expireAfterWrite(ttlInMin, TimeUnit.MINUTES).recordStats();
+
+        if (maxWeight >= 0) {
+            return builder.maximumWeight(maxWeight).weigher(weigher);
+        }
+
+        return (CacheBuilder<K, V>) (CacheBuilder<?, ?>) builder.maximumSize(cacheSettings.getAsLong("max_size", DEFAULT_MAX_CACHE_SIZE));
+    }
+
+    /**
+     * Entries hold only the roles added by the authorization backends, not the roles from authentication.
+     */
+    private Cache<User, Set<String>> newRoleCache(final String name) {
+        return this.<User, Set<String>>newCacheBuilder(name, (k, v) -> 1 + v.size())
                 .removalListener(new RemovalListener<User, Set<String>>() {
                     @Override
                     public void onRemoval(RemovalNotification<User, Set<String>> notification) {
                         log.debug("Clear user cache for {} due to {}", notification.getKey(), notification.getCause());
                     }
                 }).build();
+    }
 
-        transportImpersonationCache = CacheBuilder.newBuilder().expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
-                .removalListener(new RemovalListener<String, User>() {
-                    @Override
-                    public void onRemoval(RemovalNotification<String, User> notification) {
-                        log.debug("Clear user cache for {} due to {}", notification.getKey(), notification.getCause());
-                    }
-                }).build();
-
+    private static int weighUser(final Object key, final User user) {
+        return 1 + user.getRoles().size() + user.getCustomAttributesMap().size();
     }
 
     public BackendRegistry(final Settings settings, final Path configPath, final AdminDNs adminDns, final XFFResolver xffResolver,
             final InternalAuthenticationBackend iab, final AuditLog auditLog, final ThreadPool threadPool) {
+        this(settings, configPath, adminDns, xffResolver, iab, auditLog, threadPool, null, null);
+    }
+
+    public BackendRegistry(final Settings settings, final Path configPath, final AdminDNs adminDns, final XFFResolver xffResolver,
+            final InternalAuthenticationBackend iab, final AuditLog auditLog, final ThreadPool threadPool,
+            final ClientBlockPropagator clientBlockPropagator, final ClusterSharedAuthenticationCache clusterSharedAuthenticationCache) {
         this.adminDns = adminDns;
         this.esSettings = settings;
         this.configPath = configPath;
@@ -183,6 +283,8 @@ public class BackendRegistry implements ConfigurationChangeListener {
         this.iab = iab;
         this.auditLog = auditLog;
         this.threadPool = threadPool;
+        this.clientBlockPropagator = clientBlockPropagator;
+        this.clusterSharedAuthenticationCache = clusterSharedAuthenticationCache;
         this.userInjector = new UserInjector(settings, threadPool, auditLog, xffResolver);
 
         authImplMap.put("intern_c", InternalAuthenticationBackend.class.getName());
@@ -211,12 +313,22 @@ public class BackendRegistry implements ConfigurationChangeListener {
         this.ttlInMin = settings.getAsInt(ConfigConstants.SEARCHGUARD_CACHE_TTL_MINUTES, 60);
 
         createCaches();
+
+        this.sharedUserCache = createSharedUserCache(settings);
     }
 
     public boolean isInitialized() {
         return initialized;
     }
 
+    /**
+     *
+     * @return the authentication and authorization caches of this node by name
+     */
+    public Map<String, Cache<?, ?>> getCaches() {
+        return caches;
+    }
+
     public void invalidateCache() {
         userCache.invalidateAll();
         userCacheTransport.invalidateAll();
@@ -225,6 +337,108 @@ public class BackendRegistry implements ConfigurationChangeListener {
         restRoleCache.invalidateAll();
         transportRoleCache.invalidateAll();
         transportImpersonationCache.invalidateAll();
+        restAuthenticationCache.invalidateAll();
+        if (sharedUserCache != null) {
+            sharedUserCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Invalidates only what a reload of the given config types can affect. Roles, role mappings and action groups
+     * are evaluated per request and never end up in the user caches. For internal users only the changed users are dropped.
+     *
+     * @param previousInternalUsers internal users before the reload, may be null
+     * @param internalUsers internal users after the reload, may be null
+     */
+    public void invalidateCache(final Collection<String> configTypes, final Settings previousInternalUsers, final Settings internalUsers) {
+        for (final String configType : configTypes) {
+            switch (configType) {
+            case ConfigConstants.CONFIGNAME_ROLES:
+            case ConfigConstants.CONFIGNAME_ROLES_MAPPING:
+            case ConfigConstants.CONFIGNAME_ACTION_GROUPS:
+                break;
+            case ConfigConstants.CONFIGNAME_INTERNAL_USERS:
+                if (internalUsers == null) {
+                    invalidateCache();
+                    return;
+                }
+                invalidateUsers(getChangedUsers(previousInternalUsers == null ? Settings.EMPTY : previousInternalUsers, internalUsers));
+                break;
+            default:
+                invalidateCache();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops all cached entries for the given users on this node
+     *
+     * @return number of removed user and role cache entries
+     */
+    public int invalidateUsers(final Set<String> usernames) {
+
+        if (usernames.isEmpty()) {
+            return 0;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Invalidate cached users {}", usernames);
+        }
+
+        int removed = 0;
+        removed += removeIf(userCache, (k, v) -> usernames.contains(k.getUsername()) || usernames.contains(v.getName()));
+        removed += removeIf(authenticatedUserCacheTransport, (k, v) -> usernames.contains(k.getUsername()) || usernames.contains(v.getName()));
+        removed += removeIf(userCacheTransport, (k, v) -> usernames.contains(k) || usernames.contains(v.getName()));
+        removed += removeIf(restImpersonationCache, (k, v) -> usernames.contains(k) || usernames.contains(v.getName()));
+        removed += removeIf(transportImpersonationCache, (k, v) -> usernames.contains(k) || usernames.contains(v.getName()));
+        removed += removeIf(restRoleCache, (k, v) -> usernames.contains(k.getName()));
+        removed += removeIf(transportRoleCache, (k, v) -> usernames.contains(k.getName()));
+        restAuthenticationCache.invalidateUsers(usernames);
+        if (sharedUserCache != null) {
+            sharedUserCache.invalidateUsers(usernames);
+        }
+        return removed;
+    }
+
+    private static <K, V> int removeIf(final Cache<K, V> cache, final BiPredicate<K, V> predicate) {
+        int removed = 0;
+        for (final Iterator<Map.Entry<K, V>> it = cache.asMap().entrySet().iterator(); it.hasNext();) {
+            final Map.Entry<K, V> entry = it.next();
+            if (predicate.test(entry.getKey(), entry.getValue())) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     *
+     * @return names (and alternate usernames) of all added, removed or modified internal users
+     */
+    private static Set<String> getChangedUsers(final Settings previousInternalUsers, final Settings internalUsers) {
+        final Set<String> names = new HashSet<>(previousInternalUsers.names());
+        names.addAll(internalUsers.names());
+
+        final Set<String> changed = new HashSet<>();
+
+        for (final String name : names) {
+            final Settings previous = previousInternalUsers.getByPrefix(name + ".");
+            final Settings current = internalUsers.getByPrefix(name + ".");
+
+            if (!previous.equals(current)) {
+                changed.add(name);
+                if (previous.get("username") != null) {
+                    changed.add(previous.get("username"));
+                }
+                if (current.get("username") != null) {
+                    changed.add(current.get("username"));
+                }
+            }
+        }
+
+        return changed;
     }
 
     @Override
@@ -239,6 +453,7 @@ public class BackendRegistry implements ConfigurationChangeListener {
         final Multimap<String, AuthFailureListener> authBackendFailureListeners0 = ArrayListMultimap.create();
         final List<ClientBlockRegistry<InetAddress>> ipClientBlockRegistries0 = new ArrayList<>();
         final Multimap<String, ClientBlockRegistry<String>> authBackendClientBlockRegistries0 = ArrayListMultimap.create();
+        final Map<String, AbstractRateLimiter<?>> rateLimiters0 = new HashMap<>();
 
         final Map<String, Settings> authzDyn = settings.getGroups("searchguard.dynamic.authz");
 
@@ -333,7 +548,7 @@ public class BackendRegistry implements ConfigurationChangeListener {
         }
 
         createAuthFailureListeners(settings.getGroups("searchguard.dynamic.auth_failure_listeners"), ipAuthFailureListeners0,
-                authBackendFailureListeners0, ipClientBlockRegistries0, authBackendClientBlockRegistries0, destroyableComponents0);
+                authBackendFailureListeners0, ipClientBlockRegistries0, authBackendClientBlockRegistries0, rateLimiters0, destroyableComponents0);
 
         invalidateCache();
 
@@ -352,6 +567,7 @@ public class BackendRegistry implements ConfigurationChangeListener {
         ipClientBlockRegistries = Collections.unmodifiableList(ipClientBlockRegistries0);
         authBackendClientBlockRegistries = Multimaps.unmodifiableMultimap(authBackendClientBlockRegistries0);
         authBackendFailureListeners = Multimaps.unmodifiableMultimap(authBackendFailureListeners0);
+        rateLimiters = Collections.unmodifiableMap(rateLimiters0);
 
         //SG6 no default authc
         initialized = !restAuthDomains.isEmpty() || anonymousAuthEnabled;
@@ -366,7 +582,8 @@ public class BackendRegistry implements ConfigurationChangeListener {
 
     private void createAuthFailureListeners(Map<String, Settings> authFailureListenerSettings, List<AuthFailureListener> ipAuthFailureListeners,
             Multimap<String, AuthFailureListener> authBackendFailureListeners, List<ClientBlockRegistry<InetAddress>> ipClientBlockRegistries,
-            Multimap<String, ClientBlockRegistry<String>> authBackendUserClientBlockRegistries, List<Destroyable> destroyableComponents0) {
+            Multimap<String, ClientBlockRegistry<String>> authBackendUserClientBlockRegistries, Map<String, AbstractRateLimiter<?>> rateLimiters,
+            List<Destroyable> destroyableComponents0) {
 
         for (Map.Entry<String, Settings> entry : authFailureListenerSettings.entrySet()) {
             Settings entrySettings = entry.getValue();
@@ -409,6 +626,15 @@ public class BackendRegistry implements ConfigurationChangeListener {
                 }
             }
 
+            if (authFailureListener instanceof AbstractRateLimiter) {
+                final AbstractRateLimiter<?> rateLimiter = (AbstractRateLimiter<?>) authFailureListener;
+                rateLimiters.put(entry.getKey(), rateLimiter);
+
+                if (clientBlockPropagator != null) {
+                    rateLimiter.setClientBlockPropagator(entry.getKey(), clientBlockPropagator);
+                }
+            }
+
             if (authFailureListener instanceof Destroyable) {
                 destroyableComponents0.add((Destroyable) authFailureListener);
             }
@@ -469,7 +695,7 @@ public class BackendRegistry implements ConfigurationChangeListener {
             } else {
                 //auth credentials submitted
                 //impersonation not possible, if requested it will be ignored
-                authenticatedUser = authcz(authenticatedUserCacheTransport, transportRoleCache, creds, authDomain.getBackend(), transportAuthorizers);
+                authenticatedUser = authcz(authenticatedUserCacheTransport, transportRoleCache, creds, authDomain, "transport", transportAuthorizers);
             }
 
             if (authenticatedUser == null) {
@@ -576,10 +802,31 @@ public class BackendRegistry implements ConfigurationChangeListener {
 
         HTTPAuthenticator firstChallengingHttpAuthenticator = null;
 
-        //loop over all http/rest auth domains
-        for (final AuthDomain authDomain : restAuthDomains) {
+        final String authorizationHeader = request.header("Authorization");
+        final SortedSet<AuthDomain> restAuthDomains = this.restAuthDomains;
+        final User cachedUser = getCachedRestUser(request, authorizationHeader, restAuthDomains);
+
+        if (cachedUser != null) {
+            final String tenant = Utils.coalesce(request.header("sgtenant"), request.header("sg_tenant"));
+
+            if (log.isDebugEnabled()) {
+                log.debug("User '{}' is authenticated (cached)", cachedUser);
+                log.debug("sgtenant '{}'", tenant);
+            }
+
+            cachedUser.setRequestedTenant(tenant);
+            authenticatedUser = cachedUser;
+            authenticated = true;
+        }
+
+        //the result only depends on the authorization header as long as only basic auth domains were tried
+        boolean headerOnly = true;
+
+        //loop over all http/rest auth domains, unless we got a cache hit
+        for (final AuthDomain authDomain : authenticated ? Collections.<AuthDomain> emptySortedSet() : restAuthDomains) {
 
             final HTTPAuthenticator httpAuthenticator = authDomain.getHttpAuthenticator();
+            headerOnly = headerOnly && httpAuthenticator.getClass() == HTTPBasicAuthenticator.class;
 
             if (authDomain.isChallenge() && firstChallengingHttpAuthenticator == null) {
                 firstChallengingHttpAuthenticator = httpAuthenticator;
@@ -639,7 +886,7 @@ public class BackendRegistry implements ConfigurationChangeListener {
             }
 
             //http completed       
-            authenticatedUser = authcz(userCache, restRoleCache, ac, authDomain.getBackend(), restAuthorizers);
+            authenticatedUser = authcz(userCache, restRoleCache, ac, authDomain, "rest", restAuthorizers);
 
             if (authenticatedUser == null) {
                 if (log.isDebugEnabled()) {
@@ -673,6 +920,11 @@ public class BackendRegistry implements ConfigurationChangeListener {
 
             authenticatedUser.setRequestedTenant(tenant);
             authenticated = true;
+
+            if (headerOnly && userCache.getIfPresent(ac) == authenticatedUser) {
+                restAuthenticationCache.put(authorizationHeader,
+                        new RestAuthenticationCache.Entry(restAuthDomains, authDomain, ac, authenticatedUser));
+            }
             break;
         } //end looping auth domains
 
@@ -728,6 +980,46 @@ public class BackendRegistry implements ConfigurationChangeListener {
         return authenticated;
     }
 
+    /**
+     *
+     * @return true if the request can be authenticated from the rest fast path cache, without any backend call
+     */
+    public boolean isCachedRestRequest(final RestRequest request) {
+        final String authorizationHeader = request.header("Authorization");
+
+        if (authorizationHeader == null || request.hasParam("force_login")) {
+            return false;
+        }
+
+        final RestAuthenticationCache.Entry entry = restAuthenticationCache.get(authorizationHeader);
+        return entry != null && entry.authDomains == restAuthDomains && userCache.getIfPresent(entry.credentials) == entry.user;
+    }
+
+    /**
+     * @return the user a previous request with the same authorization header was authenticated as
+     * or null if that is not known or not valid anymore
+     */
+    private User getCachedRestUser(final RestRequest request, final String authorizationHeader, final SortedSet<AuthDomain> restAuthDomains) {
+
+        if (authorizationHeader == null || request.hasParam("force_login")) {
+            return null;
+        }
+
+        final RestAuthenticationCache.Entry entry = restAuthenticationCache.get(authorizationHeader);
+
+        //the user cache is authoritative, an entry is only valid as long as the user is cached there
+        if (entry == null || entry.authDomains != restAuthDomains || userCache.getIfPresent(entry.credentials) != entry.user) {
+            return null;
+        }
+
+        if (isBlocked(entry.authDomain.getBackend().getClass().getName(), entry.user.getName())) {
+            return null;
+        }
+
+        org.apache.logging.log4j.ThreadContext.put("user", entry.user.getName());
+        return entry.user;
+    }
+
     private void notifyIpAuthFailureListeners(RestRequest request, AuthCredentials authCredentials) {
         notifyIpAuthFailureListeners(
                 (request.getRemoteAddress() instanceof InetSocketAddress) ? ((InetSocketAddress) request.getRemoteAddress()).getAddress() : null,
@@ -781,7 +1073,7 @@ public class BackendRegistry implements ConfigurationChangeListener {
         }
     }
 
-    private void authz(User authenticatedUser, Cache<User, Set<String>> roleCache, final Set<AuthorizationBackend> authorizers) {
+    private void authz(final User authenticatedUser, final Cache<User, Set<String>> roleCache, final Set<AuthorizationBackend> authorizers) {
 
         if (authenticatedUser == null) {
             return;
@@ -801,6 +1093,31 @@ public class BackendRegistry implements ConfigurationChangeListener {
             return;
         }
 
+        if (roleCache == null) {
+            fillRoles(authenticatedUser, authorizers);
+            return;
+        }
+
+        //concurrent misses for the same user wait for a single lookup instead of all hitting the backends
+        try {
+            final Set<String> backendRoles = roleCache.get(authenticatedUser, new Callable<Set<String>>() {
+                @Override
+                public Set<String> call() throws Exception {
+                    //only the roles of the authorizers are cached, roles from authentication are added to each user anyway
+                    final Set<String> authenticationRoles = new HashSet<String>(authenticatedUser.getRoles());
+                    fillRoles(authenticatedUser, authorizers);
+                    final Set<String> authorizationRoles = new HashSet<String>(authenticatedUser.getRoles());
+                    authorizationRoles.removeAll(authenticationRoles);
+                    return authorizationRoles;
+                }
+            });
+            authenticatedUser.addRoles(new HashSet<String>(backendRoles));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            log.error("Cannot retrieve roles for {} due to {}", authenticatedUser, e.getCause().toString(), e.getCause());
+        }
+    }
+
+    private void fillRoles(final User authenticatedUser, final Set<AuthorizationBackend> authorizers) {
         for (final AuthorizationBackend ab : authorizers) {
             try {
                 if (log.isTraceEnabled()) {
@@ -811,10 +1128,6 @@ public class BackendRegistry implements ConfigurationChangeListener {
                 log.error("Cannot retrieve roles for {} from {} due to {}", authenticatedUser, ab.getType(), e.toString(), e);
             }
         }
-
-        if (roleCache != null) {
-            roleCache.put(authenticatedUser, new HashSet<String>(authenticatedUser.getRoles()));
-        }
     }
 
     /**
@@ -826,10 +1139,11 @@ public class BackendRegistry implements ConfigurationChangeListener {
      * @return null if user cannot b authenticated
      */
     private User authcz(final Cache<AuthCredentials, User> cache, Cache<User, Set<String>> roleCache, final AuthCredentials ac,
-            final AuthenticationBackend authBackend, final Set<AuthorizationBackend> authorizers) {
+            final AuthDomain authDomain, final String scope, final Set<AuthorizationBackend> authorizers) {
         if (ac == null) {
             return null;
         }
+        final AuthenticationBackend authBackend = authDomain.getBackend();
         try {
 
             //noop backend configured and no authorizers
@@ -846,9 +1160,25 @@ public class BackendRegistry implements ConfigurationChangeListener {
                         log.trace("Credentials for user " + ac.getUsername() + " not cached, return from " + authBackend.getType()
                                 + " backend directly");
                     }
+                    final SharedUserCache sharedUserCache = BackendRegistry.this.sharedUserCache;
+
+                    if (sharedUserCache != null) {
+                        final User sharedUser = sharedUserCache.get(scope, authDomain, ac);
+                        if (sharedUser != null) {
+                            if (log.isTraceEnabled()) {
+                                log.trace("User " + ac.getUsername() + " authenticated by another node");
+                            }
+                            return sharedUser;
+                        }
+                    }
+
                     final User authenticatedUser = authBackend.authenticate(ac);
                     authz(authenticatedUser, roleCache, authorizers);
 
+                    if (sharedUserCache != null) {
+                        sharedUserCache.put(scope, authDomain, ac, authenticatedUser);
+                    }
+
                     return authenticatedUser;
                 }
             });
@@ -1023,6 +1353,67 @@ public class BackendRegistry implements ConfigurationChangeListener {
         return pkiUser;
     }
 
+    /**
+     * Keeps shared authentication cache entries which were put by another node
+     *
+     * @return the number of kept entries
+     */
+    public int applyRemoteSharedCacheEntries(final Map<String, SharedAuthenticationCache.Entry> entries) {
+        if (sharedUserCache == null || clusterSharedAuthenticationCache == null) {
+            return 0;
+        }
+
+        return clusterSharedAuthenticationCache.putRemote(entries);
+    }
+
+    /**
+     * Applies failed logins and blocks which were observed by another node
+     *
+     * @return the number of applied entries
+     */
+    public int applyRemoteClientBlocks(final Map<String, Map<String, Integer>> failures, final Map<String, Set<String>> blocks) {
+        final Map<String, AbstractRateLimiter<?>> rateLimiters = this.rateLimiters;
+        int applied = 0;
+
+        for (final Map.Entry<String, Map<String, Integer>> entry : failures.entrySet()) {
+            final AbstractRateLimiter<?> rateLimiter = rateLimiters.get(entry.getKey());
+
+            if (rateLimiter == null) {
+                log.debug("Ignoring failed logins for unknown auth failure listener {}", entry.getKey());
+                continue;
+            }
+
+            for (final Map.Entry<String, Integer> clientFailures : entry.getValue().entrySet()) {
+                try {
+                    rateLimiter.onRemoteFailures(clientFailures.getKey(), clientFailures.getValue());
+                    applied++;
+                } catch (final Exception e) {
+                    log.warn("Unable to apply failed logins of {} for {}", clientFailures.getKey(), entry.getKey(), e);
+                }
+            }
+        }
+
+        for (final Map.Entry<String, Set<String>> entry : blocks.entrySet()) {
+            final AbstractRateLimiter<?> rateLimiter = rateLimiters.get(entry.getKey());
+
+            if (rateLimiter == null) {
+                log.debug("Ignoring blocks for unknown auth failure listener {}", entry.getKey());
+                continue;
+            }
+
+            for (final String clientId : entry.getValue()) {
+                try {
+                    rateLimiter.onRemoteBlock(clientId);
+                    applied++;
+                } catch (final Exception e) {
+                    log.warn("Unable to apply block of {} for {}", clientId, entry.getKey(), e);
+                }
+            }
+        }
+
+        return applied;
+    }
+
     private boolean isBlocked(InetAddress address) {
         if (this.ipClientBlockRegistries == null || this.ipClientBlockRegistries.isEmpty()) {
             return false;
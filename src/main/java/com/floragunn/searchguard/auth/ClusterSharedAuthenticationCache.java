@@ -0,0 +1,168 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.auth;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ThreadContext.StoredContext;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import com.floragunn.searchguard.action.sharedcache.SharedCacheEntriesAction;
+import com.floragunn.searchguard.action.sharedcache.SharedCacheEntriesRequest;
+import com.floragunn.searchguard.action.sharedcache.SharedCacheEntriesResponse;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Shared authentication cache kept by every node of the cluster. Entries put on one node are sent in batches
+ * to all other nodes, at most once per interval. Invalidations are not sent, because config updates and user
+ * cache invalidations are executed on all nodes anyway.
+ */
+public class ClusterSharedAuthenticationCache implements SharedAuthenticationCache {
+
+    private static final int MAX_PENDING_ENTRIES = 10_000;
+
+    private final Logger log = LogManager.getLogger(this.getClass());
+
+    private final ThreadPool threadPool;
+    private final Client client;
+    private final ClusterService clusterService;
+    private final TimeValue interval;
+    private final Cache<String, Entry> entries;
+
+    private Map<String, Entry> pendingEntries = new HashMap<>();
+    private boolean flushScheduled;
+
+    public ClusterSharedAuthenticationCache(final ThreadPool threadPool, final Client client, final ClusterService clusterService,
+            final TimeValue interval, final long maxSize) {
+        this.threadPool = threadPool;
+        this.client = client;
+        this.clusterService = clusterService;
+        this.interval = interval;
+        this.entries = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    @Override
+    public Entry get(final String key) {
+        final Entry entry = entries.getIfPresent(key);
+
+        if (entry != null && entry.getExpiresAt() < System.currentTimeMillis()) {
+            entries.asMap().remove(key, entry);
+            return null;
+        }
+
+        return entry;
+    }
+
+    @Override
+    public void put(final String key, final Entry entry) {
+        entries.put(key, entry);
+
+        synchronized (this) {
+            if (pendingEntries.size() >= MAX_PENDING_ENTRIES && !pendingEntries.containsKey(key)) {
+                // the other nodes authenticate this user themselves
+                return;
+            }
+
+            pendingEntries.put(key, entry);
+
+            if (!flushScheduled) {
+                flushScheduled = true;
+                threadPool.schedule(this::flush, interval, ThreadPool.Names.GENERIC);
+            }
+        }
+    }
+
+    /**
+     * Keeps entries which were put by another node
+     *
+     * @return the number of kept entries
+     */
+    public int putRemote(final Map<String, Entry> remoteEntries) {
+        final long now = System.currentTimeMillis();
+        int kept = 0;
+
+        for (final Map.Entry<String, Entry> entry : remoteEntries.entrySet()) {
+            if (entry.getValue().getExpiresAt() >= now) {
+                entries.put(entry.getKey(), entry.getValue());
+                kept++;
+            }
+        }
+
+        return kept;
+    }
+
+    @Override
+    public void invalidateUsers(final Set<String> usernames) {
+        entries.asMap().values().removeIf(entry -> usernames.contains(entry.getUsername()));
+
+        synchronized (this) {
+            pendingEntries.values().removeIf(entry -> usernames.contains(entry.getUsername()));
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        entries.invalidateAll();
+
+        synchronized (this) {
+            pendingEntries.clear();
+        }
+    }
+
+    void flush() {
+        final Map<String, Entry> flushed;
+
+        synchronized (this) {
+            flushed = pendingEntries;
+            pendingEntries = new HashMap<>();
+            flushScheduled = false;
+        }
+
+        if (flushed.isEmpty() || clusterService.state().nodes().getSize() <= 1) {
+            return;
+        }
+
+        final SharedCacheEntriesRequest request = new SharedCacheEntriesRequest(clusterService.localNode().getId(), flushed);
+
+        try (StoredContext ctx = threadPool.getThreadContext().stashContext()) {
+            client.execute(SharedCacheEntriesAction.INSTANCE, request, new ActionListener<SharedCacheEntriesResponse>() {
+
+                @Override
+                public void onResponse(final SharedCacheEntriesResponse response) {
+                    if (response.hasFailures()) {
+                        log.warn("Unable to share authenticated users with some nodes: {}", response.failures());
+                    }
+                }
+
+                @Override
+                public void onFailure(final Exception e) {
+                    log.warn("Unable to share authenticated users with the other nodes", e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.auth;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.floragunn.searchguard.support.KeyedDigest;
+import com.floragunn.searchguard.user.AuthCredentials;
+import com.floragunn.searchguard.user.User;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Maps the raw value of a REST Authorization header to the user it was authenticated as, so repeated requests
+ * with the same header skip credential parsing and the auth domain loop.
+ * Headers are only kept as keyed digest. An entry is only valid as long as the regular
+ * user cache still holds the same user for the credentials.
+ */
+final class RestAuthenticationCache {
+
+    private final KeyedDigest keyedDigest = new KeyedDigest();
+    private final Cache<ByteBuffer, Entry> cache;
+
+    RestAuthenticationCache(final int ttlInMin, final long maxSize) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(ttlInMin, TimeUnit.MINUTES).recordStats().build();
+    }
+
+    Entry get(final String authorizationHeader) {
+        if (authorizationHeader == null) {
+            return null;
+        }
+        return cache.getIfPresent(digest(authorizationHeader));
+    }
+
+    void put(final String authorizationHeader, final Entry entry) {
+        if (authorizationHeader != null) {
+            cache.put(digest(authorizationHeader), entry);
+        }
+    }
+
+    Cache<?, ?> getCache() {
+        return cache;
+    }
+
+    void invalidateUsers(final Set<String> usernames) {
+        cache.asMap().values().removeIf(entry -> usernames.contains(entry.user.getName()));
+    }
+
+    void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private ByteBuffer digest(final String authorizationHeader) {
+        return keyedDigest.digest(authorizationHeader.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static final class Entry {
+        //auth domains the user was authenticated with, entries from before a config change are ignored
+        final Object authDomains;
+        final AuthDomain authDomain;
+        final AuthCredentials credentials;
+        final User user;
+
+        Entry(final Object authDomains, final AuthDomain authDomain, final AuthCredentials credentials, final User user) {
+            this.authDomains = authDomains;
+            this.authDomain = authDomain;
+            this.credentials = credentials;
+            this.user = user;
+        }
+    }
+}
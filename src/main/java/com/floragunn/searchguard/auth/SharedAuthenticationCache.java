@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.floragunn.searchguard.auth;
+
+import java.util.Set;
+
+/**
+ * Optional authentication cache shared by the nodes of a cluster, so a user authenticated on one node
+ * is not authenticated against the backends again on every other node.
+ * <p/>
+ * Entries are signed and verified by the nodes, the store itself only has to keep them until they expire.
+ * {@link ClusterSharedAuthenticationCache} is used with {@code searchguard.cache.shared.enabled}. Other
+ * implementations are configured with {@code searchguard.cache.shared.impl} and need a public constructor
+ * taking the node {@link org.elasticsearch.common.settings.Settings}.
+ */
+public interface SharedAuthenticationCache {
+
+    /**
+     *
+     * @return the entry for the key or null if there is none (expired entries may be returned)
+     */
+    Entry get(String key);
+
+    void put(String key, Entry entry);
+
+    void invalidateUsers(Set<String> usernames);
+
+    void invalidateAll();
+
+    final class Entry {
+        private final String username;
+        private final long expiresAt;
+        private final String user;
+        private final byte[] signature;
+
+        /**
+         * @param username name of the cached user, for invalidation
+         * @param expiresAt expiry in epoch milliseconds
+         * @param user the serialized user
+         * @param signature signature of key, expiry and user
+         */
+        public Entry(final String username, final long expiresAt, final String user, final byte[] signature) {
+            this.username = username;
+            this.expiresAt = expiresAt;
+            this.user = user;
+            this.signature = signature;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        public String getUser() {
+            return user;
+        }
+
+        public byte[] getSignature() {
+            return signature;
+        }
+    }
+}
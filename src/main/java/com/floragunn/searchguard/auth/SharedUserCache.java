@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.floragunn.searchguard.auth;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.floragunn.searchguard.support.Base64Helper;
+import com.floragunn.searchguard.support.KeyedDigest;
+import com.floragunn.searchguard.user.AuthCredentials;
+import com.floragunn.searchguard.user.User;
+
+/**
+ * Signs users published to and verifies users taken from a {@link SharedAuthenticationCache}.
+ * Keys and signatures are HMACs with the cluster wide secret, so neither credentials nor
+ * unsigned users ever end up in the shared store.
+ * Only credentials with a password are shared. Without one (JWT, proxy, Kerberos, client certificates)
+ * the user name alone would be the key and a later token for the same subject would get the roles and
+ * attributes derived from an earlier one.
+ */
+final class SharedUserCache {
+
+    private static final byte[] KEY = "key".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SIGNATURE = "signature".getBytes(StandardCharsets.UTF_8);
+
+    protected final Logger log = LogManager.getLogger(this.getClass());
+    private final SharedAuthenticationCache store;
+    private final KeyedDigest keyedDigest;
+    private final long ttlInMillis;
+
+    SharedUserCache(final SharedAuthenticationCache store, final byte[] secret, final int ttlInMin) {
+        this.store = store;
+        this.keyedDigest = new KeyedDigest(secret);
+        this.ttlInMillis = TimeUnit.MINUTES.toMillis(ttlInMin);
+    }
+
+    /**
+     *
+     * @param scope distinguishes caches with different authorizers (rest, transport)
+     * @return the verified user or null
+     */
+    User get(final String scope, final AuthDomain authDomain, final AuthCredentials ac) {
+        final byte[] password = ac.getPassword();
+
+        if (password == null) {
+            return null;
+        }
+
+        final String key = key(scope, authDomain, ac.getUsername(), password);
+        final SharedAuthenticationCache.Entry entry = store.get(key);
+
+        if (entry == null || entry.getExpiresAt() < System.currentTimeMillis()) {
+            return null;
+        }
+
+        if (!MessageDigest.isEqual(entry.getSignature(), sign(key, entry.getExpiresAt(), entry.getUser()))) {
+            log.warn("Invalid signature for shared cache entry of {}, ignore it", entry.getUsername());
+            return null;
+        }
+
+        final User user = (User) Base64Helper.deserializeObject(entry.getUser());
+        return ac.getUsername().equals(entry.getUsername()) ? user : null;
+    }
+
+    void put(final String scope, final AuthDomain authDomain, final AuthCredentials ac, final User user) {
+        final byte[] password = ac.getPassword();
+
+        if (password == null) {
+            return;
+        }
+
+        final String key = key(scope, authDomain, ac.getUsername(), password);
+        final long expiresAt = System.currentTimeMillis() + ttlInMillis;
+        final String serializedUser = Base64Helper.serializeObject(user);
+        store.put(key, new SharedAuthenticationCache.Entry(ac.getUsername(), expiresAt, serializedUser, sign(key, expiresAt, serializedUser)));
+    }
+
+    void invalidateUsers(final Set<String> usernames) {
+        store.invalidateUsers(usernames);
+    }
+
+    void invalidateAll() {
+        store.invalidateAll();
+    }
+
+    private String key(final String scope, final AuthDomain authDomain, final String username, final byte[] password) {
+        final ByteBuffer key = keyedDigest.digest(KEY, scope.getBytes(StandardCharsets.UTF_8),
+                (authDomain.getBackend().getType() + "#" + authDomain.getOrder()).getBytes(StandardCharsets.UTF_8),
+                username.getBytes(StandardCharsets.UTF_8), password);
+        Arrays.fill(password, (byte) 0);
+        return Base64.getEncoder().encodeToString(key.array());
+    }
+
+    private byte[] sign(final String key, final long expiresAt, final String serializedUser) {
+        return keyedDigest.digest(SIGNATURE, key.getBytes(StandardCharsets.UTF_8), ByteBuffer.allocate(8).putLong(expiresAt).array(),
+                serializedUser.getBytes(StandardCharsets.UTF_8)).array();
+    }
+}
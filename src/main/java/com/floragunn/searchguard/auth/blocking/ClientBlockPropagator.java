@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015-2019 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.floragunn.searchguard.auth.blocking;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ThreadContext.StoredContext;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import com.floragunn.searchguard.action.clientblocks.ClientBlocksAction;
+import com.floragunn.searchguard.action.clientblocks.ClientBlocksRequest;
+import com.floragunn.searchguard.action.clientblocks.ClientBlocksResponse;
+
+/**
+ * Collects failed logins and blocks observed by the rate limiters of this node and sends them in batches
+ * to all other nodes. A batch is sent at most once per interval, starting with the first event after the
+ * previous batch.
+ */
+public class ClientBlockPropagator {
+
+    private static final int MAX_PENDING_CLIENTS = 10_000;
+
+    private final Logger log = LogManager.getLogger(this.getClass());
+
+    private final ThreadPool threadPool;
+    private final Client client;
+    private final ClusterService clusterService;
+    private final TimeValue interval;
+
+    private Map<String, Map<String, Integer>> pendingFailures = new HashMap<>();
+    private Map<String, Set<String>> pendingBlocks = new HashMap<>();
+    private int pendingClients;
+    private boolean flushScheduled;
+
+    public ClientBlockPropagator(final ThreadPool threadPool, final Client client, final ClusterService clusterService, final TimeValue interval) {
+        this.threadPool = threadPool;
+        this.client = client;
+        this.clusterService = clusterService;
+        this.interval = interval;
+    }
+
+    public synchronized void addFailure(final String listener, final String clientId) {
+        final Map<String, Integer> failures = pendingFailures.computeIfAbsent(listener, k -> new HashMap<>());
+
+        if (!failures.containsKey(clientId)) {
+            if (pendingClients >= MAX_PENDING_CLIENTS) {
+                // the local rate limiter still counts this failure
+                return;
+            }
+            pendingClients++;
+        }
+
+        failures.merge(clientId, 1, Integer::sum);
+        scheduleFlush();
+    }
+
+    public synchronized void addBlock(final String listener, final String clientId) {
+        if (pendingBlocks.computeIfAbsent(listener, k -> new HashSet<>()).add(clientId)) {
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            threadPool.schedule(this::flush, interval, ThreadPool.Names.GENERIC);
+        }
+    }
+
+    void flush() {
+        final Map<String, Map<String, Integer>> failures;
+        final Map<String, Set<String>> blocks;
+
+        synchronized (this) {
+            failures = pendingFailures;
+            blocks = pendingBlocks;
+            pendingFailures = new HashMap<>();
+            pendingBlocks = new HashMap<>();
+            pendingClients = 0;
+            flushScheduled = false;
+        }
+
+        if (clusterService.state().nodes().getSize() <= 1) {
+            return;
+        }
+
+        final ClientBlocksRequest request = new ClientBlocksRequest(clusterService.localNode().getId(), failures, blocks);
+
+        try (StoredContext ctx = threadPool.getThreadContext().stashContext()) {
+            client.execute(ClientBlocksAction.INSTANCE, request, new ActionListener<ClientBlocksResponse>() {
+
+                @Override
+                public void onResponse(final ClientBlocksResponse response) {
+                    if (response.hasFailures()) {
+                        log.warn("Unable to propagate failed logins and blocked clients to some nodes: {}", response.failures());
+                    }
+                }
+
+                @Override
+                public void onFailure(final Exception e) {
+                    log.warn("Unable to propagate failed logins and blocked clients", e);
+                }
+            });
+        }
+    }
+}
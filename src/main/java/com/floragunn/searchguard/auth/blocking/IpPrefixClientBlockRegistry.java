@@ -0,0 +1,400 @@
+/*
+ * Copyright 2015-2019 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.floragunn.searchguard.auth.blocking;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.network.InetAddresses;
+
+/**
+ * Block registry for client addresses which can also block whole networks (CIDR ranges).
+ * <p/>
+ * Blocked networks are kept in one open addressing table per prefix length, with the addresses stored
+ * as primitives. A lookup masks the address for each prefix length in use and probes the respective table,
+ * which does not allocate for IPv4 addresses and does not take a lock unless a block is written concurrently.
+ * Expired blocks are dropped lazily; if {@code maxEntries} networks are blocked, further blocks are
+ * rejected instead of evicting existing ones.
+ */
+public class IpPrefixClientBlockRegistry implements ClientBlockRegistry<InetAddress> {
+
+    private static final int IPV4_BITS = 32;
+    private static final int IPV6_BITS = 128;
+
+    private final Logger log = LogManager.getLogger(this.getClass());
+
+    private final long expiryNanos;
+    private final int maxEntries;
+
+    private final PrefixTable[] ipv4Tables = new PrefixTable[IPV4_BITS + 1];
+    private final PrefixTable[] ipv6Tables = new PrefixTable[IPV6_BITS + 1];
+    private volatile int[] ipv4PrefixLengths = new int[0];
+    private volatile int[] ipv6PrefixLengths = new int[0];
+    private int entries;
+
+    public IpPrefixClientBlockRegistry(long expiryMs, int maxEntries) {
+        this.expiryNanos = TimeUnit.MILLISECONDS.toNanos(expiryMs);
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public boolean isBlocked(InetAddress clientId) {
+        final long now = System.nanoTime();
+
+        if (clientId instanceof Inet4Address) {
+            // The hash code of an Inet4Address is the address itself, this avoids the copy made by getAddress()
+            final long address = clientId.hashCode() & 0xFFFFFFFFL;
+
+            for (final int prefixLength : ipv4PrefixLengths) {
+                if (ipv4Tables[prefixLength].isBlocked(0, address & ipv4Mask(prefixLength), now)) {
+                    return true;
+                }
+            }
+        } else {
+            final int[] prefixLengths = ipv6PrefixLengths;
+
+            if (prefixLengths.length == 0) {
+                return false;
+            }
+
+            final ByteBuffer address = ByteBuffer.wrap(clientId.getAddress());
+            final long high = address.getLong(0);
+            final long low = address.getLong(8);
+
+            for (final int prefixLength : prefixLengths) {
+                if (ipv6Tables[prefixLength].isBlocked(high & ipv6HighMask(prefixLength), low & ipv6LowMask(prefixLength), now)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public void block(InetAddress clientId) {
+        block(clientId, clientId instanceof Inet4Address ? IPV4_BITS : IPV6_BITS);
+    }
+
+    /**
+     * Blocks a network given in CIDR notation, like 192.168.1.0/24
+     */
+    public void block(String cidr) {
+        final Tuple<InetAddress, Integer> network = InetAddresses.parseCidr(cidr);
+        block(network.v1(), network.v2());
+    }
+
+    /**
+     * Blocks all addresses which share the first {@code prefixLength} bits with {@code address}
+     */
+    public synchronized void block(InetAddress address, int prefixLength) {
+        final boolean ipv4 = address instanceof Inet4Address;
+
+        if (prefixLength < 0 || prefixLength > (ipv4 ? IPV4_BITS : IPV6_BITS)) {
+            throw new IllegalArgumentException("Invalid prefix length " + prefixLength + " for " + address);
+        }
+
+        final long now = System.nanoTime();
+
+        if (entries >= maxEntries) {
+            purgeExpired(now);
+
+            if (entries >= maxEntries) {
+                log.warn("Cannot block " + address.getHostAddress() + "/" + prefixLength + " because already " + entries
+                        + " networks are blocked. Consider raising max_blocked_clients.");
+                return;
+            }
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("Blocking " + address.getHostAddress() + "/" + prefixLength);
+        }
+
+        final boolean added;
+
+        if (ipv4) {
+            final long masked = (address.hashCode() & 0xFFFFFFFFL) & ipv4Mask(prefixLength);
+            added = table(ipv4Tables, prefixLength, true).put(0, masked, now + expiryNanos);
+        } else {
+            final ByteBuffer bytes = ByteBuffer.wrap(address.getAddress());
+            added = table(ipv6Tables, prefixLength, false).put(bytes.getLong(0) & ipv6HighMask(prefixLength),
+                    bytes.getLong(8) & ipv6LowMask(prefixLength), now + expiryNanos);
+        }
+
+        if (added) {
+            entries++;
+        }
+    }
+
+    @Override
+    public Class<InetAddress> getClientIdType() {
+        return InetAddress.class;
+    }
+
+    /**
+     * The network of the given length which contains {@code address}
+     */
+    public static InetAddress network(InetAddress address, int prefixLength) {
+        final byte[] bytes = address.getAddress();
+
+        if (prefixLength < 0 || prefixLength > bytes.length * 8) {
+            throw new IllegalArgumentException("Invalid prefix length " + prefixLength + " for " + address);
+        }
+
+        for (int i = 0; i < bytes.length; i++) {
+            final int remainingBits = prefixLength - i * 8;
+
+            if (remainingBits <= 0) {
+                bytes[i] = 0;
+            } else if (remainingBits < 8) {
+                bytes[i] &= (byte) (0xFF << (8 - remainingBits));
+            }
+        }
+
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            // only thrown for illegal address lengths
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private PrefixTable table(final PrefixTable[] tables, final int prefixLength, final boolean ipv4) {
+        PrefixTable table = tables[prefixLength];
+
+        if (table == null) {
+            table = new PrefixTable();
+            tables[prefixLength] = table;
+
+            // publishing the lengths array makes the new table visible to readers
+            if (ipv4) {
+                ipv4PrefixLengths = withPrefixLength(ipv4PrefixLengths, prefixLength);
+            } else {
+                ipv6PrefixLengths = withPrefixLength(ipv6PrefixLengths, prefixLength);
+            }
+        }
+
+        return table;
+    }
+
+    private static int[] withPrefixLength(final int[] prefixLengths, final int prefixLength) {
+        final int[] result = Arrays.copyOf(prefixLengths, prefixLengths.length + 1);
+        result[prefixLengths.length] = prefixLength;
+        Arrays.sort(result);
+        return result;
+    }
+
+    private void purgeExpired(final long now) {
+        int remaining = 0;
+
+        for (final int prefixLength : ipv4PrefixLengths) {
+            remaining += ipv4Tables[prefixLength].purgeExpired(now);
+        }
+
+        for (final int prefixLength : ipv6PrefixLengths) {
+            remaining += ipv6Tables[prefixLength].purgeExpired(now);
+        }
+
+        entries = remaining;
+    }
+
+    private static long ipv4Mask(final int prefixLength) {
+        return prefixLength == 0 ? 0 : (0xFFFFFFFFL << (IPV4_BITS - prefixLength)) & 0xFFFFFFFFL;
+    }
+
+    private static long ipv6HighMask(final int prefixLength) {
+        if (prefixLength >= 64) {
+            return -1L;
+        }
+        return prefixLength == 0 ? 0 : -1L << (64 - prefixLength);
+    }
+
+    private static long ipv6LowMask(final int prefixLength) {
+        if (prefixLength <= 64) {
+            return 0;
+        }
+        return prefixLength == IPV6_BITS ? -1L : -1L << (IPV6_BITS - prefixLength);
+    }
+
+    /**
+     * Open addressing hash set of 128 bit keys with an expiry per key. Written only under the monitor of the
+     * registry, read with optimistic locking.
+     */
+    private static final class PrefixTable {
+
+        private final StampedLock lock = new StampedLock();
+        private Slots slots = new Slots(16);
+        private int size;
+
+        boolean isBlocked(final long high, final long low, final long now) {
+            long stamp = lock.tryOptimisticRead();
+            boolean blocked = slots.isBlocked(high, low, now);
+
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    blocked = slots.isBlocked(high, low, now);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+
+            return blocked;
+        }
+
+        /**
+         * @return true if the key was not present before
+         */
+        boolean put(final long high, final long low, final long expiresAt) {
+            final long stamp = lock.writeLock();
+            try {
+                if ((size + 1) * 2 > slots.used.length) {
+                    slots = slots.copy(slots.used.length * 2, Long.MIN_VALUE, false);
+                }
+
+                final boolean added = slots.put(high, low, expiresAt);
+
+                if (added) {
+                    size++;
+                }
+
+                return added;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * @return the number of remaining keys
+         */
+        int purgeExpired(final long now) {
+            final long stamp = lock.writeLock();
+            try {
+                slots = slots.copy(slots.used.length, now, true);
+                size = slots.count();
+                return size;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    private static final class Slots {
+
+        private final long[] high;
+        private final long[] low;
+        private final long[] expiresAt;
+        private final boolean[] used;
+
+        Slots(final int capacity) {
+            high = new long[capacity];
+            low = new long[capacity];
+            expiresAt = new long[capacity];
+            used = new boolean[capacity];
+        }
+
+        boolean isBlocked(final long high, final long low, final long now) {
+            final int mask = used.length - 1;
+            int i = index(high, low, mask);
+
+            // bounded by the capacity so that an inconsistent optimistic read cannot loop forever
+            for (int probes = 0; probes < used.length && used[i]; probes++) {
+                if (this.high[i] == high && this.low[i] == low) {
+                    return expiresAt[i] - now > 0;
+                }
+                i = (i + 1) & mask;
+            }
+
+            return false;
+        }
+
+        boolean put(final long high, final long low, final long expiresAt) {
+            final int mask = used.length - 1;
+            int i = index(high, low, mask);
+
+            while (used[i]) {
+                if (this.high[i] == high && this.low[i] == low) {
+                    this.expiresAt[i] = expiresAt;
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+
+            this.high[i] = high;
+            this.low[i] = low;
+            this.expiresAt[i] = expiresAt;
+            this.used[i] = true;
+            return true;
+        }
+
+        Slots copy(int capacity, final long now, final boolean dropExpired) {
+            if (dropExpired) {
+                final int live = count(now);
+                while (capacity > 16 && live * 4 < capacity) {
+                    capacity /= 2;
+                }
+            }
+
+            final Slots copy = new Slots(capacity);
+
+            for (int i = 0; i < used.length; i++) {
+                if (used[i] && (!dropExpired || expiresAt[i] - now > 0)) {
+                    copy.put(high[i], low[i], expiresAt[i]);
+                }
+            }
+
+            return copy;
+        }
+
+        int count() {
+            int count = 0;
+            for (final boolean u : used) {
+                if (u) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private int count(final long now) {
+            int count = 0;
+            for (int i = 0; i < used.length; i++) {
+                if (used[i] && expiresAt[i] - now > 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private static int index(final long high, final long low, final int mask) {
+            long h = high * 0x9E3779B97F4A7C15L + low;
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            return (int) h & mask;
+        }
+    }
+}
@@ -25,25 +25,46 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.bouncycastle.crypto.generators.OpenBSDBCrypt;
 import org.elasticsearch.ElasticsearchSecurityException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import com.floragunn.searchguard.auth.AuthenticationBackend;
 import com.floragunn.searchguard.auth.AuthorizationBackend;
 import com.floragunn.searchguard.configuration.ConfigurationRepository;
 import com.floragunn.searchguard.support.ConfigConstants;
+import com.floragunn.searchguard.support.KeyedDigest;
 import com.floragunn.searchguard.user.AuthCredentials;
 import com.floragunn.searchguard.user.User;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 public class InternalAuthenticationBackend implements AuthenticationBackend, AuthorizationBackend {
 
+    private static final long MAX_VERIFIED_CREDENTIALS = 10_000;
+
     private final ConfigurationRepository configurationRepository;
+    private final ThreadPool threadPool;
+    private final KeyedDigest keyedDigest = new KeyedDigest();
+    //digest of user, password and stored hash for successfully checked passwords, a changed hash never matches
+    private final Cache<ByteBuffer, Boolean> verifiedCredentials = CacheBuilder.newBuilder().maximumSize(MAX_VERIFIED_CREDENTIALS)
+            .expireAfterWrite(1, TimeUnit.HOURS).build();
+    private volatile Tuple<Settings, Map<String, String>> alternateUsernames;
 
     public InternalAuthenticationBackend(final ConfigurationRepository configurationRepository) {
+        this(configurationRepository, null);
+    }
+
+    public InternalAuthenticationBackend(final ConfigurationRepository configurationRepository, final ThreadPool threadPool) {
         super();
         this.configurationRepository = configurationRepository;
+        this.threadPool = threadPool;
     }
 
     @Override
@@ -54,21 +75,10 @@ public class InternalAuthenticationBackend implements AuthenticationBackend, Aut
             return false;
         }
         
-        String hashed = cfg.get(user.getName() + ".hash");
-
-        if (hashed == null) {
-            
-            for(String username:cfg.names()) {
-                String u = cfg.get(username + ".username");
-                if(user.getName().equals(u)) {
-                    hashed = cfg.get(username+ ".hash");
-                    break;
-                }
-            }
-            
-            if(hashed == null) {
-                return false;
-            }
+        final String hashed = getHash(cfg, user.getName());
+
+        if(hashed == null) {
+            return false;
         }
         
         final List<String> roles = cfg.getAsList(user.getName() + ".roles", Collections.emptyList());
@@ -102,21 +112,10 @@ public class InternalAuthenticationBackend implements AuthenticationBackend, Aut
 
         }
 
-        String hashed = cfg.get(credentials.getUsername() + ".hash");
+        final String hashed = getHash(cfg, credentials.getUsername());
 
-        if (hashed == null) {
-            
-            for(String username:cfg.names()) {
-                String u = cfg.get(username + ".username");
-                if(credentials.getUsername().equals(u)) {
-                    hashed = cfg.get(username+ ".hash");
-                    break;
-                }
-            }
-            
-            if(hashed == null) {
-                throw new ElasticsearchSecurityException(credentials.getUsername() + " not found");
-            }
+        if(hashed == null) {
+            throw new ElasticsearchSecurityException(credentials.getUsername() + " not found");
         }
         
         final byte[] password = credentials.getPassword();
@@ -125,6 +124,35 @@ public class InternalAuthenticationBackend implements AuthenticationBackend, Aut
             throw new ElasticsearchSecurityException("empty passwords not supported");
         }
 
+        final ByteBuffer verifiedKey = keyedDigest.digest(credentials.getUsername().getBytes(StandardCharsets.UTF_8), password,
+                hashed.getBytes(StandardCharsets.UTF_8));
+
+        if (verifiedCredentials.getIfPresent(verifiedKey) == null) {
+            if (!checkPassword(hashed, password)) {
+                throw new ElasticsearchSecurityException("password does not match");
+            }
+            verifiedCredentials.put(verifiedKey, Boolean.TRUE);
+        } else {
+            Arrays.fill(password, (byte)0);
+        }
+
+        final List<String> roles = cfg.getAsList(credentials.getUsername() + ".roles", Collections.emptyList());
+        final Settings customAttributes = cfg.getAsSettings(credentials.getUsername() + ".attributes");
+
+        if(customAttributes != null) {
+            for(String attributeName: customAttributes.names()) {
+                credentials.addAttribute("attr.internal."+attributeName, customAttributes.get(attributeName));
+            }
+        }
+
+        return new User(credentials.getUsername(), roles, credentials);
+    }
+
+    /**
+     * bcrypt is deliberately expensive, so it runs on a bounded pool (if available) which rejects
+     * instead of queuing without limit
+     */
+    private boolean checkPassword(final String hashed, final byte[] password) {
         ByteBuffer wrap = ByteBuffer.wrap(password);
         CharBuffer buf = StandardCharsets.UTF_8.decode(wrap);
         char[] array = new char[buf.limit()];
@@ -133,20 +161,18 @@ public class InternalAuthenticationBackend implements AuthenticationBackend, Aut
         Arrays.fill(password, (byte)0);
        
         try {
-            if (OpenBSDBCrypt.checkPassword(hashed, array)) {
-                final List<String> roles = cfg.getAsList(credentials.getUsername() + ".roles", Collections.emptyList());
-                final Settings customAttributes = cfg.getAsSettings(credentials.getUsername() + ".attributes");
-
-                if(customAttributes != null) {
-                    for(String attributeName: customAttributes.names()) {
-                        credentials.addAttribute("attr.internal."+attributeName, customAttributes.get(attributeName));
-                    }
-                }
-
-                return new User(credentials.getUsername(), roles, credentials);
-            } else {
-                throw new ElasticsearchSecurityException("password does not match");
+            if (threadPool == null) {
+                return OpenBSDBCrypt.checkPassword(hashed, array);
             }
+            return threadPool.executor(ConfigConstants.SG_BCRYPT_THREAD_POOL).submit(() -> OpenBSDBCrypt.checkPassword(hashed, array)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ElasticsearchSecurityException("Interrupted while checking password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw ExceptionsHelper.convertToElastic((Exception) e.getCause());
         } finally {
             Arrays.fill(wrap.array(), (byte)0);
             Arrays.fill(buf.array(), '\0');
@@ -154,6 +180,39 @@ public class InternalAuthenticationBackend implements AuthenticationBackend, Aut
         }
     }
 
+    private String getHash(final Settings cfg, final String username) {
+        final String hashed = cfg.get(username + ".hash");
+
+        if (hashed != null) {
+            return hashed;
+        }
+
+        final String configName = getAlternateUsernames(cfg).get(username);
+        return configName == null ? null : cfg.get(configName + ".hash");
+    }
+
+    /**
+     * 
+     * @return alternate usernames (.username) to the name of the user entry, built once per loaded config
+     */
+    private Map<String, String> getAlternateUsernames(final Settings cfg) {
+        Tuple<Settings, Map<String, String>> index = alternateUsernames;
+
+        if (index == null || index.v1() != cfg) {
+            final Map<String, String> alternateUsernames0 = new HashMap<>();
+            for(String name:cfg.names()) {
+                final String username = cfg.get(name + ".username");
+                if(username != null) {
+                    alternateUsernames0.putIfAbsent(username, name);
+                }
+            }
+            index = new Tuple<>(cfg, alternateUsernames0);
+            alternateUsernames = index;
+        }
+
+        return index.v2();
+    }
+
     @Override
     public String getType() {
         return "internal";
@@ -23,6 +23,7 @@ import java.nio.file.Path;
 import org.elasticsearch.common.settings.Settings;
 
 import com.floragunn.searchguard.auth.AuthFailureListener;
+import com.floragunn.searchguard.auth.blocking.ClientBlockPropagator;
 import com.floragunn.searchguard.auth.blocking.ClientBlockRegistry;
 import com.floragunn.searchguard.auth.blocking.HeapBasedClientBlockRegistry;
 import com.floragunn.searchguard.user.AuthCredentials;
@@ -31,12 +32,25 @@ import com.floragunn.searchguard.util.ratetracking.RateTracker;
 public abstract class AbstractRateLimiter<ClientIdType> implements AuthFailureListener, ClientBlockRegistry<ClientIdType> {
     protected final ClientBlockRegistry<ClientIdType> clientBlockRegistry;
     protected final RateTracker<ClientIdType> rateTracker;
+    private volatile String name;
+    private volatile ClientBlockPropagator clientBlockPropagator;
 
     public AbstractRateLimiter(Settings settings, Path configPath, Class<ClientIdType> clientIdType) {
-        this.clientBlockRegistry = new HeapBasedClientBlockRegistry<>(settings.getAsInt("block_expiry_seconds", 60 * 10) * 1000,
-                settings.getAsInt("max_blocked_clients", 100_000), clientIdType);
+        this(settings, configPath, new HeapBasedClientBlockRegistry<>(getBlockExpiryMs(settings), getMaxBlockedClients(settings), clientIdType));
+    }
+
+    protected AbstractRateLimiter(Settings settings, Path configPath, ClientBlockRegistry<ClientIdType> clientBlockRegistry) {
+        this.clientBlockRegistry = clientBlockRegistry;
         this.rateTracker = RateTracker.create(settings.getAsInt("time_window_seconds", 60 * 60) * 1000, settings.getAsInt("allowed_tries", 10),
-                settings.getAsInt("max_tracked_clients", 100_000));
+                settings.getAsInt("max_tracked_clients", 100_000), settings.getAsInt("concurrency_level", 4));
+    }
+
+    protected static long getBlockExpiryMs(Settings settings) {
+        return settings.getAsInt("block_expiry_seconds", 60 * 10) * 1000L;
+    }
+
+    protected static int getMaxBlockedClients(Settings settings) {
+        return settings.getAsInt("max_blocked_clients", 100_000);
     }
 
     @Override
@@ -49,10 +63,78 @@ public abstract class AbstractRateLimiter<ClientIdType> implements AuthFailureLi
 
     @Override
     public void block(ClientIdType clientId) {
+        blockLocally(clientId);
+
+        final ClientBlockPropagator clientBlockPropagator = this.clientBlockPropagator;
+
+        if (clientBlockPropagator != null) {
+            clientBlockPropagator.addBlock(name, formatClientId(clientId));
+        }
+    }
+
+    /**
+     * Shares failed logins and blocks of this rate limiter with the other nodes of the cluster
+     *
+     * @param name the name of this rate limiter in the auth_failure_listeners config, which is the same on all nodes
+     */
+    public void setClientBlockPropagator(String name, ClientBlockPropagator clientBlockPropagator) {
+        this.name = name;
+        this.clientBlockPropagator = clientBlockPropagator;
+    }
+
+    /**
+     * Tracks a failed login observed on this node and blocks the client if it exceeded the allowed tries
+     */
+    protected void trackFailure(ClientIdType clientId) {
+        final ClientBlockPropagator clientBlockPropagator = this.clientBlockPropagator;
+
+        if (clientBlockPropagator != null) {
+            clientBlockPropagator.addFailure(name, formatClientId(clientId));
+        }
+
+        if (rateTracker.track(getTrackingKey(clientId))) {
+            block(clientId);
+        }
+    }
+
+    /**
+     * Failed logins observed by another node. Resulting blocks are not propagated again,
+     * as every node gets the same failures.
+     */
+    public void onRemoteFailures(String clientId, int failures) {
+        final ClientIdType parsedClientId = parseClientId(clientId);
+
+        for (int i = 0; i < failures; i++) {
+            if (rateTracker.track(getTrackingKey(parsedClientId))) {
+                blockLocally(parsedClientId);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Block issued by another node
+     */
+    public void onRemoteBlock(String clientId) {
+        blockLocally(parseClientId(clientId));
+    }
+
+    protected void blockLocally(ClientIdType clientId) {
         clientBlockRegistry.block(clientId);
-        rateTracker.reset(clientId);
+        rateTracker.reset(getTrackingKey(clientId));
+    }
+
+    /**
+     * The key under which failures of a client are counted
+     */
+    protected ClientIdType getTrackingKey(ClientIdType clientId) {
+        return clientId;
     }
 
+    protected abstract String formatClientId(ClientIdType clientId);
+
+    protected abstract ClientIdType parseClientId(String clientId);
+
     @Override
     public Class<ClientIdType> getClientIdType() {
         return clientBlockRegistry.getClientIdType();
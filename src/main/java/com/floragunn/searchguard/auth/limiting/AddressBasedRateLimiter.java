@@ -17,25 +17,90 @@
 
 package com.floragunn.searchguard.auth.limiting;
 
+import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.nio.file.Path;
 
+import org.elasticsearch.common.network.InetAddresses;
 import org.elasticsearch.common.settings.Settings;
 
 import com.floragunn.searchguard.auth.AuthFailureListener;
 import com.floragunn.searchguard.auth.blocking.ClientBlockRegistry;
+import com.floragunn.searchguard.auth.blocking.IpPrefixClientBlockRegistry;
 import com.floragunn.searchguard.user.AuthCredentials;
 
+/**
+ * Tracks failed logins per client network and blocks the network if the allowed tries are exceeded.
+ * By default the network is the single address; ipv4_prefix_length and ipv6_prefix_length can be used
+ * to track and block whole ranges, like /24 networks of a botnet.
+ */
 public class AddressBasedRateLimiter extends AbstractRateLimiter<InetAddress> implements AuthFailureListener, ClientBlockRegistry<InetAddress> {
 
+    private final IpPrefixClientBlockRegistry ipPrefixClientBlockRegistry;
+    private final int ipv4PrefixLength;
+    private final int ipv6PrefixLength;
+
     public AddressBasedRateLimiter(Settings settings, Path configPath) {
-        super(settings, configPath, InetAddress.class);
+        this(settings, configPath, new IpPrefixClientBlockRegistry(getBlockExpiryMs(settings), getMaxBlockedClients(settings)));
+    }
+
+    private AddressBasedRateLimiter(Settings settings, Path configPath, IpPrefixClientBlockRegistry ipPrefixClientBlockRegistry) {
+        super(settings, configPath, ipPrefixClientBlockRegistry);
+        this.ipPrefixClientBlockRegistry = ipPrefixClientBlockRegistry;
+        this.ipv4PrefixLength = getPrefixLength(settings, "ipv4_prefix_length", 32);
+        this.ipv6PrefixLength = getPrefixLength(settings, "ipv6_prefix_length", 128);
+    }
+
+    private static int getPrefixLength(Settings settings, String name, int maxPrefixLength) {
+        final int prefixLength = settings.getAsInt(name, maxPrefixLength);
+
+        if (prefixLength < 0 || prefixLength > maxPrefixLength) {
+            throw new IllegalArgumentException("Invalid " + name + " " + prefixLength + ", must be between 0 and " + maxPrefixLength);
+        }
+
+        return prefixLength;
     }
 
     @Override
     public void onAuthFailure(InetAddress remoteAddress, AuthCredentials authCredentials, Object request) {
-        if (this.rateTracker.track(remoteAddress)) {
-            block(remoteAddress);
+        if (remoteAddress != null) {
+            trackFailure(remoteAddress);
+        }
+    }
+
+    @Override
+    protected void blockLocally(InetAddress clientId) {
+        final InetAddress network = network(clientId);
+        ipPrefixClientBlockRegistry.block(network, prefixLength(clientId));
+        rateTracker.reset(network);
+    }
+
+    @Override
+    protected InetAddress getTrackingKey(InetAddress clientId) {
+        return network(clientId);
+    }
+
+    @Override
+    protected String formatClientId(InetAddress clientId) {
+        return clientId.getHostAddress();
+    }
+
+    @Override
+    protected InetAddress parseClientId(String clientId) {
+        return InetAddresses.forString(clientId);
+    }
+
+    private InetAddress network(InetAddress address) {
+        final int prefixLength = prefixLength(address);
+
+        if (prefixLength == (address instanceof Inet4Address ? 32 : 128)) {
+            return address;
         }
+
+        return IpPrefixClientBlockRegistry.network(address, prefixLength);
+    }
+
+    private int prefixLength(InetAddress address) {
+        return address instanceof Inet4Address ? ipv4PrefixLength : ipv6PrefixLength;
     }
 }
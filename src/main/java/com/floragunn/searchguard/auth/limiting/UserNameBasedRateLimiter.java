@@ -34,8 +34,18 @@ public class UserNameBasedRateLimiter extends AbstractRateLimiter<String> implem
 
     @Override
     public void onAuthFailure(InetAddress remoteAddress, AuthCredentials authCredentials, Object request) {
-        if (authCredentials != null && authCredentials.getUsername() != null && this.rateTracker.track(authCredentials.getUsername())) {
-            block(authCredentials.getUsername());
+        if (authCredentials != null && authCredentials.getUsername() != null) {
+            trackFailure(authCredentials.getUsername());
         }
     }
+
+    @Override
+    protected String formatClientId(String clientId) {
+        return clientId;
+    }
+
+    @Override
+    protected String parseClientId(String clientId) {
+        return clientId;
+    }
 }
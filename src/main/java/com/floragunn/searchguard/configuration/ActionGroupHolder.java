@@ -78,7 +78,7 @@ public class ActionGroupHolder {
         return resolvedActions;
     }
 
-    private Settings getSettings() {
+    public Settings getSettings() {
         return configurationRepository.getConfiguration(ConfigConstants.CONFIGNAME_ACTION_GROUPS);
     }
 }
@@ -26,6 +26,7 @@ import org.apache.logging.log4j.Logger;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.client.node.NodeClient;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.rest.BytesRestResponse;
 import org.elasticsearch.rest.RestChannel;
@@ -34,6 +35,7 @@ import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestRequest.Method;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.Transports;
 
 import com.floragunn.searchguard.auditlog.AuditLog;
 import com.floragunn.searchguard.auditlog.AuditLog.Origin;
@@ -53,6 +55,8 @@ public class SearchGuardRestFilter {
     private final BackendRegistry registry;
     private final AuditLog auditLog;
     private final ThreadContext threadContext;
+    private final ThreadPool threadPool;
+    private final boolean asyncAuth;
     private final PrincipalExtractor principalExtractor;
     private final Settings settings;
     private final Path configPath;
@@ -65,6 +69,8 @@ public class SearchGuardRestFilter {
         this.registry = registry;
         this.auditLog = auditLog;
         this.threadContext = threadPool.getThreadContext();
+        this.threadPool = threadPool;
+        this.asyncAuth = settings.getAsBoolean(ConfigConstants.SEARCHGUARD_AUTH_ASYNC, true);
         this.principalExtractor = principalExtractor;
         this.settings = settings;
         this.configPath = configPath;
@@ -77,14 +83,14 @@ public class SearchGuardRestFilter {
             @Override
             public void handleRequest(RestRequest request, RestChannel channel, NodeClient client) throws Exception {
                 org.apache.logging.log4j.ThreadContext.clearAll();
-                if(!checkAndAuthenticateRequest(request, channel, client)) {
+                if(!checkAndAuthenticateRequest(original, request, channel, client)) {
                     original.handleRequest(request, channel, client);
                 }
             }
         };
     }
 
-    private boolean checkAndAuthenticateRequest(RestRequest request, RestChannel channel, NodeClient client) throws Exception {
+    private boolean checkAndAuthenticateRequest(RestHandler original, RestRequest request, RestChannel channel, NodeClient client) throws Exception {
 
         threadContext.putTransient(ConfigConstants.SG_ORIGIN, Origin.REST.toString());
         
@@ -131,16 +137,47 @@ public class SearchGuardRestFilter {
         if(request.method() != Method.OPTIONS 
                 && !"/_searchguard/license".equals(request.path())
                 && !"/_searchguard/health".equals(request.path())) {
-            if (!registry.authenticate(request, channel, threadContext)) {
-                // another roundtrip
-                org.apache.logging.log4j.ThreadContext.remove("user");
+            if (asyncAuth && Transports.isTransportThread(Thread.currentThread()) && !registry.isCachedRestRequest(request)) {
+                //authentication backends may block (e.g. ldap), so do not occupy a network thread with it
+                threadPool.executor(ConfigConstants.SG_AUTH_THREAD_POOL).execute(new AbstractRunnable() {
+
+                    @Override
+                    protected void doRun() throws Exception {
+                        org.apache.logging.log4j.ThreadContext.clearAll();
+                        if (authenticate(request, channel)) {
+                            original.handleRequest(request, channel, client);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        log.error("Error while authenticating rest request", e);
+                        try {
+                            channel.sendResponse(new BytesRestResponse(channel, e));
+                        } catch (Exception inner) {
+                            inner.addSuppressed(e);
+                            log.error("Failed to send failure response", inner);
+                        }
+                    }
+                });
                 return true;
-            } else {
-                // make it possible to filter logs by username
-                org.apache.logging.log4j.ThreadContext.put("user", ((User)threadContext.getTransient(ConfigConstants.SG_USER)).getName());
             }
+
+            return !authenticate(request, channel);
         }
         
         return false;
     }
+
+    private boolean authenticate(RestRequest request, RestChannel channel) {
+        if (!registry.authenticate(request, channel, threadContext)) {
+            // another roundtrip
+            org.apache.logging.log4j.ThreadContext.remove("user");
+            return false;
+        } else {
+            // make it possible to filter logs by username
+            org.apache.logging.log4j.ThreadContext.put("user", ((User)threadContext.getTransient(ConfigConstants.SG_USER)).getName());
+            return true;
+        }
+    }
 }
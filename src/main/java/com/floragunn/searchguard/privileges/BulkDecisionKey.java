@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.privileges;
+
+import java.util.Objects;
+
+import org.elasticsearch.tasks.TaskId;
+
+import com.floragunn.searchguard.sgconf.ConfigModel.SgRoles;
+
+/**
+ * Key of an index permission decision which is shared by the shard requests of a bulk request.
+ * Shard requests share a decision only if they have the same parent task, user, roles and item groups.
+ */
+final class BulkDecisionKey {
+
+    private final TaskId parentTask;
+    private final String userName;
+    private final SgRoles sgRoles;
+    private final BulkItemGroups bulkItemGroups;
+    private final boolean rolespan;
+    private final int hashCode;
+
+    BulkDecisionKey(TaskId parentTask, String userName, SgRoles sgRoles, BulkItemGroups bulkItemGroups, boolean rolespan) {
+        this.parentTask = parentTask;
+        this.userName = userName;
+        this.sgRoles = sgRoles;
+        this.bulkItemGroups = bulkItemGroups;
+        this.rolespan = rolespan;
+        this.hashCode = Objects.hash(parentTask, userName, System.identityHashCode(sgRoles), bulkItemGroups, rolespan);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        BulkDecisionKey other = (BulkDecisionKey) obj;
+        //roles views are interned per config, compare by identity
+        return hashCode == other.hashCode && sgRoles == other.sgRoles && rolespan == other.rolespan && parentTask.equals(other.parentTask)
+                && Objects.equals(userName, other.userName) && bulkItemGroups.equals(other.bulkItemGroups);
+    }
+}
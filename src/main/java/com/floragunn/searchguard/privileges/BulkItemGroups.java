@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.privileges;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteRequest.OpType;
+import org.elasticsearch.action.bulk.BulkItemRequest;
+import org.elasticsearch.action.bulk.BulkShardRequest;
+import org.elasticsearch.action.delete.DeleteAction;
+import org.elasticsearch.action.index.IndexAction;
+import org.elasticsearch.action.update.UpdateAction;
+
+/**
+ * The distinct types and operations of the items of one {@link BulkShardRequest}, collected in a single pass.
+ * All items of a shard request target the same index, so privileges only need to be evaluated
+ * once per distinct group and not per item.
+ */
+final class BulkItemGroups {
+
+    private final String index;
+    private final Set<String> types;
+    private final Set<String> actions;
+    private final int hashCode;
+
+    private BulkItemGroups(final String index, final Set<String> types, final Set<String> actions) {
+        this.index = index;
+        this.types = types;
+        this.actions = actions;
+        this.hashCode = Objects.hash(index, types, actions);
+    }
+
+    static BulkItemGroups of(final BulkShardRequest request) {
+        final Set<String> types = new HashSet<>();
+        final EnumSet<OpType> opTypes = EnumSet.noneOf(OpType.class);
+        String lastType = null;
+
+        for (BulkItemRequest bir : request.items()) {
+            final DocWriteRequest<?> docWriteRequest = bir.request();
+            final String type = docWriteRequest.type();
+
+            //items are mostly of the same type, avoid hashing it over and over
+            if (lastType == null || !lastType.equals(type)) {
+                types.add(type);
+                lastType = type;
+            }
+
+            opTypes.add(docWriteRequest.opType());
+        }
+
+        final Set<String> actions = new HashSet<>(opTypes.size());
+
+        for (OpType opType : opTypes) {
+            switch (opType) {
+            case CREATE:
+                actions.add(IndexAction.NAME);
+                break;
+            case INDEX:
+                actions.add(IndexAction.NAME);
+                break;
+            case DELETE:
+                actions.add(DeleteAction.NAME);
+                break;
+            case UPDATE:
+                actions.add(UpdateAction.NAME);
+                break;
+            }
+        }
+
+        return new BulkItemGroups(request.index(), Collections.unmodifiableSet(types), Collections.unmodifiableSet(actions));
+    }
+
+    Set<String> getTypes() {
+        return types;
+    }
+
+    /**
+     * @return the index level actions required by the items
+     */
+    Set<String> getActions() {
+        return actions;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        BulkItemGroups other = (BulkItemGroups) obj;
+        return hashCode == other.hashCode && Objects.equals(index, other.index) && types.equals(other.types) && actions.equals(other.actions);
+    }
+
+    @Override
+    public String toString() {
+        return "BulkItemGroups [index=" + index + ", types=" + types + ", actions=" + actions + "]";
+    }
+}
@@ -29,8 +29,6 @@ import org.apache.logging.log4j.Logger;
 import org.elasticsearch.ElasticsearchSecurityException;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.admin.cluster.shards.ClusterSearchShardsRequest;
-import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
-import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
@@ -39,41 +37,45 @@ import org.elasticsearch.threadpool.ThreadPool;
 import com.floragunn.searchguard.SearchGuardPlugin;
 import com.floragunn.searchguard.resolver.IndexResolverReplacer.Resolved;
 import com.floragunn.searchguard.sgconf.ConfigModel.SgRoles;
+import com.floragunn.searchguard.sgconf.EvaluationContext;
 import com.floragunn.searchguard.support.Base64Helper;
+import com.floragunn.searchguard.support.CompiledPattern;
 import com.floragunn.searchguard.support.ConfigConstants;
+import com.floragunn.searchguard.support.HeaderCache;
 import com.floragunn.searchguard.support.HeaderHelper;
 import com.floragunn.searchguard.support.WildcardMatcher;
-import com.floragunn.searchguard.user.User;
 
 public class DlsFlsEvaluator {
 
     protected final Logger log = LogManager.getLogger(this.getClass());
 
     private final ThreadPool threadPool;
+    private final boolean javaHeaderSerialization;
 
     public DlsFlsEvaluator(Settings settings, ThreadPool threadPool) {
         this.threadPool = threadPool;
+        this.javaHeaderSerialization = settings.getAsBoolean(ConfigConstants.SEARCHGUARD_COMPAT_JAVA_HEADER_SERIALIZATION, false);
     }
 
-    public PrivilegesEvaluatorResponse evaluate(final ActionRequest request, final ClusterService clusterService, final IndexNameExpressionResolver resolver, final Resolved requestedResolved, final User user,
+    public PrivilegesEvaluatorResponse evaluate(final ActionRequest request, final EvaluationContext evaluationContext, final Resolved requestedResolved,
             final SgRoles sgRoles, final PrivilegesEvaluatorResponse presponse) {
 
         ThreadContext threadContext = threadPool.getThreadContext();
 
         // maskedFields
-        final Map<String, Set<String>> maskedFieldsMap = sgRoles.getMaskedFields(user, resolver, clusterService);
+        final Map<String, Set<String>> maskedFieldsMap = sgRoles.getMaskedFields(evaluationContext);
 
        
         if (maskedFieldsMap != null && !maskedFieldsMap.isEmpty()) {
             
             if(request instanceof ClusterSearchShardsRequest && HeaderHelper.isTrustedClusterRequest(threadContext)) {
-                threadContext.addResponseHeader(ConfigConstants.SG_MASKED_FIELD_HEADER, Base64Helper.serializeObject((Serializable) maskedFieldsMap));
+                threadContext.addResponseHeader(ConfigConstants.SG_MASKED_FIELD_HEADER, Base64Helper.serializeObject((Serializable) maskedFieldsMap, javaHeaderSerialization));
                 if (log.isDebugEnabled()) {
                     log.debug("added response header for masked fields info: {}", maskedFieldsMap);
                 }
             } else {
                 if (threadContext.getHeader(ConfigConstants.SG_MASKED_FIELD_HEADER) != null) {
-                    if (!maskedFieldsMap.equals(Base64Helper.deserializeObject(threadContext.getHeader(ConfigConstants.SG_MASKED_FIELD_HEADER)))) {
+                    if (!maskedFieldsMap.equals(HeaderCache.deserializeObject(threadContext.getHeader(ConfigConstants.SG_MASKED_FIELD_HEADER)))) {
                         throw new ElasticsearchSecurityException(ConfigConstants.SG_MASKED_FIELD_HEADER + " does not match (SG 901D)");
                     } else {
                         if (log.isDebugEnabled()) {
@@ -81,7 +83,7 @@ public class DlsFlsEvaluator {
                         }
                     }
                 } else {
-                    threadContext.putHeader(ConfigConstants.SG_MASKED_FIELD_HEADER, Base64Helper.serializeObject((Serializable) maskedFieldsMap));
+                    threadContext.putHeader(ConfigConstants.SG_MASKED_FIELD_HEADER, Base64Helper.serializeObject((Serializable) maskedFieldsMap, javaHeaderSerialization));
                     if (log.isDebugEnabled()) {
                         log.debug("attach masked fields info: {}", maskedFieldsMap);
                     }
@@ -93,7 +95,7 @@ public class DlsFlsEvaluator {
             if (!requestedResolved.getAllIndices().isEmpty()) {
                 for (Iterator<Entry<String, Set<String>>> it = presponse.maskedFields.entrySet().iterator(); it.hasNext();) {
                     Entry<String, Set<String>> entry = it.next();
-                    if (!WildcardMatcher.matchAny(entry.getKey(), requestedResolved.getAllIndices(), false)) {
+                    if (!matchesAnyRequested(entry.getKey(), requestedResolved.getAllIndices())) {
                         it.remove();
                     }
                 }
@@ -103,24 +105,24 @@ public class DlsFlsEvaluator {
         
 
         // attach dls/fls map if not already done
-        final Tuple<Map<String, Set<String>>, Map<String, Set<String>>> dlsFls = sgRoles.getDlsFls(user, resolver, clusterService);
+        final Tuple<Map<String, Set<String>>, Map<String, Set<String>>> dlsFls = sgRoles.getDlsFls(evaluationContext);
         final Map<String, Set<String>> dlsQueries = dlsFls.v1();
         final Map<String, Set<String>> flsFields = dlsFls.v2();
 
         if (!dlsQueries.isEmpty()) {
 
             if(request instanceof ClusterSearchShardsRequest && HeaderHelper.isTrustedClusterRequest(threadContext)) {
-                threadContext.addResponseHeader(ConfigConstants.SG_DLS_QUERY_HEADER, Base64Helper.serializeObject((Serializable) dlsQueries));
+                threadContext.addResponseHeader(ConfigConstants.SG_DLS_QUERY_HEADER, Base64Helper.serializeObject((Serializable) dlsQueries, javaHeaderSerialization));
                 if (log.isDebugEnabled()) {
                     log.debug("added response header for DLS info: {}", dlsQueries);
                 }
             } else {
                 if (threadContext.getHeader(ConfigConstants.SG_DLS_QUERY_HEADER) != null) {
-                    if (!dlsQueries.equals(Base64Helper.deserializeObject(threadContext.getHeader(ConfigConstants.SG_DLS_QUERY_HEADER)))) {
+                    if (!dlsQueries.equals(HeaderCache.deserializeObject(threadContext.getHeader(ConfigConstants.SG_DLS_QUERY_HEADER)))) {
                         throw new ElasticsearchSecurityException(ConfigConstants.SG_DLS_QUERY_HEADER + " does not match (SG 900D)");
                     }
                 } else {
-                    threadContext.putHeader(ConfigConstants.SG_DLS_QUERY_HEADER, Base64Helper.serializeObject((Serializable) dlsQueries));
+                    threadContext.putHeader(ConfigConstants.SG_DLS_QUERY_HEADER, Base64Helper.serializeObject((Serializable) dlsQueries, javaHeaderSerialization));
                     if (log.isDebugEnabled()) {
                         log.debug("attach DLS info: {}", dlsQueries);
                     }
@@ -132,7 +134,7 @@ public class DlsFlsEvaluator {
             if (!requestedResolved.getAllIndices().isEmpty()) {
                 for (Iterator<Entry<String, Set<String>>> it = presponse.queries.entrySet().iterator(); it.hasNext();) {
                     Entry<String, Set<String>> entry = it.next();
-                    if (!WildcardMatcher.matchAny(entry.getKey(), requestedResolved.getAllIndices(), false)) {
+                    if (!matchesAnyRequested(entry.getKey(), requestedResolved.getAllIndices())) {
                         it.remove();
                     }
                 }
@@ -143,13 +145,13 @@ public class DlsFlsEvaluator {
         if (!flsFields.isEmpty()) {
 
             if(request instanceof ClusterSearchShardsRequest && HeaderHelper.isTrustedClusterRequest(threadContext)) {
-                threadContext.addResponseHeader(ConfigConstants.SG_FLS_FIELDS_HEADER, Base64Helper.serializeObject((Serializable) flsFields));
+                threadContext.addResponseHeader(ConfigConstants.SG_FLS_FIELDS_HEADER, Base64Helper.serializeObject((Serializable) flsFields, javaHeaderSerialization));
                 if (log.isDebugEnabled()) {
                     log.debug("added response header for FLS info: {}", flsFields);
                 }
             } else {
                 if (threadContext.getHeader(ConfigConstants.SG_FLS_FIELDS_HEADER) != null) {
-                    if (!flsFields.equals(Base64Helper.deserializeObject(threadContext.getHeader(ConfigConstants.SG_FLS_FIELDS_HEADER)))) {
+                    if (!flsFields.equals(HeaderCache.deserializeObject(threadContext.getHeader(ConfigConstants.SG_FLS_FIELDS_HEADER)))) {
                         throw new ElasticsearchSecurityException(ConfigConstants.SG_FLS_FIELDS_HEADER + " does not match (SG 901D)");
                     } else {
                         if (log.isDebugEnabled()) {
@@ -157,7 +159,7 @@ public class DlsFlsEvaluator {
                         }
                     }
                 } else {
-                    threadContext.putHeader(ConfigConstants.SG_FLS_FIELDS_HEADER, Base64Helper.serializeObject((Serializable) flsFields));
+                    threadContext.putHeader(ConfigConstants.SG_FLS_FIELDS_HEADER, Base64Helper.serializeObject((Serializable) flsFields, javaHeaderSerialization));
                     if (log.isDebugEnabled()) {
                         log.debug("attach FLS info: {}", flsFields);
                     }
@@ -169,7 +171,7 @@ public class DlsFlsEvaluator {
             if (!requestedResolved.getAllIndices().isEmpty()) {
                 for (Iterator<Entry<String, Set<String>>> it = presponse.allowedFlsFields.entrySet().iterator(); it.hasNext();) {
                     Entry<String, Set<String>> entry = it.next();
-                    if (!WildcardMatcher.matchAny(entry.getKey(), requestedResolved.getAllIndices(), false)) {
+                    if (!matchesAnyRequested(entry.getKey(), requestedResolved.getAllIndices())) {
                         it.remove();
                     }
                 }
@@ -183,4 +185,11 @@ public class DlsFlsEvaluator {
         
         return presponse;
     }
+
+    private static boolean matchesAnyRequested(final String indexPattern, final Set<String> requestedIndices) {
+        if (!WildcardMatcher.containsWildcard(indexPattern)) {
+            return requestedIndices.contains(indexPattern);
+        }
+        return CompiledPattern.compile(indexPattern).matchesAny(requestedIndices);
+    }
 }
@@ -17,6 +17,8 @@
 
 package com.floragunn.searchguard.privileges;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -24,15 +26,16 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -48,18 +51,15 @@ import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexAction;
 import org.elasticsearch.action.admin.indices.mapping.get.GetFieldMappingsRequest;
 import org.elasticsearch.action.bulk.BulkAction;
-import org.elasticsearch.action.bulk.BulkItemRequest;
 import org.elasticsearch.action.bulk.BulkShardRequest;
-import org.elasticsearch.action.delete.DeleteAction;
 import org.elasticsearch.action.get.MultiGetAction;
-import org.elasticsearch.action.index.IndexAction;
 import org.elasticsearch.action.search.MultiSearchAction;
 import org.elasticsearch.action.search.SearchAction;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchScrollAction;
 import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.action.termvectors.MultiTermVectorsAction;
-import org.elasticsearch.action.update.UpdateAction;
+import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.metadata.AliasMetaData;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
@@ -82,16 +82,27 @@ import com.floragunn.searchguard.resolver.IndexResolverReplacer;
 import com.floragunn.searchguard.resolver.IndexResolverReplacer.Resolved;
 import com.floragunn.searchguard.sgconf.ConfigModel;
 import com.floragunn.searchguard.sgconf.ConfigModel.SgRoles;
+import com.floragunn.searchguard.sgconf.EvaluationContext;
+import com.floragunn.searchguard.support.CompiledPattern;
 import com.floragunn.searchguard.support.ConfigConstants;
+import com.floragunn.searchguard.support.PatternSet;
 import com.floragunn.searchguard.support.WildcardMatcher;
 import com.floragunn.searchguard.user.User;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.MultimapBuilder.SetMultimapBuilder;
 import com.google.common.collect.SetMultimap;
 
 public class PrivilegesEvaluator implements ConfigurationChangeListener {
 
+    private static final int MAX_CACHED_ROLE_MAPPINGS = 10_000;
+    private static final int MAX_CACHED_BULK_DECISIONS = 1000;
+
     protected final Logger log = LogManager.getLogger(this.getClass());
     protected final Logger actionTrace = LogManager.getLogger("sg_action_trace");
     private final ClusterService clusterService;
@@ -111,6 +122,10 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
     private final ClusterInfoHolder clusterInfoHolder;
     //private final boolean typeSecurityDisabled = false;
     private final ConfigModel configModel;
+    private final ExecutorService configReloadExecutor;
+    //index permission decisions for the shard requests of running bulk requests
+    private final Cache<BulkDecisionKey, Boolean> bulkDecisions = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_BULK_DECISIONS)
+            .expireAfterWrite(1, TimeUnit.MINUTES).build();
     private final IndexResolverReplacer irr;
     private final SnapshotRestoreEvaluator snapshotRestoreEvaluator;
     private final SearchGuardIndexAccessEvaluator sgIndexAccessEvaluator;
@@ -118,6 +133,7 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
     private final DlsFlsEvaluator dlsFlsEvaluator;
     private RoleMappingHolder roleMappingHolder = null;
     private TenantHolder tenantHolder = null;
+    private final HostnameResolver hostnameResolver;
     private final boolean enterpriseModulesEnabled;
 
     public PrivilegesEvaluator(final ClusterService clusterService, final ThreadPool threadPool,
@@ -148,7 +164,8 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
 
         this.clusterInfoHolder = clusterInfoHolder;
         //this.typeSecurityDisabled = settings.getAsBoolean(ConfigConstants.SEARCHGUARD_DISABLE_TYPE_SECURITY, false);
-        configModel = new ConfigModel(ah);
+        configReloadExecutor = threadPool.executor(ConfigConstants.SG_CONFIG_RELOAD_THREAD_POOL);
+        configModel = new ConfigModel(ah, clusterService, configReloadExecutor);
         configurationRepository.subscribeOnChange("roles", configModel);
         configurationRepository.subscribeOnChange("rolesmapping", this);
         this.irr = irr;
@@ -158,6 +175,7 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
         termsAggregationEvaluator = new TermsAggregationEvaluator();
         tenantHolder = new TenantHolder();
         configurationRepository.subscribeOnChange("roles", tenantHolder);
+        hostnameResolver = new HostnameResolver(threadPool);
         this.enterpriseModulesEnabled = enterpriseModulesEnabled;
     }
 
@@ -190,11 +208,9 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
 
             final Set<Future<Tuple<String, Set<Tuple<String, Boolean>>>>> futures = new HashSet<>(roles.size());
 
-            final ExecutorService execs = Executors.newFixedThreadPool(10);
-
             for (String sgRole : roles.names()) {
 
-                Future<Tuple<String, Set<Tuple<String, Boolean>>>> future = execs.submit(new Callable<Tuple<String, Set<Tuple<String, Boolean>>>>() {
+                Future<Tuple<String, Set<Tuple<String, Boolean>>>> future = ConfigModel.submit(configReloadExecutor, new Callable<Tuple<String, Set<Tuple<String, Boolean>>>>() {
                     @Override
                     public Tuple<String, Set<Tuple<String, Boolean>>> call() throws Exception {
                         final Set<Tuple<String, Boolean>> tuples = new HashSet<>();
@@ -223,27 +239,24 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
 
             }
 
-            execs.shutdown();
-            try {
-                execs.awaitTermination(30, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.error("Thread interrupted (1) while loading roles");
-                return;
-            }
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(ConfigModel.RELOAD_TIMEOUT_SECONDS);
 
             try {
                 final SetMultimap<String, Tuple<String, Boolean>> tenantsMM_ = SetMultimapBuilder.hashKeys(futures.size()).hashSetValues(16).build();
 
                 for (Future<Tuple<String, Set<Tuple<String, Boolean>>>> future : futures) {
-                    Tuple<String, Set<Tuple<String, Boolean>>> result = future.get();
+                    Tuple<String, Set<Tuple<String, Boolean>>> result = future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
                     tenantsMM_.putAll(result.v1(), result.v2());
                 }
 
                 tenantsMM = tenantsMM_;
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-                log.error("Thread interrupted (2) while loading roles");
+                log.error("Thread interrupted while loading roles");
+                return;
+            } catch (TimeoutException e) {
+                futures.forEach(f -> f.cancel(true));
+                log.error("Tenants not loaded within {} seconds, keep the previous tenants", ConfigModel.RELOAD_TIMEOUT_SECONDS);
                 return;
             } catch (ExecutionException e) {
                 log.error("Error while updating roles: {}", e.getCause(), e.getCause());
@@ -260,6 +273,16 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
         private ListMultimap<String, String> bars;
         private ListMultimap<String, String> hosts;
 
+        //results are only valid for this rolesmapping
+        private final Cache<MappingKey, Set<String>> mappedRolesCache = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_ROLE_MAPPINGS)
+                .expireAfterWrite(HostnameResolver.TTL_MINUTES, TimeUnit.MINUTES).build();
+
+        //compiled once per rolesmapping change
+        private PatternSet userPatterns;
+        private Map<Set<String>, List<CompiledPattern>> abarPatterns;
+        private PatternSet barPatterns;
+        private PatternSet hostPatterns;
+
         private RoleMappingHolder(Settings rolesMapping) {
 
             if (rolesMapping != null) {
@@ -296,6 +319,20 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
                 abars = abars_;
                 bars = bars_;
                 hosts = hosts_;
+
+                final Map<Set<String>, List<CompiledPattern>> abarPatterns_ = new HashMap<>(abars_.keySet().size());
+                for (Set<String> abar : abars_.keySet()) {
+                    final List<CompiledPattern> compiled = new ArrayList<>(abar.size());
+                    for (String bar : abar) {
+                        compiled.add(CompiledPattern.compile(bar));
+                    }
+                    abarPatterns_.put(abar, compiled);
+                }
+
+                userPatterns = PatternSet.compile(users_.keySet());
+                abarPatterns = abarPatterns_;
+                barPatterns = PatternSet.compile(bars_.keySet());
+                hostPatterns = PatternSet.compile(hosts_.keySet());
             }
         }
 
@@ -305,6 +342,28 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
                 return Collections.emptySet();
             }
 
+            //the caller is only relevant if there are hosts mappings at all
+            final boolean mapHosts = caller != null && !hosts.isEmpty()
+                    && rolesMappingResolution != ConfigConstants.RolesMappingResolution.BACKENDROLES_ONLY;
+            final String hostResolverMode = mapHosts ? getConfigSettings().get("searchguard.dynamic.hosts_resolver_mode", "ip-only") : null;
+            final String hostString = mapHosts && caller.address() != null ? caller.address().getHostString() : null;
+
+            final MappingKey key = new MappingKey(user.getName(), user.getRoles(), mapHosts ? caller.getAddress() : null, hostString,
+                    hostResolverMode);
+
+            Set<String> sgRoles = mappedRolesCache.getIfPresent(key);
+
+            if (sgRoles == null) {
+                sgRoles = map(user, mapHosts ? caller : null, hostResolverMode);
+                //do not keep a view on the (mutable) roles of the user
+                mappedRolesCache.put(key.withImmutableBackendRoles(), sgRoles);
+            }
+
+            return sgRoles;
+        }
+
+        private Set<String> map(final User user, final TransportAddress caller, final String hostResolverMode) {
+
             final Set<String> sgRoles = new TreeSet<String>();
 
             if (rolesMappingResolution == ConfigConstants.RolesMappingResolution.BOTH
@@ -318,17 +377,17 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
             if (((rolesMappingResolution == ConfigConstants.RolesMappingResolution.BOTH
                     || rolesMappingResolution == ConfigConstants.RolesMappingResolution.MAPPING_ONLY))) {
 
-                for (String p : WildcardMatcher.getAllMatchingPatterns(users.keySet(), user.getName())) {
+                for (String p : userPatterns.getMatchingPatterns(user.getName())) {
                     sgRoles.addAll(users.get(p));
                 }
 
-                for (String p : WildcardMatcher.getAllMatchingPatterns(bars.keySet(), user.getRoles())) {
+                for (String p : barPatterns.getMatchingPatterns(user.getRoles())) {
                     sgRoles.addAll(bars.get(p));
                 }
 
-                for (Set<String> p : abars.keySet()) {
-                    if (WildcardMatcher.allPatternsMatched(p, user.getRoles())) {
-                        sgRoles.addAll(abars.get(p));
+                for (Entry<Set<String>, List<CompiledPattern>> p : abarPatterns.entrySet()) {
+                    if (allPatternsMatched(p.getValue(), user.getRoles())) {
+                        sgRoles.addAll(abars.get(p.getKey()));
                     }
                 }
 
@@ -336,26 +395,24 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
                     //IPV4 or IPv6 (compressed and without scope identifiers)
                     final String ipAddress = caller.getAddress();
 
-                    for (String p : WildcardMatcher.getAllMatchingPatterns(hosts.keySet(), ipAddress)) {
+                    for (String p : hostPatterns.getMatchingPatterns(ipAddress)) {
                         sgRoles.addAll(hosts.get(p));
                     }
 
-                    final String hostResolverMode = getConfigSettings().get("searchguard.dynamic.hosts_resolver_mode", "ip-only");
-
                     if (caller.address() != null
                             && (hostResolverMode.equalsIgnoreCase("ip-hostname") || hostResolverMode.equalsIgnoreCase("ip-hostname-lookup"))) {
                         final String hostName = caller.address().getHostString();
 
-                        for (String p : WildcardMatcher.getAllMatchingPatterns(hosts.keySet(), hostName)) {
+                        for (String p : hostPatterns.getMatchingPatterns(hostName)) {
                             sgRoles.addAll(hosts.get(p));
                         }
                     }
 
                     if (caller.address() != null && hostResolverMode.equalsIgnoreCase("ip-hostname-lookup")) {
 
-                        final String resolvedHostName = caller.address().getHostName();
+                        final String resolvedHostName = hostnameResolver.getHostName(caller.address());
 
-                        for (String p : WildcardMatcher.getAllMatchingPatterns(hosts.keySet(), resolvedHostName)) {
+                        for (String p : hostPatterns.getMatchingPatterns(resolvedHostName)) {
                             sgRoles.addAll(hosts.get(p));
                         }
                     }
@@ -365,6 +422,87 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
             return Collections.unmodifiableSet(sgRoles);
 
         }
+
+        private boolean allPatternsMatched(final List<CompiledPattern> patterns, final Set<String> candidates) {
+            for (CompiledPattern p : patterns) {
+                if (!p.matchesAny(candidates)) {
+                    return false;
+                }
+            }
+            return !patterns.isEmpty();
+        }
+    }
+
+    private static final class MappingKey {
+
+        private final String userName;
+        private final Set<String> backendRoles;
+        private final String address;
+        private final String hostString;
+        private final String hostResolverMode;
+        private final int hashCode;
+
+        private MappingKey(String userName, Set<String> backendRoles, String address, String hostString, String hostResolverMode) {
+            this.userName = userName;
+            this.backendRoles = backendRoles;
+            this.address = address;
+            this.hostString = hostString;
+            this.hostResolverMode = hostResolverMode;
+            this.hashCode = Objects.hash(userName, backendRoles, address, hostString, hostResolverMode);
+        }
+
+        private MappingKey withImmutableBackendRoles() {
+            return new MappingKey(userName, ImmutableSet.copyOf(backendRoles), address, hostString, hostResolverMode);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null)
+                return false;
+            if (getClass() != obj.getClass())
+                return false;
+            MappingKey other = (MappingKey) obj;
+            return hashCode == other.hashCode && userName.equals(other.userName) && Objects.equals(address, other.address)
+                    && Objects.equals(hostString, other.hostString) && Objects.equals(hostResolverMode, other.hostResolverMode)
+                    && backendRoles.equals(other.backendRoles);
+        }
+    }
+
+    /**
+     * Caches reverse DNS lookups for "ip-hostname-lookup" mode. Only the first lookup for an address
+     * blocks the calling thread, expired entries are refreshed in the background.
+     */
+    private static class HostnameResolver {
+
+        private static final long TTL_MINUTES = 10;
+        private static final int MAX_ENTRIES = 10_000;
+
+        private final LoadingCache<InetAddress, String> hostNames;
+
+        private HostnameResolver(final ThreadPool threadPool) {
+            hostNames = CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).refreshAfterWrite(TTL_MINUTES, TimeUnit.MINUTES)
+                    .build(CacheLoader.asyncReloading(new CacheLoader<InetAddress, String>() {
+                        @Override
+                        public String load(InetAddress address) throws Exception {
+                            return address.getHostName();
+                        }
+                    }, threadPool.generic()));
+        }
+
+        private String getHostName(final InetSocketAddress address) {
+            if (address.getAddress() == null) {
+                //unresolved, the host string is all we have
+                return address.getHostName();
+            }
+            return hostNames.getUnchecked(address.getAddress());
+        }
     }
 
     @Override
@@ -417,10 +555,13 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
             log.debug("requestedResolved : {}", requestedResolved);
         }
 
+        //cluster state snapshot and resolved index patterns shared by all checks below
+        final EvaluationContext evaluationContext = new EvaluationContext(user, resolver, clusterService);
+
         // check dlsfls 
         if (enterpriseModulesEnabled
                 //&& (action0.startsWith("indices:data/read") || action0.equals(ClusterSearchShardsAction.NAME))
-                && dlsFlsEvaluator.evaluate(request, clusterService, resolver, requestedResolved, user, sgRoles, presponse).isComplete()) {
+                && dlsFlsEvaluator.evaluate(request, evaluationContext, requestedResolved, sgRoles, presponse).isComplete()) {
             return presponse;
         }
 
@@ -487,7 +628,7 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
                             return presponse;
                         }
 
-                        Set<String> reduced = sgRoles.reduce(requestedResolved, user, new String[] { action0 }, resolver, clusterService);
+                        Set<String> reduced = sgRoles.reduce(requestedResolved, new String[] { action0 }, evaluationContext);
 
                         if (reduced.isEmpty()) {
                             presponse.allowed = false;
@@ -512,11 +653,12 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
         }
 
         // term aggregations
-        if (termsAggregationEvaluator.evaluate(requestedResolved, request, clusterService, user, sgRoles, resolver, presponse).isComplete()) {
+        if (termsAggregationEvaluator.evaluate(requestedResolved, request, evaluationContext, sgRoles, presponse).isComplete()) {
             return presponse;
         }
 
-        final Set<String> allIndexPermsRequired = evaluateAdditionalIndexPermissions(request, action0);
+        final BulkItemGroups bulkItemGroups = request instanceof BulkShardRequest ? BulkItemGroups.of((BulkShardRequest) request) : null;
+        final Set<String> allIndexPermsRequired = evaluateAdditionalIndexPermissions(request, action0, bulkItemGroups);
         final String[] allIndexPermsRequiredA = allIndexPermsRequired.toArray(new String[0]);
 
         if (log.isDebugEnabled()) {
@@ -565,7 +707,7 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
                 return presponse;
             }
 
-            Set<String> reduced = sgRoles.reduce(requestedResolved, user, allIndexPermsRequiredA, resolver, clusterService);
+            Set<String> reduced = sgRoles.reduce(requestedResolved, allIndexPermsRequiredA, evaluationContext);
 
             if (reduced.isEmpty()) {
                 
@@ -610,20 +752,34 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
         //not bulk, mget, etc request here
         boolean permGiven = false;
 
-        if (config.getAsBoolean("searchguard.dynamic.multi_rolespan_enabled", false)) {
-            permGiven = sgRoles.impliesTypePermGlobal(requestedResolved, user, allIndexPermsRequiredA, resolver, clusterService);
+        final boolean rolespan = config.getAsBoolean("searchguard.dynamic.multi_rolespan_enabled", false);
+
+        //all shard requests of a bulk request are evaluated for the same user, roles and (mostly) the same items
+        final BulkDecisionKey bulkDecisionKey = bulkItemGroups != null && request.getParentTask().isSet()
+                ? new BulkDecisionKey(request.getParentTask(), user.getName(), sgRoles, bulkItemGroups, rolespan)
+                : null;
+        final Boolean cachedBulkDecision = bulkDecisionKey == null ? null : bulkDecisions.getIfPresent(bulkDecisionKey);
+
+        if (cachedBulkDecision != null) {
+            permGiven = cachedBulkDecision.booleanValue();
+        } else if (rolespan) {
+            permGiven = sgRoles.impliesTypePermGlobal(requestedResolved, allIndexPermsRequiredA, evaluationContext);
         } else {
-            permGiven = sgRoles.get(requestedResolved, user, allIndexPermsRequiredA, resolver, clusterService);
+            permGiven = sgRoles.get(requestedResolved, allIndexPermsRequiredA, evaluationContext);
 
         }
 
+        if (bulkDecisionKey != null && cachedBulkDecision == null) {
+            bulkDecisions.put(bulkDecisionKey, permGiven);
+        }
+
         if (!permGiven) {
             log.info("No {}-level perm match for {} {} [Action [{}]] [RolesChecked {}]", "index", user, requestedResolved, action0,
                     sgRoles.getRoles().stream().map(r -> r.getName()).toArray());
             log.info("No permissions for {}", presponse.missingPrivileges);
         } else {
 
-            if (checkFilteredAliases(requestedResolved.getAllIndices(), action0)) {
+            if (checkFilteredAliases(requestedResolved.getAllIndices(), action0, evaluationContext.getClusterState())) {
                 presponse.allowed = false;
                 return presponse;
             }
@@ -808,7 +964,7 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
         return getConfigSettings().get("searchguard.dynamic.kibana.server_username", "kibanaserver");
     }
 
-    private Set<String> evaluateAdditionalIndexPermissions(final ActionRequest request, final String originalAction) {
+    private Set<String> evaluateAdditionalIndexPermissions(final ActionRequest request, final String originalAction, final BulkItemGroups bulkItemGroups) {
         //--- check inner bulk requests
         final Set<String> additionalPermissionsRequired = new HashSet<>();
 
@@ -820,24 +976,8 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
             additionalPermissionsRequired.add(SearchAction.NAME);
         }
 
-        if (request instanceof BulkShardRequest) {
-            BulkShardRequest bsr = (BulkShardRequest) request;
-            for (BulkItemRequest bir : bsr.items()) {
-                switch (bir.request().opType()) {
-                case CREATE:
-                    additionalPermissionsRequired.add(IndexAction.NAME);
-                    break;
-                case INDEX:
-                    additionalPermissionsRequired.add(IndexAction.NAME);
-                    break;
-                case DELETE:
-                    additionalPermissionsRequired.add(DeleteAction.NAME);
-                    break;
-                case UPDATE:
-                    additionalPermissionsRequired.add(UpdateAction.NAME);
-                    break;
-                }
-            }
+        if (bulkItemGroups != null) {
+            additionalPermissionsRequired.addAll(bulkItemGroups.getActions());
         }
 
         if (request instanceof IndicesAliasesRequest) {
@@ -884,13 +1024,13 @@ public class PrivilegesEvaluator implements ConfigurationChangeListener {
         );
     }
 
-    private boolean checkFilteredAliases(Set<String> requestedResolvedIndices, String action) {
+    private boolean checkFilteredAliases(Set<String> requestedResolvedIndices, String action, ClusterState state) {
         //check filtered aliases
         for (String requestAliasOrIndex : requestedResolvedIndices) {
 
             final List<AliasMetaData> filteredAliases = new ArrayList<AliasMetaData>();
 
-            final IndexMetaData indexMetaData = clusterService.state().metaData().getIndices().get(requestAliasOrIndex);
+            final IndexMetaData indexMetaData = state.metaData().getIndices().get(requestAliasOrIndex);
 
             if (indexMetaData == null) {
                 log.debug("{} does not exist in cluster metadata", requestAliasOrIndex);
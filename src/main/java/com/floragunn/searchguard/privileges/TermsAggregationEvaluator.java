@@ -22,8 +22,6 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
-import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.index.query.MatchNoneQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.TermsQueryBuilder;
@@ -32,7 +30,7 @@ import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilde
 
 import com.floragunn.searchguard.resolver.IndexResolverReplacer.Resolved;
 import com.floragunn.searchguard.sgconf.ConfigModel.SgRoles;
-import com.floragunn.searchguard.user.User;
+import com.floragunn.searchguard.sgconf.EvaluationContext;
 
 public class TermsAggregationEvaluator {
 
@@ -52,7 +50,7 @@ public class TermsAggregationEvaluator {
     public TermsAggregationEvaluator() {
     }
     
-    public PrivilegesEvaluatorResponse evaluate(final Resolved resolved, final ActionRequest request, ClusterService clusterService, User user, SgRoles sgRoles,  IndexNameExpressionResolver resolver, PrivilegesEvaluatorResponse presponse) {
+    public PrivilegesEvaluatorResponse evaluate(final Resolved resolved, final ActionRequest request, EvaluationContext evaluationContext, SgRoles sgRoles, PrivilegesEvaluatorResponse presponse) {
         try {
             
             if(request instanceof SearchRequest) {
@@ -72,7 +70,7 @@ public class TermsAggregationEvaluator {
                                && ab.getPipelineAggregations().isEmpty()
                                && ab.getSubAggregations().isEmpty()) {
 
-                           final Set<String> allPermittedIndices = sgRoles.getAllPermittedIndicesForKibana(resolved, user, READ_ACTIONS, resolver, clusterService);
+                           final Set<String> allPermittedIndices = sgRoles.getAllPermittedIndicesForKibana(resolved, READ_ACTIONS, evaluationContext);
                            if(allPermittedIndices == null || allPermittedIndices.isEmpty()) {
                                sr.source().query(NONE_QUERY);
                            } else {
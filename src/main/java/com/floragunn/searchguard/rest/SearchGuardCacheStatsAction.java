@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.rest;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestResponse;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.rest.action.RestBuilderListener;
+
+import com.floragunn.searchguard.action.cachestats.CacheStatsAction;
+import com.floragunn.searchguard.action.cachestats.CacheStatsNodeResponse;
+import com.floragunn.searchguard.action.cachestats.CacheStatsRequest;
+import com.floragunn.searchguard.action.cachestats.CacheStatsResponse;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Hit, miss and load statistics of the authentication and authorization caches of all nodes.
+ */
+public class SearchGuardCacheStatsAction extends BaseRestHandler {
+
+    public SearchGuardCacheStatsAction(final Settings settings, final RestController controller) {
+        super(settings);
+        controller.registerHandler(GET, "/_searchguard/cache/stats", this);
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        return channel -> client.execute(CacheStatsAction.INSTANCE, new CacheStatsRequest(),
+                new RestBuilderListener<CacheStatsResponse>(channel) {
+
+                    @Override
+                    public RestResponse buildResponse(CacheStatsResponse response, XContentBuilder builder) throws Exception {
+                        builder.startObject();
+                        builder.startObject("nodes");
+                        for (CacheStatsNodeResponse nodeResponse : response.getNodes()) {
+                            builder.startObject(nodeResponse.getNode().getId());
+                            for (Map.Entry<String, CacheStats> entry : nodeResponse.getStats().entrySet()) {
+                                final CacheStats stats = entry.getValue();
+                                builder.startObject(entry.getKey());
+                                builder.field("size", nodeResponse.getSizes().get(entry.getKey()));
+                                builder.field("hit_count", stats.hitCount());
+                                builder.field("miss_count", stats.missCount());
+                                builder.field("hit_rate", stats.hitRate());
+                                builder.field("load_success_count", stats.loadSuccessCount());
+                                builder.field("load_exception_count", stats.loadExceptionCount());
+                                builder.field("total_load_time_ms", TimeUnit.NANOSECONDS.toMillis(stats.totalLoadTime()));
+                                builder.field("average_load_time_ms", stats.averageLoadPenalty() / TimeUnit.MILLISECONDS.toNanos(1));
+                                builder.field("eviction_count", stats.evictionCount());
+                                builder.endObject();
+                            }
+                            builder.endObject();
+                        }
+                        builder.endObject();
+                        builder.startArray("failures");
+                        for (FailedNodeException failure : response.failures()) {
+                            builder.value(failure.nodeId() + ": " + failure.getDetailedMessage());
+                        }
+                        builder.endArray();
+                        builder.endObject();
+                        return new BytesRestResponse(response.hasFailures() ? RestStatus.INTERNAL_SERVER_ERROR : RestStatus.OK, builder);
+                    }
+                });
+    }
+
+    @Override
+    public String getName() {
+        return "Search Guard Cache Stats";
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.rest;
+
+import static org.elasticsearch.rest.RestRequest.Method.DELETE;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestResponse;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.rest.action.RestBuilderListener;
+
+import com.floragunn.searchguard.action.usercache.InvalidateUserCacheAction;
+import com.floragunn.searchguard.action.usercache.InvalidateUserCacheNodeResponse;
+import com.floragunn.searchguard.action.usercache.InvalidateUserCacheRequest;
+import com.floragunn.searchguard.action.usercache.InvalidateUserCacheResponse;
+
+/**
+ * Drops the cached authentication and backend roles of the given (comma separated) users on all nodes.
+ */
+public class SearchGuardUserCacheAction extends BaseRestHandler {
+
+    public SearchGuardUserCacheAction(final Settings settings, final RestController controller) {
+        super(settings);
+        controller.registerHandler(DELETE, "/_searchguard/cache/users/{usernames}", this);
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        final String[] usernames = Strings.splitStringByCommaToArray(request.param("usernames"));
+
+        return channel -> client.execute(InvalidateUserCacheAction.INSTANCE, new InvalidateUserCacheRequest(usernames),
+                new RestBuilderListener<InvalidateUserCacheResponse>(channel) {
+
+                    @Override
+                    public RestResponse buildResponse(InvalidateUserCacheResponse response, XContentBuilder builder) throws Exception {
+                        builder.startObject();
+                        builder.startObject("nodes");
+                        for (InvalidateUserCacheNodeResponse nodeResponse : response.getNodes()) {
+                            builder.startObject(nodeResponse.getNode().getId());
+                            builder.field("invalidated_entries", nodeResponse.getInvalidatedEntries());
+                            builder.endObject();
+                        }
+                        builder.endObject();
+                        builder.startArray("failures");
+                        for (FailedNodeException failure : response.failures()) {
+                            builder.value(failure.nodeId() + ": " + failure.getDetailedMessage());
+                        }
+                        builder.endArray();
+                        builder.endObject();
+                        return new BytesRestResponse(response.hasFailures() ? RestStatus.INTERNAL_SERVER_ERROR : RestStatus.OK, builder);
+                    }
+                });
+    }
+
+    @Override
+    public String getName() {
+        return "Search Guard User Cache";
+    }
+
+}
@@ -17,6 +17,7 @@
 
 package com.floragunn.searchguard.sgconf;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -28,44 +29,62 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 
 import com.floragunn.searchguard.configuration.ActionGroupHolder;
 import com.floragunn.searchguard.configuration.ConfigurationChangeListener;
 import com.floragunn.searchguard.resolver.IndexResolverReplacer.Resolved;
+import com.floragunn.searchguard.support.ActionBitSet;
+import com.floragunn.searchguard.support.CompiledPattern;
+import com.floragunn.searchguard.support.PatternSet;
 import com.floragunn.searchguard.support.WildcardMatcher;
 import com.floragunn.searchguard.user.User;
-import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 
 public class ConfigModel implements ConfigurationChangeListener {
 
+    //maximum time to wait for a reload, the previous roles are kept if it takes longer
+    public static final long RELOAD_TIMEOUT_SECONDS = 30;
+
     protected final Logger log = LogManager.getLogger(this.getClass());
     private static final Set<String> IGNORED_TYPES = ImmutableSet.of("_dls_", "_fls_", "_masked_fields_");
     private final ActionGroupHolder ah;
-    private SgRoles sgRoles = null;
+    private final ResolvedIndexPatternCache resolvedIndexPatterns = new ResolvedIndexPatternCache();
+    private final ExecutorService reloadExecutor;
+    private volatile SgRoles sgRoles = null;
+
+    //state of the last reload, only accessed from onChange()
+    private Settings loadedActionGroups = null;
+    private Map<String, LoadedRole> loadedRoles = Collections.emptyMap();
 
-    public ConfigModel(final ActionGroupHolder ah) {
+    public ConfigModel(final ActionGroupHolder ah, final ClusterService cs, final ExecutorService reloadExecutor) {
         this.ah = ah;
+        this.reloadExecutor = reloadExecutor;
+        cs.addListener(resolvedIndexPatterns);
     }
 
     @Override
-    public void onChange(Settings rolesSettings) {
+    public synchronized void onChange(Settings rolesSettings) {
         final SgRoles tmp = reload(rolesSettings);
 
         if (tmp != null) {
@@ -79,106 +98,177 @@ public class ConfigModel implements ConfigurationChangeListener {
 
     private SgRoles reload(Settings rolesSettings) {
 
-        final Set<Future<SgRole>> futures = new HashSet<>(5000);
-        final ExecutorService execs = Executors.newFixedThreadPool(10);
+        //resolved actions depend on the action groups, rebuild everything if they changed
+        final Settings actionGroups = ah.getSettings();
+        final Map<String, LoadedRole> previousRoles = Objects.equals(actionGroups, loadedActionGroups) ? loadedRoles
+                : Collections.<String, LoadedRole> emptyMap();
+
+        final Map<String, Future<LoadedRole>> futures = new HashMap<>(rolesSettings.names().size());
+        int reused = 0;
 
         for (String sgRole : rolesSettings.names()) {
 
-            Future<SgRole> future = execs.submit(new Callable<SgRole>() {
+            final Settings sgRoleSettings = rolesSettings.getByPrefix(sgRole);
+            final LoadedRole previous = previousRoles.get(sgRole);
+
+            if (previous != null && previous.settings.equals(sgRoleSettings)) {
+                futures.put(sgRole, CompletableFuture.completedFuture(previous));
+                reused++;
+                continue;
+            }
+
+            futures.put(sgRole, submit(reloadExecutor, new Callable<LoadedRole>() {
 
                 @Override
-                public SgRole call() throws Exception {
-                    SgRole _sgRole = new SgRole(sgRole);
-
-                    final Settings sgRoleSettings = rolesSettings.getByPrefix(sgRole);
-                    if (!sgRoleSettings.names().isEmpty()) {
-                        final Set<String> permittedClusterActions = ah.resolvedActions(sgRoleSettings.getAsList(".cluster", Collections.emptyList()));
-                        _sgRole.addClusterPerms(permittedClusterActions);
-
-                        Settings tenants = rolesSettings.getByPrefix(sgRole + ".tenants.");
-
-                        if (tenants != null) {
-                            for (String tenant : tenants.names()) {
-
-                                //if(tenant.equals(user.getName())) {
-                                //    continue;
-                                //}
-
-                                if ("RW".equalsIgnoreCase(tenants.get(tenant, "RO"))) {
-                                    _sgRole.addTenant(new Tenant(tenant, true));
-                                } else {
-                                    _sgRole.addTenant(new Tenant(tenant, false));
-                                    //if(_sgRole.tenants.stream().filter(t->t.tenant.equals(tenant)).count() > 0) { //RW outperforms RO
-                                    //    _sgRole.addTenant(new Tenant(tenant, false));
-                                    //}
-                                }
-                            }
-                        }
+                public LoadedRole call() throws Exception {
+                    return loadRole(sgRole, sgRoleSettings, previous);
+                }
+            }));
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Reload {} roles, {} unchanged", futures.size(), reused);
+        }
 
-                        final Map<String, Settings> permittedAliasesIndices = sgRoleSettings.getGroups(".indices");
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(RELOAD_TIMEOUT_SECONDS);
 
-                        for (final String permittedAliasesIndex : permittedAliasesIndices.keySet()) {
+        try {
+            final Map<String, LoadedRole> _loadedRoles = new HashMap<>(futures.size());
+            SgRoles _sgRoles = new SgRoles(futures.size());
+            for (Entry<String, Future<LoadedRole>> future : futures.entrySet()) {
+                final LoadedRole loadedRole = future.getValue().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                _loadedRoles.put(future.getKey(), loadedRole);
+                _sgRoles.addSgRole(loadedRole.sgRole);
+            }
 
-                            final String resolvedRole = sgRole;
-                            final String indexPattern = permittedAliasesIndex;
+            loadedActionGroups = actionGroups;
+            loadedRoles = _loadedRoles;
+            return _sgRoles;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Thread interrupted while loading roles");
+            return null;
+        } catch (TimeoutException e) {
+            futures.values().forEach(f -> f.cancel(true));
+            log.error("Roles not loaded within {} seconds, keep the previous roles", RELOAD_TIMEOUT_SECONDS);
+            return null;
+        } catch (ExecutionException e) {
+            log.error("Error while updating roles: {}", e.getCause(), e.getCause());
+            throw ExceptionsHelper.convertToElastic(e);
+        }
+    }
 
-                            final String dls = rolesSettings.get(resolvedRole + ".indices." + indexPattern + "._dls_");
-                            final List<String> fls = rolesSettings.getAsList(resolvedRole + ".indices." + indexPattern + "._fls_");
-                            final List<String> maskedFields = rolesSettings.getAsList(resolvedRole + ".indices." + indexPattern + "._masked_fields_");
+    /**
+     * Submits the task to the executor or runs it on the calling thread if the queue of the executor is full
+     */
+    public static <T> Future<T> submit(final ExecutorService executor, final Callable<T> task) {
+        try {
+            return executor.submit(task);
+        } catch (EsRejectedExecutionException e) {
+            final FutureTask<T> future = new FutureTask<>(task);
+            future.run();
+            return future;
+        }
+    }
 
-                            IndexPattern _indexPattern = new IndexPattern(indexPattern);
-                            _indexPattern.setDlsQuery(dls);
-                            _indexPattern.addFlsFields(fls);
-                            _indexPattern.addMaskedFields(maskedFields);
+    private LoadedRole loadRole(final String sgRole, final Settings sgRoleSettings, final LoadedRole previous) {
 
-                            for (String type : permittedAliasesIndices.get(indexPattern).names()) {
+        if (sgRoleSettings.names().isEmpty()) {
+            return new LoadedRole(sgRoleSettings, null, Collections.emptyMap());
+        }
 
-                                if (IGNORED_TYPES.contains(type)) {
-                                    continue;
-                                }
+        final SgRole _sgRole = new SgRole(sgRole);
+        final Map<String, LoadedIndexPattern> _indexPatterns = new HashMap<>();
 
-                                TypePerm typePerm = new TypePerm(type);
-                                final List<String> perms = rolesSettings.getAsList(resolvedRole + ".indices." + indexPattern + "." + type);
-                                typePerm.addPerms(ah.resolvedActions(perms));
-                                _indexPattern.addTypePerms(typePerm);
-                            }
+        final Set<String> permittedClusterActions = ah.resolvedActions(sgRoleSettings.getAsList(".cluster", Collections.emptyList()));
+        _sgRole.addClusterPerms(permittedClusterActions);
 
-                            _sgRole.addIndexPattern(_indexPattern);
+        Settings tenants = sgRoleSettings.getByPrefix(".tenants.");
 
-                        }
-                        return _sgRole;
-                    }
+        if (tenants != null) {
+            for (String tenant : tenants.names()) {
 
-                    return null;
-                }
-            });
+                //if(tenant.equals(user.getName())) {
+                //    continue;
+                //}
 
-            futures.add(future);
+                if ("RW".equalsIgnoreCase(tenants.get(tenant, "RO"))) {
+                    _sgRole.addTenant(new Tenant(tenant, true));
+                } else {
+                    _sgRole.addTenant(new Tenant(tenant, false));
+                    //if(_sgRole.tenants.stream().filter(t->t.tenant.equals(tenant)).count() > 0) { //RW outperforms RO
+                    //    _sgRole.addTenant(new Tenant(tenant, false));
+                    //}
+                }
+            }
         }
 
-        execs.shutdown();
-        try {
-            execs.awaitTermination(30, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.error("Thread interrupted (1) while loading roles");
-            return null;
+        final Map<String, Settings> permittedAliasesIndices = sgRoleSettings.getGroups(".indices");
+
+        for (final Entry<String, Settings> permittedAliasesIndex : permittedAliasesIndices.entrySet()) {
+
+            final String indexPattern = permittedAliasesIndex.getKey();
+            final Settings indexPatternSettings = permittedAliasesIndex.getValue();
+
+            LoadedIndexPattern loadedIndexPattern = previous == null ? null : previous.indexPatterns.get(indexPattern);
+
+            if (loadedIndexPattern == null || !loadedIndexPattern.settings.equals(indexPatternSettings)) {
+                loadedIndexPattern = new LoadedIndexPattern(indexPatternSettings, loadIndexPattern(indexPattern, indexPatternSettings));
+            }
+
+            _indexPatterns.put(indexPattern, loadedIndexPattern);
+            _sgRole.addIndexPattern(loadedIndexPattern.indexPattern);
         }
 
-        try {
-            SgRoles _sgRoles = new SgRoles(futures.size());
-            for (Future<SgRole> future : futures) {
-                _sgRoles.addSgRole(future.get());
+        return new LoadedRole(sgRoleSettings, _sgRole, _indexPatterns);
+    }
+
+    private IndexPattern loadIndexPattern(final String indexPattern, final Settings indexPatternSettings) {
+
+        final String dls = indexPatternSettings.get("_dls_");
+        final List<String> fls = indexPatternSettings.getAsList("_fls_");
+        final List<String> maskedFields = indexPatternSettings.getAsList("_masked_fields_");
+
+        IndexPattern _indexPattern = new IndexPattern(indexPattern, resolvedIndexPatterns);
+        _indexPattern.setDlsQuery(dls);
+        _indexPattern.addFlsFields(fls);
+        _indexPattern.addMaskedFields(maskedFields);
+
+        for (String type : indexPatternSettings.names()) {
+
+            if (IGNORED_TYPES.contains(type)) {
+                continue;
             }
 
-            return _sgRoles;
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.error("Thread interrupted (2) while loading roles");
-            return null;
-        } catch (ExecutionException e) {
-            log.error("Error while updating roles: {}", e.getCause(), e.getCause());
-            throw ExceptionsHelper.convertToElastic(e);
+            TypePerm typePerm = new TypePerm(type);
+            final List<String> perms = indexPatternSettings.getAsList(type);
+            typePerm.addPerms(ah.resolvedActions(perms));
+            _indexPattern.addTypePerms(typePerm);
+        }
+
+        return _indexPattern;
+    }
+
+    //a role together with the settings it was built from
+    private static class LoadedRole {
+        private final Settings settings;
+        private final SgRole sgRole;
+        private final Map<String, LoadedIndexPattern> indexPatterns;
+
+        private LoadedRole(Settings settings, SgRole sgRole, Map<String, LoadedIndexPattern> indexPatterns) {
+            this.settings = settings;
+            this.sgRole = sgRole;
+            this.indexPatterns = indexPatterns;
+        }
+    }
+
+    private static class LoadedIndexPattern {
+        private final Settings settings;
+        private final IndexPattern indexPattern;
+
+        private LoadedIndexPattern(Settings settings, IndexPattern indexPattern) {
+            this.settings = settings;
+            this.indexPattern = indexPattern;
         }
     }
 
@@ -186,17 +276,35 @@ public class ConfigModel implements ConfigurationChangeListener {
 
     public static class SgRoles {
 
+        private static final int MAX_CACHED_VIEWS = 10_000;
+
         protected final Logger log = LogManager.getLogger(this.getClass());
 
         final Set<SgRole> roles;
 
+        //only set for the full set of loaded roles, null for views
+        private final Map<String, SgRole> rolesByName;
+        private final Cache<Set<String>, SgRoles> views;
+
+        private volatile TypePermIndex rolespanIndex;
+        private final ActionBitSet clusterPermissions = new ActionBitSet(this::impliesClusterPermissionUncached);
+
         private SgRoles(int roleCount) {
             roles = new HashSet<>(roleCount);
+            rolesByName = new HashMap<>(roleCount);
+            views = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_VIEWS).build();
+        }
+
+        private SgRoles(ImmutableSet<SgRole> roles) {
+            this.roles = roles;
+            this.rolesByName = null;
+            this.views = null;
         }
 
         private SgRoles addSgRole(SgRole sgRole) {
             if (sgRole != null) {
                 this.roles.add(sgRole);
+                this.rolesByName.put(sgRole.getName(), sgRole);
             }
             return this;
         }
@@ -235,27 +343,50 @@ public class ConfigModel implements ConfigurationChangeListener {
             return Collections.unmodifiableSet(roles);
         }
 
+        /**
+         * Views of the full set of loaded roles are immutable and cached per set of role names,
+         * so they are only built once per config change.
+         */
         public SgRoles filter(Set<String> keep) {
-            final SgRoles retVal = new SgRoles(roles.size());
-            for (SgRole sgr : roles) {
-                if (keep.contains(sgr.getName())) {
-                    retVal.addSgRole(sgr);
+
+            if (views == null) {
+                final ImmutableSet.Builder<SgRole> kept = ImmutableSet.builder();
+                for (SgRole sgr : roles) {
+                    if (keep.contains(sgr.getName())) {
+                        kept.add(sgr);
+                    }
+                }
+                return new SgRoles(kept.build());
+            }
+
+            SgRoles view = views.getIfPresent(keep);
+
+            if (view == null) {
+                final ImmutableSet.Builder<SgRole> kept = ImmutableSet.builder();
+                for (String name : keep) {
+                    final SgRole sgr = rolesByName.get(name);
+                    if (sgr != null) {
+                        kept.add(sgr);
+                    }
                 }
+                view = new SgRoles(kept.build());
+                views.put(ImmutableSet.copyOf(keep), view);
             }
-            return retVal;
+
+            return view;
         }
 
-        public Map<String, Set<String>> getMaskedFields(User user, IndexNameExpressionResolver resolver, ClusterService cs) {
+        public Map<String, Set<String>> getMaskedFields(EvaluationContext ctx) {
             final Map<String, Set<String>> maskedFieldsMap = new HashMap<String, Set<String>>();
 
             for (SgRole sgr : roles) {
                 for (IndexPattern ip : sgr.getIpatterns()) {
                     final Set<String> maskedFields = ip.getMaskedFields();
-                    final String indexPattern = ip.getUnresolvedIndexPattern(user);
+                    final String indexPattern = ip.getUnresolvedIndexPattern(ctx);
                     String[] concreteIndices = new String[0];
 
                     if ((maskedFields != null && maskedFields.size() > 0)) {
-                        concreteIndices = ip.getResolvedIndexPattern(user, resolver, cs);
+                        concreteIndices = ip.getResolvedIndexPattern(ctx);
                     }
 
                     if (maskedFields != null && maskedFields.size() > 0) {
@@ -282,8 +413,7 @@ public class ConfigModel implements ConfigurationChangeListener {
             return maskedFieldsMap;
         }
 
-        public Tuple<Map<String, Set<String>>, Map<String, Set<String>>> getDlsFls(User user, IndexNameExpressionResolver resolver,
-                ClusterService cs) {
+        public Tuple<Map<String, Set<String>>, Map<String, Set<String>>> getDlsFls(EvaluationContext ctx) {
 
             final Map<String, Set<String>> dlsQueries = new HashMap<String, Set<String>>();
             final Map<String, Set<String>> flsFields = new HashMap<String, Set<String>>();
@@ -291,12 +421,12 @@ public class ConfigModel implements ConfigurationChangeListener {
             for (SgRole sgr : roles) {
                 for (IndexPattern ip : sgr.getIpatterns()) {
                     final Set<String> fls = ip.getFls();
-                    final String dls = ip.getDlsQuery(user);
-                    final String indexPattern = ip.getUnresolvedIndexPattern(user);
+                    final String dls = ip.getDlsQuery(ctx);
+                    final String indexPattern = ip.getUnresolvedIndexPattern(ctx);
                     String[] concreteIndices = new String[0];
 
                     if ((dls != null && dls.length() > 0) || (fls != null && fls.size() > 0)) {
-                        concreteIndices = ip.getResolvedIndexPattern(user, resolver, cs);
+                        concreteIndices = ip.getResolvedIndexPattern(ctx);
                     }
 
                     if (dls != null && dls.length() > 0) {
@@ -347,20 +477,20 @@ public class ConfigModel implements ConfigurationChangeListener {
         }
 
         //kibana special only, terms eval
-        public Set<String> getAllPermittedIndicesForKibana(Resolved resolved, User user, String[] actions, IndexNameExpressionResolver resolver, ClusterService cs) {
+        public Set<String> getAllPermittedIndicesForKibana(Resolved resolved, String[] actions, EvaluationContext ctx) {
             Set<String> retVal = new HashSet<>();
             for (SgRole sgr : roles) {
-                retVal.addAll(sgr.getAllResolvedPermittedIndices(Resolved._LOCAL_ALL, user, actions, resolver, cs));
+                retVal.addAll(sgr.getAllResolvedPermittedIndices(Resolved._LOCAL_ALL, actions, ctx));
                 retVal.addAll(resolved.getRemoteIndices());
             }
             return Collections.unmodifiableSet(retVal);
         }
 
         //dnfof only
-        public Set<String> reduce(Resolved resolved, User user, String[] actions, IndexNameExpressionResolver resolver, ClusterService cs) {
+        public Set<String> reduce(Resolved resolved, String[] actions, EvaluationContext ctx) {
             Set<String> retVal = new HashSet<>();
             for (SgRole sgr : roles) {
-                retVal.addAll(sgr.getAllResolvedPermittedIndices(resolved, user, actions, resolver, cs));
+                retVal.addAll(sgr.getAllResolvedPermittedIndices(resolved, actions, ctx));
             }
             if (log.isDebugEnabled()) {
                 log.debug("Reduced requested resolved indices {} to permitted indices {}.", resolved, retVal.toString());
@@ -369,9 +499,9 @@ public class ConfigModel implements ConfigurationChangeListener {
         }
 
         //return true on success
-        public boolean get(Resolved resolved, User user, String[] actions, IndexNameExpressionResolver resolver, ClusterService cs) {
+        public boolean get(Resolved resolved, String[] actions, EvaluationContext ctx) {
             for (SgRole sgr : roles) {
-                if (ConfigModel.impliesTypePerm(sgr.getIpatterns(), resolved, user, actions, resolver, cs)) {
+                if (sgr.typePermIndex.implies(resolved, actions, ctx)) {
                     return true;
                 }
             }
@@ -379,15 +509,23 @@ public class ConfigModel implements ConfigurationChangeListener {
         }
 
         public boolean impliesClusterPermissionPermission(String action) {
+            return clusterPermissions.test(action);
+        }
+
+        private boolean impliesClusterPermissionUncached(String action) {
             return roles.stream().filter(r -> r.impliesClusterPermission(action)).count() > 0;
         }
 
         //rolespan
-        public boolean impliesTypePermGlobal(Resolved resolved, User user, String[] actions, IndexNameExpressionResolver resolver,
-                ClusterService cs) {
-            Set<IndexPattern> ipatterns = new HashSet<ConfigModel.IndexPattern>();
-            roles.stream().forEach(p -> ipatterns.addAll(p.getIpatterns()));
-            return ConfigModel.impliesTypePerm(ipatterns, resolved, user, actions, resolver, cs);
+        public boolean impliesTypePermGlobal(Resolved resolved, String[] actions, EvaluationContext ctx) {
+            TypePermIndex index = rolespanIndex;
+            if (index == null) {
+                final List<IndexPattern> ipatterns = new ArrayList<>();
+                roles.stream().forEach(r -> ipatterns.addAll(r.ipatterns));
+                index = new TypePermIndex(ipatterns);
+                rolespanIndex = index;
+            }
+            return index.implies(resolved, actions, ctx);
         }
     }
 
@@ -397,6 +535,10 @@ public class ConfigModel implements ConfigurationChangeListener {
         private final Set<Tenant> tenants = new HashSet<>();
         private final Set<IndexPattern> ipatterns = new HashSet<>();
         private final Set<String> clusterPerms = new HashSet<>();
+        private ActionBitSet compiledClusterPerms = new ActionBitSet(PatternSet.EMPTY::matches);
+        private final TypePermIndex typePermIndex = new TypePermIndex(ipatterns);
+        //roles are not modified once loaded, 0 means not yet computed
+        private int hashCode;
 
         private SgRole(String name) {
             super();
@@ -404,13 +546,12 @@ public class ConfigModel implements ConfigurationChangeListener {
         }
 
         private boolean impliesClusterPermission(String action) {
-            return WildcardMatcher.matchAny(clusterPerms, action);
+            return compiledClusterPerms.test(action);
         }
 
         //get indices which are permitted for the given types and actions
         //dnfof + kibana special only
-        private Set<String> getAllResolvedPermittedIndices(Resolved resolved, User user, String[] actions, IndexNameExpressionResolver resolver,
-                ClusterService cs) {
+        private Set<String> getAllResolvedPermittedIndices(Resolved resolved, String[] actions, EvaluationContext ctx) {
 
             final Set<String> retVal = new HashSet<>();
             for (IndexPattern p : ipatterns) {
@@ -418,13 +559,13 @@ public class ConfigModel implements ConfigurationChangeListener {
                 boolean patternMatch = false;
                 final Set<TypePerm> tperms = p.getTypePerms();
                 for (TypePerm tp : tperms) {
-                    if (WildcardMatcher.matchAny(tp.typePattern, resolved.getTypes().toArray(new String[0]))) {
-                        patternMatch = WildcardMatcher.matchAll(tp.perms.toArray(new String[0]), actions);
+                    if (tp.compiledTypePattern.matchesAny(resolved.getTypes())) {
+                        patternMatch = tp.compiledPerms.testAll(actions);
                     }
                 }
                 if (patternMatch) {
                     //resolved but can contain patterns for nonexistent indices
-                    final String[] permitted = p.getResolvedIndexPattern(user, resolver, cs); //maybe they do not exist
+                    final String[] permitted = p.getResolvedIndexPattern(ctx); //maybe they do not exist
                     final Set<String> res = new HashSet<>();
                     if (!resolved.isLocalAll() && !resolved.getAllIndices().contains("*") && !resolved.getAllIndices().contains("_all")) {
                         final Set<String> wanted = new HashSet<>(resolved.getAllIndices());
@@ -436,7 +577,7 @@ public class ConfigModel implements ConfigurationChangeListener {
 
                         //#557
                         //final String[] allIndices = resolver.concreteIndexNames(cs.state(), IndicesOptions.lenientExpandOpen(), "*");
-                        final String[] allIndices = cs.state().metaData().getConcreteAllOpenIndices();
+                        final String[] allIndices = ctx.getConcreteAllOpenIndices();
                         final Set<String> wanted = new HashSet<>(Arrays.asList(allIndices));
                         WildcardMatcher.wildcardRetainInSet(wanted, permitted);
                         res.addAll(wanted);
@@ -466,18 +607,23 @@ public class ConfigModel implements ConfigurationChangeListener {
         private SgRole addClusterPerms(Collection<String> clusterPerms) {
             if (clusterPerms != null) {
                 this.clusterPerms.addAll(clusterPerms);
+                this.compiledClusterPerms = new ActionBitSet(PatternSet.compile(this.clusterPerms)::matches);
             }
             return this;
         }
 
         @Override
         public int hashCode() {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + ((clusterPerms == null) ? 0 : clusterPerms.hashCode());
-            result = prime * result + ((ipatterns == null) ? 0 : ipatterns.hashCode());
-            result = prime * result + ((name == null) ? 0 : name.hashCode());
-            result = prime * result + ((tenants == null) ? 0 : tenants.hashCode());
+            int result = hashCode;
+            if (result == 0) {
+                final int prime = 31;
+                result = 1;
+                result = prime * result + ((clusterPerms == null) ? 0 : clusterPerms.hashCode());
+                result = prime * result + ((ipatterns == null) ? 0 : ipatterns.hashCode());
+                result = prime * result + ((name == null) ? 0 : name.hashCode());
+                result = prime * result + ((tenants == null) ? 0 : tenants.hashCode());
+                hashCode = result;
+            }
             return result;
         }
 
@@ -541,14 +687,23 @@ public class ConfigModel implements ConfigurationChangeListener {
     //sg roles
     public static class IndexPattern {
         private final String indexPattern;
+        private final UserAttributeTemplate indexPatternTemplate;
         private String dlsQuery;
+        private UserAttributeTemplate dlsQueryTemplate;
         private final Set<String> fls = new HashSet<>();
         private final Set<String> maskedFields = new HashSet<>();
         private final Set<TypePerm> typePerms = new HashSet<>();
+        private final ResolvedIndexPatternCache resolvedIndexPatterns;
 
         public IndexPattern(String indexPattern) {
+            this(indexPattern, null);
+        }
+
+        IndexPattern(String indexPattern, ResolvedIndexPatternCache resolvedIndexPatterns) {
             super();
             this.indexPattern = Objects.requireNonNull(indexPattern);
+            this.indexPatternTemplate = UserAttributeTemplate.parse(indexPattern);
+            this.resolvedIndexPatterns = resolvedIndexPatterns;
         }
 
         public IndexPattern addFlsFields(List<String> flsFields) {
@@ -575,6 +730,7 @@ public class ConfigModel implements ConfigurationChangeListener {
         public IndexPattern setDlsQuery(String dlsQuery) {
             if (dlsQuery != null) {
                 this.dlsQuery = dlsQuery;
+                this.dlsQueryTemplate = UserAttributeTemplate.parse(dlsQuery);
             }
             return this;
         }
@@ -635,24 +791,49 @@ public class ConfigModel implements ConfigurationChangeListener {
         }
 
         public String getUnresolvedIndexPattern(User user) {
-            return replaceProperties(indexPattern, user);
+            return indexPatternTemplate.render(user);
         }
 
-        private String[] getResolvedIndexPattern(User user, IndexNameExpressionResolver resolver, ClusterService cs) {
-            String unresolved = getUnresolvedIndexPattern(user);
+        public String getUnresolvedIndexPattern(EvaluationContext ctx) {
+            return indexPatternTemplate.render(ctx.getUser());
+        }
+
+        //the returned array is shared and must not be modified
+        String[] getResolvedIndexPattern(EvaluationContext ctx) {
+            final String unresolved = getUnresolvedIndexPattern(ctx);
+            String[] resolved = ctx.getResolvedIndexPattern(unresolved);
+
+            if (resolved == null) {
+                final IndexNameExpressionResolver resolver = ctx.getResolver();
+                final ClusterState state = ctx.getClusterState();
+
+                if (resolvedIndexPatterns == null) {
+                    resolved = resolveIndexPattern(unresolved, resolver, state);
+                } else {
+                    resolved = resolvedIndexPatterns.get(unresolved, state, () -> resolveIndexPattern(unresolved, resolver, state));
+                }
+
+                ctx.putResolvedIndexPattern(unresolved, resolved);
+            }
+
+            return resolved;
+        }
+
+        private static String[] resolveIndexPattern(String unresolved, IndexNameExpressionResolver resolver, ClusterState state) {
             String[] resolved = null;
             if (WildcardMatcher.containsWildcard(unresolved)) {
-                final String[] aliasesForPermittedPattern = cs.state().getMetaData().getAliasAndIndexLookup().entrySet().stream()
-                        .filter(e -> e.getValue().isAlias()).filter(e -> WildcardMatcher.match(unresolved, e.getKey())).map(e -> e.getKey())
+                final CompiledPattern compiledUnresolved = CompiledPattern.compile(unresolved);
+                final String[] aliasesForPermittedPattern = state.getMetaData().getAliasAndIndexLookup().entrySet().stream()
+                        .filter(e -> e.getValue().isAlias()).filter(e -> compiledUnresolved.matches(e.getKey())).map(e -> e.getKey())
                         .toArray(String[]::new);
 
                 if (aliasesForPermittedPattern != null && aliasesForPermittedPattern.length > 0) {
-                    resolved = resolver.concreteIndexNames(cs.state(), IndicesOptions.lenientExpandOpen(), aliasesForPermittedPattern);
+                    resolved = resolver.concreteIndexNames(state, IndicesOptions.lenientExpandOpen(), aliasesForPermittedPattern);
                 }
             }
 
             if (resolved == null && !unresolved.isEmpty()) {
-                resolved = resolver.concreteIndexNames(cs.state(), IndicesOptions.lenientExpandOpen(), unresolved);
+                resolved = resolver.concreteIndexNames(state, IndicesOptions.lenientExpandOpen(), unresolved);
             }
             if (resolved == null || resolved.length == 0) {
                 return new String[] { unresolved };
@@ -665,7 +846,11 @@ public class ConfigModel implements ConfigurationChangeListener {
         }
 
         public String getDlsQuery(User user) {
-            return replaceProperties(dlsQuery, user);
+            return dlsQueryTemplate == null ? null : dlsQueryTemplate.render(user);
+        }
+
+        public String getDlsQuery(EvaluationContext ctx) {
+            return getDlsQuery(ctx.getUser());
         }
 
         public Set<String> getFls() {
@@ -685,10 +870,13 @@ public class ConfigModel implements ConfigurationChangeListener {
     public static class TypePerm {
         private final String typePattern;
         private final Set<String> perms = new HashSet<>();
+        private final CompiledPattern compiledTypePattern;
+        private ActionBitSet compiledPerms = new ActionBitSet(PatternSet.EMPTY::matches);
 
         private TypePerm(String typePattern) {
             super();
             this.typePattern = Objects.requireNonNull(typePattern);
+            this.compiledTypePattern = CompiledPattern.compile(typePattern);
             if (IGNORED_TYPES.contains(typePattern)) {
                 throw new RuntimeException("typepattern '" + typePattern + "' not allowed");
             }
@@ -697,6 +885,7 @@ public class ConfigModel implements ConfigurationChangeListener {
         private TypePerm addPerms(Collection<String> perms) {
             if (perms != null) {
                 this.perms.addAll(perms);
+                this.compiledPerms = new ActionBitSet(PatternSet.compile(this.perms)::matches);
             }
             return this;
         }
@@ -745,6 +934,14 @@ public class ConfigModel implements ConfigurationChangeListener {
             return Collections.unmodifiableSet(perms);
         }
 
+        CompiledPattern getCompiledTypePattern() {
+            return compiledTypePattern;
+        }
+
+        ActionBitSet getCompiledPerms() {
+            return compiledPerms;
+        }
+
     }
 
     public static class Tenant {
@@ -798,71 +995,4 @@ public class ConfigModel implements ConfigurationChangeListener {
             return System.lineSeparator() + "                tenant=" + tenant + System.lineSeparator() + "                readWrite=" + readWrite;
         }
     }
-
-    private static String replaceProperties(String orig, User user) {
-
-        if (user == null || orig == null) {
-            return orig;
-        }
-
-        orig = orig.replace("${user.name}", user.getName()).replace("${user_name}", user.getName());
-        orig = replaceRoles(orig, user);
-        for (Entry<String, String> entry : user.getCustomAttributesMap().entrySet()) {
-            if (entry == null || entry.getKey() == null || entry.getValue() == null) {
-                continue;
-            }
-            orig = orig.replace("${" + entry.getKey() + "}", entry.getValue());
-            orig = orig.replace("${" + entry.getKey().replace('.', '_') + "}", entry.getValue());
-        }
-        return orig;
-    }
-
-    private static String replaceRoles(final String orig, final User user) {
-        String retVal = orig;
-        if (orig.contains("${user.roles}") || orig.contains("${user_roles}")) {
-            final String commaSeparatedRoles = toQuotedCommaSeparatedString(user.getRoles());
-            retVal = orig.replace("${user.roles}", commaSeparatedRoles).replace("${user_roles}", commaSeparatedRoles);
-        }
-        return retVal;
-    }
-
-    private static String toQuotedCommaSeparatedString(final Set<String> roles) {
-        return Joiner.on(',').join(Iterables.transform(roles, s -> {
-            return new StringBuilder(s.length() + 2).append('"').append(s).append('"').toString();
-        }));
-    }
-
-    private static boolean impliesTypePerm(Set<IndexPattern> ipatterns, Resolved resolved, User user, String[] actions,
-            IndexNameExpressionResolver resolver, ClusterService cs) {
-        Set<String> matchingIndex = new HashSet<>(resolved.getAllIndices());
-
-        for (String in : resolved.getAllIndices()) {
-            //find index patterns who are matching
-            Set<String> matchingActions = new HashSet<>(Arrays.asList(actions));
-            Set<String> matchingTypes = new HashSet<>(resolved.getTypes());
-            for (IndexPattern p : ipatterns) {
-                if (WildcardMatcher.matchAny(p.getResolvedIndexPattern(user, resolver, cs), in)) {
-                    //per resolved index per pattern
-                    for (String t : resolved.getTypes()) {
-                        for (TypePerm tp : p.typePerms) {
-                            if (WildcardMatcher.match(tp.typePattern, t)) {
-                                matchingTypes.remove(t);
-                                for (String a : Arrays.asList(actions)) {
-                                    if (WildcardMatcher.matchAny(tp.perms, a)) {
-                                        matchingActions.remove(a);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-
-            if (matchingActions.isEmpty() && matchingTypes.isEmpty()) {
-                matchingIndex.remove(in);
-            }
-        }
-
-        return matchingIndex.isEmpty();
-    }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.sgconf;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+
+import com.floragunn.searchguard.user.User;
+
+/**
+ * State shared by all permission checks done for one request: the user, a snapshot of the cluster state
+ * and the index patterns resolved so far.
+ * Not thread safe, a context must not outlive the evaluation of the request it was created for.
+ */
+public final class EvaluationContext {
+
+    private final User user;
+    private final IndexNameExpressionResolver resolver;
+    private final ClusterState state;
+    private final Map<String, String[]> resolvedIndexPatterns = new HashMap<>();
+    private String[] concreteAllOpenIndices;
+
+    public EvaluationContext(final User user, final IndexNameExpressionResolver resolver, final ClusterService cs) {
+        this(user, resolver, cs.state());
+    }
+
+    public EvaluationContext(final User user, final IndexNameExpressionResolver resolver, final ClusterState state) {
+        this.user = user;
+        this.resolver = resolver;
+        this.state = state;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public IndexNameExpressionResolver getResolver() {
+        return resolver;
+    }
+
+    public ClusterState getClusterState() {
+        return state;
+    }
+
+    String[] getConcreteAllOpenIndices() {
+        if (concreteAllOpenIndices == null) {
+            concreteAllOpenIndices = state.metaData().getConcreteAllOpenIndices();
+        }
+        return concreteAllOpenIndices;
+    }
+
+    String[] getResolvedIndexPattern(final String unresolved) {
+        return resolvedIndexPatterns.get(unresolved);
+    }
+
+    void putResolvedIndexPattern(final String unresolved, final String[] resolved) {
+        resolvedIndexPatterns.put(unresolved, resolved);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.sgconf;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.common.collect.Tuple;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Caches the concrete indices an index pattern (after user attribute substitution) resolves to.
+ * Entries are keyed by the cluster metadata version they were computed for and are dropped
+ * whenever the metadata changes. Date math patterns (like {@code <logs-{now/d}>}) also depend
+ * on the current time and are never cached.
+ */
+class ResolvedIndexPatternCache implements ClusterStateListener {
+
+    //total number of cached index names, not entries
+    private static final long MAX_WEIGHT = 1_000_000;
+
+    protected final Logger log = LogManager.getLogger(this.getClass());
+
+    private final Cache<Tuple<String, Long>, String[]> cache = CacheBuilder.newBuilder().maximumWeight(MAX_WEIGHT)
+            .weigher((Tuple<String, Long> k, String[] v) -> v.length + 1).build();
+
+    String[] get(final String unresolved, final ClusterState state, final Callable<String[]> resolver) {
+        try {
+            if (isDateMath(unresolved)) {
+                return resolver.call();
+            }
+            return cache.get(new Tuple<String, Long>(unresolved, state.metaData().version()), resolver);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw ExceptionsHelper.convertToElastic((Exception) e.getCause());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw ExceptionsHelper.convertToElastic(e);
+        }
+    }
+
+    long size() {
+        return cache.size();
+    }
+
+    //same check as the date math resolution of IndexNameExpressionResolver
+    static boolean isDateMath(final String unresolved) {
+        return unresolved.startsWith("<") && unresolved.endsWith(">");
+    }
+
+    @Override
+    public void clusterChanged(ClusterChangedEvent event) {
+        if (event.metaDataChanged()) {
+            if (log.isTraceEnabled()) {
+                log.trace("Metadata changed, invalidate {} resolved index patterns", cache.size());
+            }
+            cache.invalidateAll();
+        }
+    }
+}
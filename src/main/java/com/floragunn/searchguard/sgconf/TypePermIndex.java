@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.sgconf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.common.collect.Tuple;
+
+import com.floragunn.searchguard.resolver.IndexResolverReplacer.Resolved;
+import com.floragunn.searchguard.sgconf.ConfigModel.IndexPattern;
+import com.floragunn.searchguard.sgconf.ConfigModel.TypePerm;
+import com.floragunn.searchguard.support.WildcardMatcher;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Lookup tables over the index patterns of one role (or one set of roles for rolespan)
+ * which map a requested type, and a requested type/action pair, to the index patterns granting it.
+ * Tables are filled lazily and live as long as the roles they were built from, so only
+ * the index name matching remains to be done per request.
+ */
+final class TypePermIndex {
+
+    //types and actions are taken from requests, so bound the tables
+    private static final int MAX_ENTRIES = 10_000;
+
+    private final Collection<IndexPattern> ipatterns;
+    private final LoadingCache<String, List<IndexPattern>> typeTable;
+    private final LoadingCache<Tuple<String, String>, List<IndexPattern>> typeActionTable;
+
+    TypePermIndex(final Collection<IndexPattern> ipatterns) {
+        this.ipatterns = ipatterns;
+
+        this.typeTable = CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).build(new CacheLoader<String, List<IndexPattern>>() {
+            @Override
+            public List<IndexPattern> load(String type) throws Exception {
+                final List<IndexPattern> retVal = new ArrayList<>();
+                for (IndexPattern p : TypePermIndex.this.ipatterns) {
+                    for (TypePerm tp : p.getTypePerms()) {
+                        if (tp.getCompiledTypePattern().matches(type)) {
+                            retVal.add(p);
+                            break;
+                        }
+                    }
+                }
+                return Collections.unmodifiableList(retVal);
+            }
+        });
+
+        this.typeActionTable = CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES)
+                .build(new CacheLoader<Tuple<String, String>, List<IndexPattern>>() {
+                    @Override
+                    public List<IndexPattern> load(Tuple<String, String> typeAndAction) throws Exception {
+                        final List<IndexPattern> retVal = new ArrayList<>();
+                        for (IndexPattern p : typeTable.getUnchecked(typeAndAction.v1())) {
+                            for (TypePerm tp : p.getTypePerms()) {
+                                if (tp.getCompiledTypePattern().matches(typeAndAction.v1())
+                                        && tp.getCompiledPerms().test(typeAndAction.v2())) {
+                                    retVal.add(p);
+                                    break;
+                                }
+                            }
+                        }
+                        return Collections.unmodifiableList(retVal);
+                    }
+                });
+    }
+
+    /**
+     * Same semantics as the former nested loop over index patterns, type perms and actions:
+     * every requested index needs, for each requested type and for each requested action,
+     * at least one matching index pattern granting it.
+     */
+    boolean implies(final Resolved resolved, final String[] actions, final EvaluationContext ctx) {
+
+        final Set<String> indices = resolved.getAllIndices();
+
+        if (indices.isEmpty()) {
+            return true;
+        }
+
+        final Set<String> types = resolved.getTypes();
+        final List<List<IndexPattern>> candidates = new ArrayList<>(types.size() + actions.length);
+
+        for (String t : types) {
+            final List<IndexPattern> patterns = typeTable.getUnchecked(t);
+            if (patterns.isEmpty()) {
+                return false;
+            }
+            candidates.add(patterns);
+        }
+
+        for (String a : actions) {
+            final List<IndexPattern> patterns = new ArrayList<>();
+            for (String t : types) {
+                patterns.addAll(typeActionTable.getUnchecked(new Tuple<String, String>(t, a)));
+            }
+            if (patterns.isEmpty()) {
+                return false;
+            }
+            candidates.add(patterns);
+        }
+
+        //resolve every candidate pattern at most once per call
+        final Map<IndexPattern, String[]> resolvedPatterns = new IdentityHashMap<>();
+
+        for (String in : indices) {
+            for (List<IndexPattern> patterns : candidates) {
+                if (!matchAny(patterns, in, resolvedPatterns, ctx)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean matchAny(final List<IndexPattern> patterns, final String index, final Map<IndexPattern, String[]> resolvedPatterns,
+            final EvaluationContext ctx) {
+        for (IndexPattern p : patterns) {
+            String[] resolvedPattern = resolvedPatterns.get(p);
+            if (resolvedPattern == null) {
+                resolvedPattern = p.getResolvedIndexPattern(ctx);
+                resolvedPatterns.put(p, resolvedPattern);
+            }
+            if (WildcardMatcher.matchAny(resolvedPattern, index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
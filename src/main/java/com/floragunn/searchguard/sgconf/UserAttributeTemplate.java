@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.sgconf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.floragunn.searchguard.user.User;
+import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterables;
+
+/**
+ * An index pattern or DLS query with <code>${...}</code> user attribute placeholders, parsed once when the roles are loaded.
+ * Supported placeholders are <code>${user.name}</code>, <code>${user.roles}</code> and the custom attributes of the user,
+ * each also with '_' instead of '.'. Unknown placeholders are left as they are.
+ * Rendered values are cached per user object, users are not modified anymore once they are evaluated.
+ */
+final class UserAttributeTemplate {
+
+    private static final int MAX_CACHED_USERS = 10_000;
+
+    private final String template;
+    //literals.length == placeholders.length + 1
+    private final String[] literals;
+    private final String[] placeholders;
+    private final Cache<User, String> rendered;
+
+    private UserAttributeTemplate(final String template, final String[] literals, final String[] placeholders) {
+        this.template = template;
+        this.literals = literals;
+        this.placeholders = placeholders;
+        this.rendered = placeholders.length == 0 ? null : CacheBuilder.newBuilder().weakKeys().maximumSize(MAX_CACHED_USERS).build();
+    }
+
+    static UserAttributeTemplate parse(final String template) {
+        final List<String> literals = new ArrayList<>();
+        final List<String> placeholders = new ArrayList<>();
+
+        int pos = 0;
+        int start;
+        int end;
+
+        while ((start = template.indexOf("${", pos)) != -1 && (end = template.indexOf('}', start + 2)) != -1) {
+            literals.add(template.substring(pos, start));
+            placeholders.add(template.substring(start + 2, end));
+            pos = end + 1;
+        }
+
+        literals.add(template.substring(pos));
+        return new UserAttributeTemplate(template, literals.toArray(new String[0]), placeholders.toArray(new String[0]));
+    }
+
+    String render(final User user) {
+        if (user == null || placeholders.length == 0) {
+            return template;
+        }
+
+        String retVal = rendered.getIfPresent(user);
+
+        if (retVal == null) {
+            retVal = renderUncached(user);
+            rendered.put(user, retVal);
+        }
+
+        return retVal;
+    }
+
+    private String renderUncached(final User user) {
+        final Map<String, String> attributes = user.getCustomAttributesMap();
+        final StringBuilder sb = new StringBuilder(template.length() + 16 * placeholders.length);
+        Map<String, String> underscoredAttributes = null;
+
+        for (int i = 0; i < placeholders.length; i++) {
+            sb.append(literals[i]);
+
+            final String placeholder = placeholders[i];
+            String value = null;
+
+            if ("user.name".equals(placeholder) || "user_name".equals(placeholder)) {
+                value = user.getName();
+            } else if ("user.roles".equals(placeholder) || "user_roles".equals(placeholder)) {
+                value = toQuotedCommaSeparatedString(user.getRoles());
+            } else {
+                value = attributes.get(placeholder);
+
+                if (value == null) {
+                    if (underscoredAttributes == null) {
+                        underscoredAttributes = underscored(attributes);
+                    }
+                    value = underscoredAttributes.get(placeholder);
+                }
+            }
+
+            if (value == null) {
+                sb.append("${").append(placeholder).append('}');
+            } else {
+                sb.append(value);
+            }
+        }
+
+        sb.append(literals[placeholders.length]);
+        return sb.toString();
+    }
+
+    private static Map<String, String> underscored(final Map<String, String> attributes) {
+        final Map<String, String> retVal = new HashMap<>(attributes.size());
+        for (Entry<String, String> entry : attributes.entrySet()) {
+            if (entry == null || entry.getKey() == null || entry.getValue() == null) {
+                continue;
+            }
+            retVal.putIfAbsent(entry.getKey().replace('.', '_'), entry.getValue());
+        }
+        return retVal;
+    }
+
+    private static String toQuotedCommaSeparatedString(final Set<String> roles) {
+        return Joiner.on(',').join(Iterables.transform(roles, s -> {
+            return new StringBuilder(s.length() + 2).append('"').append(s).append('"').toString();
+        }));
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
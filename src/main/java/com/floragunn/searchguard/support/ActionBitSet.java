@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.support;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Remembers the outcome of a predicate over action names as bits indexed by {@link ActionIds}.
+ * Each action is evaluated once, after that a check is an array lookup and a bit test.
+ * The predicate must be stable, i.e. always return the same result for the same action.
+ */
+public final class ActionBitSet {
+
+    private final Predicate<String> predicate;
+
+    //two bits per action id: evaluated and granted, replaced on write
+    private volatile long[] bits = new long[0];
+
+    public ActionBitSet(final Predicate<String> predicate) {
+        this.predicate = predicate;
+    }
+
+    public boolean test(final String action) {
+        if (action == null) {
+            return false;
+        }
+
+        final int id = ActionIds.of(action);
+
+        if (id < 0) {
+            return predicate.test(action);
+        }
+
+        final int word = id >>> 5;
+        final int shift = (id & 31) << 1;
+        final long[] bits = this.bits;
+
+        if (word < bits.length) {
+            final long b = bits[word] >>> shift;
+            if ((b & 1L) != 0) {
+                return (b & 2L) != 0;
+            }
+        }
+
+        final boolean granted = predicate.test(action);
+        remember(word, shift, granted);
+        return granted;
+    }
+
+    public boolean testAll(final String[] actions) {
+        for (int i = 0; i < actions.length; i++) {
+            if (!test(actions[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void remember(final int word, final int shift, final boolean granted) {
+        final long[] copy = Arrays.copyOf(bits, Math.max(bits.length, word + 1));
+        copy[word] |= (granted ? 3L : 1L) << shift;
+        bits = copy;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.support;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns dense, node local ids to action names.
+ * Plugins cannot enumerate the registered transport actions, so ids are handed out the first time an
+ * action name is seen. The set of action names is finite in practice, the number of ids is bounded anyway.
+ */
+public final class ActionIds {
+
+    public static final int MAX_IDS = 8192;
+
+    private static final ConcurrentMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private ActionIds() {
+    }
+
+    /**
+     * @return the id of the action or -1 if all ids are in use
+     */
+    public static int of(final String action) {
+        final Integer id = IDS.get(action);
+
+        if (id != null) {
+            return id.intValue();
+        }
+
+        if (NEXT_ID.get() >= MAX_IDS) {
+            return -1;
+        }
+
+        return IDS.computeIfAbsent(action, a -> NEXT_ID.getAndIncrement()).intValue();
+    }
+}
@@ -43,12 +43,28 @@ import com.google.common.io.BaseEncoding;
 public class Base64Helper {
 
     public static String serializeObject(final Serializable object) {
+        return serializeObject(object, false);
+    }
+
+    /**
+     * @param javaSerialization if true, always use Java serialization so that nodes
+     * without the binary header encoding can read the result
+     */
+    public static String serializeObject(final Serializable object, final boolean javaSerialization) {
 
         if (object == null) {
             throw new IllegalArgumentException("object must not be null");
         }
 
         try {
+            if (!javaSerialization) {
+                final byte[] encoded = HeaderCodec.encode(object);
+
+                if (encoded != null) {
+                    return BaseEncoding.base64().encode(encoded);
+                }
+            }
+
             final ByteArrayOutputStream bos = new ByteArrayOutputStream();
             final ObjectOutputStream out = new ObjectOutputStream(bos);
             out.writeObject(object);
@@ -69,6 +85,11 @@ public class Base64Helper {
 
         try {
             final byte[] userr = BaseEncoding.base64().decode(string);
+
+            if (HeaderCodec.isEncoded(userr)) {
+                return HeaderCodec.decode(userr);
+            }
+
             final ByteArrayInputStream bis = new ByteArrayInputStream(userr); //NOSONAR
             in = new SafeObjectInputStream(bis); //NOSONAR
             return (Serializable) in.readObject();
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.support;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * A single pattern in {@link WildcardMatcher} syntax (exact value, <code>*</code> and <code>?</code> wildcards
+ * or <code>/regex/</code>) which is parsed once and can then be matched many times.
+ * Instances are immutable and shared through a bounded cache, see {@link #compile(String, boolean)}.
+ */
+public final class CompiledPattern {
+
+    private static final int CACHE_SIZE = 10_000;
+
+    private static final LoadingCache<String, CompiledPattern> CACHE = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE)
+            .build(new CacheLoader<String, CompiledPattern>() {
+                @Override
+                public CompiledPattern load(String pattern) {
+                    return new CompiledPattern(pattern, false);
+                }
+            });
+
+    private static final LoadingCache<String, CompiledPattern> CACHE_IGNORE_CASE = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE)
+            .build(new CacheLoader<String, CompiledPattern>() {
+                @Override
+                public CompiledPattern load(String pattern) {
+                    return new CompiledPattern(pattern, true);
+                }
+            });
+
+    enum Kind {
+        ANY, EXACT, PREFIX, WILDCARD, REGEX, INVALID
+    }
+
+    private final String pattern;
+    private final boolean ignoreCase;
+    private final Kind kind;
+    private final String text;
+    private final String[] tokens;
+    private final Pattern regex;
+    private final PatternSyntaxException invalid;
+
+    private CompiledPattern(final String pattern, final boolean ignoreCase) {
+        this.pattern = Objects.requireNonNull(pattern);
+        this.ignoreCase = ignoreCase;
+
+        final String p = ignoreCase ? pattern.toLowerCase() : pattern;
+        String text = null;
+        String[] tokens = null;
+        Pattern regex = null;
+        PatternSyntaxException invalid = null;
+        Kind kind;
+
+        if (p.length() > 1 && p.startsWith("/") && p.endsWith("/")) {
+            try {
+                regex = Pattern.compile("^" + p.substring(1, p.length() - 1) + "$");
+                kind = Kind.REGEX;
+            } catch (PatternSyntaxException e) {
+                //fail on match like WildcardMatcher always did
+                invalid = e;
+                kind = Kind.INVALID;
+            }
+        } else if (p.length() == 1 && p.charAt(0) == '*') {
+            kind = Kind.ANY;
+        } else if (p.indexOf('?') == -1 && p.indexOf('*') == -1) {
+            text = p;
+            kind = Kind.EXACT;
+        } else if (p.indexOf('?') == -1 && p.indexOf('*') == p.length() - 1) {
+            text = p.substring(0, p.length() - 1);
+            kind = Kind.PREFIX;
+        } else {
+            tokens = WildcardMatcher.splitOnTokens(p);
+            kind = Kind.WILDCARD;
+        }
+
+        this.kind = kind;
+        this.text = text;
+        this.tokens = tokens;
+        this.regex = regex;
+        this.invalid = invalid;
+    }
+
+    public static CompiledPattern compile(final String pattern) {
+        return compile(pattern, false);
+    }
+
+    /**
+     * @param pattern the pattern, must not be null
+     * @param ignoreCase if true pattern and candidates are compared lower cased
+     * @return a shared, immutable compiled pattern
+     */
+    public static CompiledPattern compile(final String pattern, final boolean ignoreCase) {
+        Objects.requireNonNull(pattern);
+        return ignoreCase ? CACHE_IGNORE_CASE.getUnchecked(pattern) : CACHE.getUnchecked(pattern);
+    }
+
+    public boolean matches(final String candidate) {
+        if (candidate == null) {
+            return false;
+        }
+        return matchesNormalized(ignoreCase ? candidate.toLowerCase() : candidate);
+    }
+
+    public boolean matchesAny(final Iterable<String> candidates) {
+        for (String candidate : candidates) {
+            if (matches(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean matchesAny(final String[] candidates) {
+        for (int i = 0; i < candidates.length; i++) {
+            if (matches(candidates[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //candidate is already lower cased if ignoreCase is set
+    boolean matchesNormalized(final String candidate) {
+        switch (kind) {
+        case ANY:
+            return true;
+        case EXACT:
+            return text.equals(candidate);
+        case PREFIX:
+            return candidate.startsWith(text);
+        case REGEX:
+            return regex.matcher(candidate).matches();
+        case WILDCARD:
+            return WildcardMatcher.simpleWildcardMatch(tokens, candidate);
+        default:
+            throw invalid;
+        }
+    }
+
+    Kind kind() {
+        return kind;
+    }
+
+    String text() {
+        return text;
+    }
+
+    public boolean isWildcard() {
+        return kind != Kind.EXACT;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    public String pattern() {
+        return pattern;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -83,6 +83,11 @@ public class ConfigConstants {
     
     public static final String SG_XFF_DONE = SG_CONFIG_PREFIX+"xff_done";
 
+    /**
+     * Comma separated names of the headers which are sent in full and can be referred to by later requests of the same node
+     */
+    public static final String SG_HEADER_DEDUP_FULL_HEADER = SG_CONFIG_PREFIX+"header_dedup_full";
+
     public static final String SSO_LOGOUT_URL = SG_CONFIG_PREFIX+"sso_logout_url";
 
     
@@ -188,6 +193,21 @@ public class ConfigConstants {
     public static final String SEARCHGUARD_NODES_DN = "searchguard.nodes_dn";
     public static final String SEARCHGUARD_DISABLED = "searchguard.disabled";
     public static final String SEARCHGUARD_CACHE_TTL_MINUTES = "searchguard.cache.ttl_minutes";
+    public static final String SEARCHGUARD_CACHE_USER_CACHES = "searchguard.cache.user_caches";
+    public static final String SEARCHGUARD_CACHE_SHARED_IMPL = "searchguard.cache.shared.impl";
+    public static final String SEARCHGUARD_CACHE_SHARED_SECRET = "searchguard.cache.shared.secret";
+    public static final String SEARCHGUARD_CACHE_SHARED_ENABLED = "searchguard.cache.shared.enabled";
+    public static final String SEARCHGUARD_CACHE_SHARED_MAX_SIZE = "searchguard.cache.shared.max_size";
+    public static final String SEARCHGUARD_CACHE_SHARED_PROPAGATION_INTERVAL = "searchguard.cache.shared.propagation.interval";
+    public static final String SEARCHGUARD_AUTH_ASYNC = "searchguard.auth.async";
+    public static final String SEARCHGUARD_AUTH_FAILURE_PROPAGATION_ENABLED = "searchguard.auth_failure_listeners.propagation.enabled";
+    public static final String SEARCHGUARD_AUTH_FAILURE_PROPAGATION_INTERVAL = "searchguard.auth_failure_listeners.propagation.interval";
+    public static final String SEARCHGUARD_COMPAT_JAVA_HEADER_SERIALIZATION = "searchguard.compat.java_header_serialization";
+    public static final String SEARCHGUARD_TRANSPORT_HEADER_DEDUP_ENABLED = "searchguard.transport.header_dedup.enabled";
+    public static final String SEARCHGUARD_TRANSPORT_HEADER_DEDUP_WINDOW = "searchguard.transport.header_dedup.window";
+    public static final String SG_AUTH_THREAD_POOL = "searchguard_auth";
+    public static final String SG_BCRYPT_THREAD_POOL = "searchguard_bcrypt";
+    public static final String SG_CONFIG_RELOAD_THREAD_POOL = "searchguard_config_reload";
     public static final String SEARCHGUARD_ALLOW_UNSAFE_DEMOCERTIFICATES = "searchguard.allow_unsafe_democertificates";
     public static final String SEARCHGUARD_ALLOW_DEFAULT_INIT_SGINDEX = "searchguard.allow_default_init_sgindex";
     public static final String SEARCHGUARD_BACKGROUND_INIT_IF_SGINDEX_NOT_EXIST = "searchguard.background_init_if_sgindex_not_exist";
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.support;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchSecurityException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.rest.RestStatus;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Node wide cache of deserialized _sg_* header values, keyed by the serialized value itself.
+ * All shard requests of a search carry the same user and DLS/FLS headers, so they are
+ * deserialized only once.
+ * <p/>
+ * The cached objects are shared between requests and must not be modified. Maps are returned
+ * unmodifiable; users taken from transport headers are never modified by Search Guard.
+ * <p/>
+ * Also resolves the short references which are sent instead of header values that the receiving node
+ * already got from the same sender (see searchguard.transport.header_dedup.enabled).
+ */
+public final class HeaderCache {
+
+    private static final long MAX_WEIGHT = 16 * 1024 * 1024; //characters of all cached header values
+
+    private static final Cache<String, Serializable> CACHE = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_WEIGHT)
+            .weigher((String key, Serializable value) -> key.length())
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .recordStats()
+            .build();
+
+    /**
+     * How long full header values announced by other nodes are kept for resolving references to them.
+     * Senders must not refer to values sent longer ago.
+     */
+    public static final long REFERENCE_RETENTION_MINUTES = 10;
+
+    private static final String REFERENCE_PREFIX = "sha256:";
+    private static final String UNKNOWN_REFERENCE_HEADER = "sg_unknown_header_reference";
+    private static final int MIN_REFERENCED_LENGTH = 128;
+
+    //full header values by reference, as announced by other nodes
+    private static final Cache<String, String> REFERENCED_VALUES = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_WEIGHT)
+            .weigher((String key, String value) -> value.length())
+            .expireAfterWrite(REFERENCE_RETENTION_MINUTES, TimeUnit.MINUTES)
+            .build();
+
+    //references by header value instance, all requests of a fan-out share the same instance
+    private static final Cache<String, String> REFERENCES = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(1000)
+            .build();
+
+    private HeaderCache() {
+    }
+
+    /**
+     * Same as {@link Base64Helper#deserializeObject(String)} but answered from the cache if the value was seen before
+     */
+    public static Serializable deserializeObject(final String string) {
+
+        if (string == null) {
+            throw new IllegalArgumentException("string must not be null");
+        }
+
+        final String value = resolve(string);
+
+        if (value == null) {
+            final ElasticsearchSecurityException e = new ElasticsearchSecurityException("Unknown header reference " + string,
+                    RestStatus.INTERNAL_SERVER_ERROR);
+            e.addHeader(UNKNOWN_REFERENCE_HEADER, string);
+            throw e;
+        }
+
+        try {
+            return CACHE.get(value, () -> immutable(Base64Helper.deserializeObject(value)));
+        } catch (UncheckedExecutionException | ExecutionException e) {
+            if (e.getCause() instanceof ElasticsearchException) {
+                throw (ElasticsearchException) e.getCause();
+            }
+            throw new ElasticsearchException(e.getCause());
+        }
+    }
+
+    public static Cache<String, Serializable> getCache() {
+        return CACHE;
+    }
+
+    public static boolean isReference(final String value) {
+        return value.startsWith(REFERENCE_PREFIX);
+    }
+
+    /**
+     * @return a short reference to the header value, or null if the value is not worth being referenced
+     */
+    public static String reference(final String value) {
+        if (value.length() < MIN_REFERENCED_LENGTH || isReference(value)) {
+            return null;
+        }
+
+        String reference = REFERENCES.getIfPresent(value);
+
+        if (reference == null) {
+            reference = REFERENCE_PREFIX + digest(value);
+            REFERENCES.put(value, reference);
+        }
+
+        return reference;
+    }
+
+    /**
+     * Keeps a full header value sent by another node, so that later requests of that node can refer to it
+     */
+    public static void remember(final String value) {
+        final String reference = reference(value);
+
+        if (reference != null) {
+            REFERENCED_VALUES.put(reference, value);
+        }
+    }
+
+    /**
+     * @return the full header value if the value is a reference, otherwise the value itself;
+     * null if the reference is unknown
+     */
+    public static String resolve(final String value) {
+        return isReference(value) ? REFERENCED_VALUES.getIfPresent(value) : value;
+    }
+
+    /**
+     * @return true if the request failed because the receiving node did not know a header reference
+     */
+    public static boolean isUnknownReference(final Exception e) {
+        final Throwable cause = ExceptionsHelper.unwrapCause(e);
+        return cause instanceof ElasticsearchException && ((ElasticsearchException) cause).getHeader(UNKNOWN_REFERENCE_HEADER) != null;
+    }
+
+    private static String digest(final String value) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new ElasticsearchException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Serializable immutable(final Serializable object) {
+        if (!(object instanceof Map)) {
+            return object;
+        }
+
+        final Map<Object, Object> map = new HashMap<>((Map<Object, Object>) object);
+
+        for (final Map.Entry<Object, Object> entry : map.entrySet()) {
+            if (entry.getValue() instanceof Set) {
+                entry.setValue(Collections.unmodifiableSet((Set<Object>) entry.getValue()));
+            }
+        }
+
+        return (Serializable) Collections.unmodifiableMap(map);
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.support;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import com.floragunn.searchguard.user.User;
+
+/**
+ * Compact binary encoding of the objects which are transported in the _sg_* headers: users,
+ * remote addresses and the DLS/FLS/masked fields maps. Other objects (like subclasses of User)
+ * are not supported and need to be Java serialized.
+ * <p/>
+ * The encoding starts with a marker byte which never starts a Java serialization stream (0xACED)
+ * and a format version, so that both encodings can be read from the same header.
+ */
+public final class HeaderCodec {
+
+    private static final byte MARKER = (byte) 0x5C;
+    private static final byte VERSION = 1;
+
+    private static final byte TYPE_USER = 1;
+    private static final byte TYPE_INET_SOCKET_ADDRESS = 2;
+    private static final byte TYPE_STRING_SET_MAP = 3;
+    private static final byte TYPE_STRING = 4;
+
+    private HeaderCodec() {
+    }
+
+    public static boolean isEncoded(final byte[] bytes) {
+        return bytes.length >= 2 && bytes[0] == MARKER;
+    }
+
+    /**
+     * @return the encoded object or null if the object is not supported by this codec
+     */
+    public static byte[] encode(final Serializable object) throws IOException {
+        final byte type = typeOf(object);
+
+        if (type == 0) {
+            return null;
+        }
+
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.writeByte(MARKER);
+            out.writeByte(VERSION);
+            out.writeByte(type);
+
+            switch (type) {
+            case TYPE_USER:
+                writeUser(out, (User) object);
+                break;
+            case TYPE_INET_SOCKET_ADDRESS:
+                writeInetSocketAddress(out, (InetSocketAddress) object);
+                break;
+            case TYPE_STRING_SET_MAP:
+                writeStringSetMap(out, (Map<?, ?>) object);
+                break;
+            default:
+                out.writeString((String) object);
+            }
+
+            return BytesReference.toBytes(out.bytes());
+        }
+    }
+
+    public static Serializable decode(final byte[] bytes) throws IOException {
+        try (StreamInput in = StreamInput.wrap(bytes)) {
+            if (in.readByte() != MARKER) {
+                throw new IOException("Not a binary encoded header");
+            }
+
+            final byte version = in.readByte();
+
+            if (version != VERSION) {
+                throw new IOException("Unsupported header encoding version " + version);
+            }
+
+            final byte type = in.readByte();
+
+            switch (type) {
+            case TYPE_USER:
+                return readUser(in);
+            case TYPE_INET_SOCKET_ADDRESS:
+                return readInetSocketAddress(in);
+            case TYPE_STRING_SET_MAP:
+                return readStringSetMap(in);
+            case TYPE_STRING:
+                return in.readString();
+            default:
+                throw new IOException("Unknown header type " + type);
+            }
+        }
+    }
+
+    /**
+     * Writes the address bytes together with the host name (if the address has one which is not just the
+     * literal address) and the IPv6 scope id, so that the decoded address equals the original one.
+     */
+    private static void writeInetSocketAddress(final StreamOutput out, final InetSocketAddress address) throws IOException {
+        final InetAddress inetAddress = address.getAddress();
+        final String hostString = address.getHostString();
+        out.writeByteArray(inetAddress.getAddress());
+        out.writeOptionalString(hostString.equals(inetAddress.getHostAddress()) ? null : hostString);
+        out.writeVInt(inetAddress instanceof Inet6Address ? ((Inet6Address) inetAddress).getScopeId() : 0);
+        out.writeVInt(address.getPort());
+    }
+
+    private static InetSocketAddress readInetSocketAddress(final StreamInput in) throws IOException {
+        final byte[] bytes = in.readByteArray();
+        final String host = in.readOptionalString();
+        final int scopeId = in.readVInt();
+        final InetAddress inetAddress = scopeId != 0 ? Inet6Address.getByAddress(host, bytes, scopeId) : InetAddress.getByAddress(host, bytes);
+        return new InetSocketAddress(inetAddress, in.readVInt());
+    }
+
+    private static byte typeOf(final Serializable object) {
+        if (object.getClass() == User.class) {
+            return TYPE_USER;
+        }
+
+        if (object instanceof InetSocketAddress && ((InetSocketAddress) object).getAddress() != null) {
+            return TYPE_INET_SOCKET_ADDRESS;
+        }
+
+        if (object instanceof String) {
+            return TYPE_STRING;
+        }
+
+        if (object instanceof Map && isStringSetMap((Map<?, ?>) object)) {
+            return TYPE_STRING_SET_MAP;
+        }
+
+        return 0;
+    }
+
+    private static boolean isStringSetMap(final Map<?, ?> map) {
+        for (final Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof Set)) {
+                return false;
+            }
+
+            for (final Object value : (Set<?>) entry.getValue()) {
+                if (!(value instanceof String)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void writeUser(final StreamOutput out, final User user) throws IOException {
+        out.writeString(user.getName());
+        out.writeStringArray(user.getRoles().toArray(new String[0]));
+        out.writeOptionalString(user.getRequestedTenant());
+        out.writeMap(user.getCustomAttributesMap(), StreamOutput::writeString, StreamOutput::writeString);
+        out.writeBoolean(user.isInjected());
+    }
+
+    private static User readUser(final StreamInput in) throws IOException {
+        final User user = new User(in.readString());
+        user.addRoles(Arrays.asList(in.readStringArray()));
+        user.setRequestedTenant(in.readOptionalString());
+        user.getCustomAttributesMap().putAll(in.readMap(StreamInput::readString, StreamInput::readString));
+        user.setInjected(in.readBoolean());
+        return user;
+    }
+
+    private static void writeStringSetMap(final StreamOutput out, final Map<?, ?> map) throws IOException {
+        out.writeVInt(map.size());
+        for (final Map.Entry<?, ?> entry : map.entrySet()) {
+            out.writeString((String) entry.getKey());
+            final Set<?> values = (Set<?>) entry.getValue();
+            out.writeVInt(values.size());
+            for (final Object value : values) {
+                out.writeString((String) value);
+            }
+        }
+    }
+
+    private static HashMap<String, Set<String>> readStringSetMap(final StreamInput in) throws IOException {
+        final int size = in.readVInt();
+        final HashMap<String, Set<String>> map = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            final String key = in.readString();
+            final int valueCount = in.readVInt();
+            final Set<String> values = new HashSet<>(valueCount);
+            for (int k = 0; k < valueCount; k++) {
+                values.add(in.readString());
+            }
+            map.put(key, values);
+        }
+        return map;
+    }
+}
@@ -62,7 +62,7 @@ public class HeaderHelper {
         final String objectAsBase64 = getSafeFromHeader(context, headerName);
 
         if (!Strings.isNullOrEmpty(objectAsBase64)) {
-            return Base64Helper.deserializeObject(objectAsBase64);
+            return HeaderCache.deserializeObject(objectAsBase64);
         }
 
         return null;
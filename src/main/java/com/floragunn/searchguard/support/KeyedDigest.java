@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.support;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.elasticsearch.ElasticsearchSecurityException;
+
+/**
+ * HMAC with a random (or given) key. Used to key caches by secrets (passwords, authorization headers)
+ * without keeping the secrets themselves.
+ */
+public final class KeyedDigest {
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> mac;
+
+    public KeyedDigest() {
+        this(randomKey());
+    }
+
+    /**
+     * Digest with a given key, for digests which need to be reproducible by other nodes
+     */
+    public KeyedDigest(final byte[] key) {
+        this.key = new SecretKeySpec(key, MAC_ALGORITHM);
+        this.mac = ThreadLocal.withInitial(this::newMac);
+    }
+
+    private static byte[] randomKey() {
+        final byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        return keyBytes;
+    }
+
+    /**
+     * Digest of all parts, each part is length prefixed so that different splits never collide.
+     */
+    public ByteBuffer digest(final byte[]... parts) {
+        final Mac mac = this.mac.get();
+        for (final byte[] part : parts) {
+            mac.update(ByteBuffer.allocate(4).putInt(part.length).array());
+            mac.update(part);
+        }
+        return ByteBuffer.wrap(mac.doFinal());
+    }
+
+    private Mac newMac() {
+        try {
+            final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new ElasticsearchSecurityException("Unable to initialize " + MAC_ALGORITHM, e);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.support;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A collection of patterns in {@link WildcardMatcher} syntax compiled once.
+ * Patterns without wildcards are answered by a hash lookup, trailing <code>*</code> patterns by a prefix check
+ * and only the remaining patterns are matched one by one.
+ */
+public final class PatternSet {
+
+    public static final PatternSet EMPTY = new PatternSet(Collections.emptyList(), false);
+
+    private final Set<String> patterns;
+    private final boolean ignoreCase;
+    private final boolean any;
+    private final Map<String, List<String>> exact;
+    private final CompiledPattern[] prefixes;
+    private final CompiledPattern[] others;
+
+    private PatternSet(final Collection<String> patterns, final boolean ignoreCase) {
+        this.patterns = Collections.unmodifiableSet(new LinkedHashSet<>(patterns));
+        this.ignoreCase = ignoreCase;
+
+        boolean any = false;
+        final Map<String, List<String>> exact = new HashMap<>();
+        final List<CompiledPattern> prefixes = new ArrayList<>();
+        final List<CompiledPattern> others = new ArrayList<>();
+
+        for (String pattern : this.patterns) {
+            if (pattern == null) {
+                continue;
+            }
+
+            final CompiledPattern compiled = CompiledPattern.compile(pattern, ignoreCase);
+
+            switch (compiled.kind()) {
+            case ANY:
+                any = true;
+                others.add(compiled);
+                break;
+            case EXACT:
+                exact.computeIfAbsent(compiled.text(), k -> new ArrayList<>(1)).add(pattern);
+                break;
+            case PREFIX:
+                prefixes.add(compiled);
+                break;
+            default:
+                others.add(compiled);
+                break;
+            }
+        }
+
+        this.any = any;
+        this.exact = exact;
+        this.prefixes = prefixes.toArray(new CompiledPattern[0]);
+        this.others = others.toArray(new CompiledPattern[0]);
+    }
+
+    public static PatternSet compile(final Collection<String> patterns) {
+        return compile(patterns, false);
+    }
+
+    public static PatternSet compile(final Collection<String> patterns, final boolean ignoreCase) {
+        if (patterns == null || patterns.isEmpty()) {
+            return ignoreCase ? new PatternSet(Collections.emptyList(), true) : EMPTY;
+        }
+        return new PatternSet(patterns, ignoreCase);
+    }
+
+    /**
+     * returns true if the candidate matches at least one pattern
+     */
+    public boolean matches(final String candidate) {
+        if (candidate == null) {
+            return false;
+        }
+
+        if (any) {
+            return true;
+        }
+
+        final String c = ignoreCase ? candidate.toLowerCase() : candidate;
+
+        if (exact.containsKey(c)) {
+            return true;
+        }
+
+        for (int i = 0; i < prefixes.length; i++) {
+            if (prefixes[i].matchesNormalized(c)) {
+                return true;
+            }
+        }
+
+        for (int i = 0; i < others.length; i++) {
+            if (others[i].matchesNormalized(c)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * returns true if at least one candidate matches at least one pattern
+     */
+    public boolean matchesAny(final Collection<String> candidates) {
+        for (String candidate : candidates) {
+            if (matches(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean matchesAny(final String[] candidates) {
+        for (int i = 0; i < candidates.length; i++) {
+            if (matches(candidates[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * returns true if every candidate matches at least one pattern
+     */
+    public boolean matchesAll(final String[] candidates) {
+        for (int i = 0; i < candidates.length; i++) {
+            if (!matches(candidates[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the (uncompiled) patterns matching the candidate, in no particular order
+     */
+    public List<String> getMatchingPatterns(final String candidate) {
+        if (candidate == null || isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final String c = ignoreCase ? candidate.toLowerCase() : candidate;
+        final List<String> retVal = new ArrayList<>();
+
+        final List<String> exactMatches = exact.get(c);
+        if (exactMatches != null) {
+            retVal.addAll(exactMatches);
+        }
+
+        for (int i = 0; i < prefixes.length; i++) {
+            if (prefixes[i].matchesNormalized(c)) {
+                retVal.add(prefixes[i].pattern());
+            }
+        }
+
+        for (int i = 0; i < others.length; i++) {
+            if (others[i].matchesNormalized(c)) {
+                retVal.add(others[i].pattern());
+            }
+        }
+
+        return retVal;
+    }
+
+    public List<String> getMatchingPatterns(final Collection<String> candidates) {
+        final List<String> retVal = new ArrayList<>();
+        for (String candidate : candidates) {
+            retVal.addAll(getMatchingPatterns(candidate));
+        }
+        return retVal;
+    }
+
+    public Set<String> getPatterns() {
+        return patterns;
+    }
+
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    public int size() {
+        return patterns.size();
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * patterns.hashCode() + (ignoreCase ? 1231 : 1237);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        PatternSet other = (PatternSet) obj;
+        return ignoreCase == other.ignoreCase && patterns.equals(other.patterns);
+    }
+
+    @Override
+    public String toString() {
+        return patterns.toString();
+    }
+}
@@ -42,6 +42,7 @@ import org.elasticsearch.threadpool.ThreadPool;
 
 import com.floragunn.searchguard.auditlog.AuditLog;
 import com.floragunn.searchguard.auditlog.NullAuditLog;
+import com.floragunn.searchguard.auth.SharedAuthenticationCache;
 import com.floragunn.searchguard.compliance.ComplianceConfig;
 import com.floragunn.searchguard.compliance.ComplianceIndexingOperationListener;
 import com.floragunn.searchguard.configuration.AdminDNs;
@@ -273,6 +274,22 @@ public class ReflectionHelper {
         }
     }
 
+    public static SharedAuthenticationCache instantiateSharedAuthenticationCache(final String clazz, final Settings settings) {
+
+        try {
+            final Class<?> clazz0 = Class.forName(clazz);
+            final SharedAuthenticationCache ret = (SharedAuthenticationCache) clazz0.getConstructor(Settings.class).newInstance(settings);
+            addLoadedModule(clazz0);
+            return ret;
+        } catch (final Throwable e) {
+            log.warn("Unable to load shared authentication cache '{}' due to {}", clazz, e.toString());
+            if(log.isDebugEnabled()) {
+                log.debug("Stacktrace: ",e);
+            }
+            return null;
+        }
+    }
+
     public static PrincipalExtractor instantiatePrincipalExtractor(final String clazz) {
 
         try {
@@ -84,7 +84,7 @@ public final class SgUtils {
         //regex
         for(final String key: map.keySet()) {
             if(WildcardMatcher.containsWildcard(key)
-                    && WildcardMatcher.match(key, index)) {
+                    && CompiledPattern.compile(key).matches(index)) {
                 return key;
             }
         }
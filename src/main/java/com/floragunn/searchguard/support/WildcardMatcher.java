@@ -24,7 +24,6 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.Stack;
-import java.util.regex.Pattern;
 
 public class WildcardMatcher {
 
@@ -351,20 +350,13 @@ public class WildcardMatcher {
             return false;
         }
 
-        if(ignoreCase) {
-            pattern = pattern.toLowerCase();
-            candidate = candidate.toLowerCase();
-        }
-
-        if (pattern.startsWith("/") && pattern.endsWith("/")) {
-            // regex
-            return Pattern.matches("^"+pattern.substring(1, pattern.length() - 1)+"$", candidate);
-        } else if (pattern.length() == 1 && pattern.charAt(0) == '*') {
+        if (pattern.length() == 1 && pattern.charAt(0) == '*') {
             return true;
-        } else if (pattern.indexOf('?') == NOT_FOUND && pattern.indexOf('*') == NOT_FOUND) {
-            return pattern.equals(candidate);
+        } else if (!containsWildcard(pattern)) {
+            return ignoreCase ? pattern.toLowerCase().equals(candidate.toLowerCase()) : pattern.equals(candidate);
         } else {
-            return simpleWildcardMatch(pattern, candidate);
+            //regex and wildcard patterns are parsed only once
+            return CompiledPattern.compile(pattern, ignoreCase).matches(candidate);
         }
     }
 
@@ -453,20 +445,16 @@ public class WildcardMatcher {
      * single or multiple (zero or more) wildcard characters.
      * N.B. the sequence "*?" does not work properly at present in match strings.
      *
+     * @param wcs  the wildcard string to match against, already split by {@link #splitOnTokens(String)}
      * @param candidate  the filename to match on
-     * @param pattern  the wildcard string to match against
      * @return true if the filename matches the wilcard string
      * @since 1.3
      */
-    private static boolean simpleWildcardMatch(final String pattern, final String candidate) {
-        if (candidate == null && pattern == null) {
-            return true;
-        }
-        if (candidate == null || pattern == null) {
+    static boolean simpleWildcardMatch(final String[] wcs, final String candidate) {
+        if (candidate == null) {
             return false;
         }
 
-        final String[] wcs = splitOnTokens(pattern);
         boolean anyChars = false;
         int textIdx = 0;
         int wcsIdx = 0;
@@ -546,7 +534,7 @@ public class WildcardMatcher {
      * @param text  the text to split
      * @return the array of tokens, never null
      */
-    private static String[] splitOnTokens(final String text) {
+    static String[] splitOnTokens(final String text) {
         // used by wildcardMatch
         // package level so a unit test may run on this
 
@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -32,6 +33,8 @@ import org.elasticsearch.transport.TransportRequest;
 
 import com.floragunn.searchguard.support.ConfigConstants;
 import com.floragunn.searchguard.support.WildcardMatcher;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 public final class DefaultInterClusterRequestEvaluator implements InterClusterRequestEvaluator {
 
@@ -39,6 +42,12 @@ public final class DefaultInterClusterRequestEvaluator implements InterClusterRe
     private final String certOid;
     private final List<String> nodesDn;
 
+    //decisions by peer certificate instance; the ssl session keeps the same instance for the lifetime of a connection
+    private final Cache<X509Certificate, Decision> decisions = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(1000)
+            .build();
+
     public DefaultInterClusterRequestEvaluator(final Settings settings) {
         this.certOid = settings.get(ConfigConstants.SEARCHGUARD_CERT_OID, "1.2.3.4.5.5");
         this.nodesDn = settings.getAsList(ConfigConstants.SEARCHGUARD_NODES_DN, Collections.emptyList());
@@ -47,6 +56,24 @@ public final class DefaultInterClusterRequestEvaluator implements InterClusterRe
     @Override
     public boolean isInterClusterRequest(TransportRequest request, X509Certificate[] localCerts, X509Certificate[] peerCerts,
             final String principal) {
+
+        if (peerCerts == null || peerCerts.length == 0) {
+            return evaluate(peerCerts, principal);
+        }
+
+        final Decision decision = decisions.getIfPresent(peerCerts[0]);
+
+        //the principal is derived from the certificate, compare it anyway as principal extractors are pluggable
+        if (decision != null && decision.isFor(principal)) {
+            return decision.interCluster;
+        }
+
+        final boolean interCluster = evaluate(peerCerts, principal);
+        decisions.put(peerCerts[0], new Decision(principal, interCluster));
+        return interCluster;
+    }
+
+    private boolean evaluate(final X509Certificate[] peerCerts, final String principal) {
         
         String[] principals = new String[2];
         
@@ -125,4 +152,17 @@ public final class DefaultInterClusterRequestEvaluator implements InterClusterRe
         return false;
     }
 
+    private static final class Decision {
+        private final String principal;
+        private final boolean interCluster;
+
+        private Decision(final String principal, final boolean interCluster) {
+            this.principal = principal;
+            this.interCluster = interCluster;
+        }
+
+        private boolean isFor(final String principal) {
+            return Objects.equals(this.principal, principal);
+        }
+    }
 }
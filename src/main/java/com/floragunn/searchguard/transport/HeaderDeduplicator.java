@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.transport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+
+import com.floragunn.searchguard.support.ConfigConstants;
+import com.floragunn.searchguard.support.HeaderCache;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Replaces large _sg_* header values by short references if the same value was already sent
+ * in full to the target node within the configured window. The receiving node resolves the references
+ * via {@link HeaderCache}; if it does not know a reference anymore the request is sent again in full.
+ */
+final class HeaderDeduplicator {
+
+    private static final Set<String> HEADERS = ImmutableSet.of(ConfigConstants.SG_USER_HEADER, ConfigConstants.SG_DLS_QUERY_HEADER,
+            ConfigConstants.SG_FLS_FIELDS_HEADER, ConfigConstants.SG_MASKED_FIELD_HEADER);
+
+    //keyed by ephemeral node id and reference; a restarted node gets a new ephemeral id and so receives full values again
+    private final Cache<String, Boolean> sent;
+
+    HeaderDeduplicator(final TimeValue window) {
+        //stay well below the time the receiver keeps the values
+        final long windowMs = Math.min(window.millis(), TimeUnit.MINUTES.toMillis(HeaderCache.REFERENCE_RETENTION_MINUTES) / 2);
+        this.sent = CacheBuilder.newBuilder()
+                .expireAfterWrite(windowMs, TimeUnit.MILLISECONDS)
+                .maximumSize(10000)
+                .build();
+    }
+
+    /**
+     * Replaces references by the full values (if known), so that headers received from another node can be forwarded
+     */
+    static void expand(final Map<String, String> headers) {
+        for (final String header : HEADERS) {
+            final String value = headers.get(header);
+
+            if (value != null && HeaderCache.isReference(value)) {
+                final String resolved = HeaderCache.resolve(value);
+
+                if (resolved != null) {
+                    headers.put(header, resolved);
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles the headers of a request received from another node. Values the sender announced as sent in full
+     * are kept, so that later requests of that node can refer to them.
+     * <p/>
+     * All references are resolved before the request is dispatched. An unknown reference then fails the transport
+     * request itself and the sender resends it in full; resolved later on shard level (DLS/FLS) the failure would be
+     * wrapped into a search failure and never retried.
+     */
+    static void received(final ThreadContext threadContext) {
+        final String sentInFull = threadContext.getHeader(ConfigConstants.SG_HEADER_DEDUP_FULL_HEADER);
+
+        if (sentInFull != null && !sentInFull.isEmpty()) {
+            for (final String header : sentInFull.split(",")) {
+                final String value = HEADERS.contains(header) ? threadContext.getHeader(header) : null;
+
+                if (value != null) {
+                    HeaderCache.remember(value);
+                }
+            }
+        }
+
+        resolveReferences(threadContext);
+    }
+
+    static void resolveReferences(final ThreadContext threadContext) {
+        for (final String header : HEADERS) {
+            final String value = threadContext.getHeader(header);
+
+            if (value != null && HeaderCache.isReference(value)) {
+                HeaderCache.deserializeObject(value);
+            }
+        }
+    }
+
+    /**
+     * @return the full headers, announcing all values which could be referenced as sent in full. Used to resend
+     * a request after an unknown reference, so the resent request never carries references itself.
+     */
+    static Map<String, String> full(final Map<String, String> headers) {
+        final List<String> sentInFull = new ArrayList<>(HEADERS.size());
+
+        for (final String header : HEADERS) {
+            final String value = headers.get(header);
+
+            if (value != null && HeaderCache.reference(value) != null) {
+                sentInFull.add(header);
+            }
+        }
+
+        if (sentInFull.isEmpty()) {
+            return headers;
+        }
+
+        final Map<String, String> result = new HashMap<>(headers);
+        result.put(ConfigConstants.SG_HEADER_DEDUP_FULL_HEADER, String.join(",", sentInFull));
+        return result;
+    }
+
+    /**
+     * @return the headers to send to the node, or null if they are to be sent unchanged
+     */
+    Map<String, String> deduplicate(final DiscoveryNode node, final Map<String, String> headers) {
+        Map<String, String> result = null;
+        List<String> sentInFull = null;
+
+        for (final String header : HEADERS) {
+            final String value = headers.get(header);
+
+            if (value == null) {
+                continue;
+            }
+
+            final String reference = HeaderCache.reference(value);
+
+            if (reference == null) {
+                continue;
+            }
+
+            if (result == null) {
+                result = new HashMap<>(headers);
+            }
+
+            final String key = node.getEphemeralId() + "/" + reference;
+
+            if (sent.getIfPresent(key) != null) {
+                result.put(header, reference);
+            } else {
+                sent.put(key, Boolean.TRUE);
+
+                if (sentInFull == null) {
+                    sentInFull = new ArrayList<>(HEADERS.size());
+                }
+
+                sentInFull.add(header);
+            }
+        }
+
+        if (sentInFull != null) {
+            result.put(ConfigConstants.SG_HEADER_DEDUP_FULL_HEADER, String.join(",", sentInFull));
+        }
+
+        return result;
+    }
+
+    /**
+     * Full headers only for the next requests to the node, used after the node reported an unknown reference
+     */
+    void forget(final DiscoveryNode node) {
+        final String prefix = node.getEphemeralId() + "/";
+        sent.asMap().keySet().removeIf(k -> k.startsWith(prefix));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.transport;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.transport.Transport.Connection;
+import org.elasticsearch.transport.TransportException;
+import org.elasticsearch.transport.TransportInterceptor.AsyncSender;
+import org.elasticsearch.transport.TransportRequest;
+import org.elasticsearch.transport.TransportRequestOptions;
+import org.elasticsearch.transport.TransportResponse;
+import org.elasticsearch.transport.TransportResponseHandler;
+
+import com.floragunn.searchguard.support.HeaderCache;
+
+/**
+ * Sends a request with deduplicated headers once more with the full header values if the target node did not know
+ * a reference. The resent request carries no references at all, so it cannot fail for the same reason again, even if
+ * other requests to the same node refer to the values and overtake it on another connection.
+ */
+final class RetryOnUnknownReferenceHandler<T extends TransportResponse> implements TransportResponseHandler<T> {
+
+    private static final Logger log = LogManager.getLogger(RetryOnUnknownReferenceHandler.class);
+
+    private final TransportResponseHandler<T> innerHandler;
+    private final Map<String, String> fullHeaders;
+    private final HeaderDeduplicator headerDeduplicator;
+    private final ThreadContext threadContext;
+    private final AsyncSender sender;
+    private final Connection connection;
+    private final String action;
+    private final TransportRequest request;
+    private final TransportRequestOptions options;
+
+    RetryOnUnknownReferenceHandler(TransportResponseHandler<T> innerHandler, Map<String, String> fullHeaders,
+            HeaderDeduplicator headerDeduplicator, ThreadContext threadContext, AsyncSender sender, Connection connection, String action,
+            TransportRequest request, TransportRequestOptions options) {
+        this.innerHandler = innerHandler;
+        this.fullHeaders = fullHeaders;
+        this.headerDeduplicator = headerDeduplicator;
+        this.threadContext = threadContext;
+        this.sender = sender;
+        this.connection = connection;
+        this.action = action;
+        this.request = request;
+        this.options = options;
+    }
+
+    @Override
+    public T read(StreamInput in) throws IOException {
+        return innerHandler.read(in);
+    }
+
+    @Override
+    public void handleResponse(T response) {
+        innerHandler.handleResponse(response);
+    }
+
+    @Override
+    public void handleException(TransportException e) {
+        if (!HeaderCache.isUnknownReference(e)) {
+            innerHandler.handleException(e);
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("{} did not know a header reference, send {} again with full headers", connection.getNode(), action);
+        }
+
+        //the node lost the values (e.g. restarted), so further requests send them in full again
+        headerDeduplicator.forget(connection.getNode());
+
+        try (ThreadContext.StoredContext ctx = threadContext.stashContext()) {
+            threadContext.putHeader(HeaderDeduplicator.full(fullHeaders));
+            sender.sendRequest(connection, action, request, options, innerHandler);
+        }
+    }
+
+    @Override
+    public String executor() {
+        return innerHandler.executor();
+    }
+}
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -30,10 +31,12 @@ import org.elasticsearch.action.admin.cluster.shards.ClusterSearchShardsAction;
 import org.elasticsearch.action.admin.cluster.shards.ClusterSearchShardsResponse;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.tasks.Task;
 import org.elasticsearch.threadpool.ThreadPool;
@@ -56,10 +59,24 @@ import com.floragunn.searchguard.ssl.transport.PrincipalExtractor;
 import com.floragunn.searchguard.support.Base64Helper;
 import com.floragunn.searchguard.support.ConfigConstants;
 import com.floragunn.searchguard.user.User;
-import com.google.common.collect.Maps;
+import com.google.common.collect.ImmutableSet;
 
 public class SearchGuardInterceptor {
 
+    private static final String TRACE_HEADER_PREFIX = "_sg_trace";
+    private static final String SOURCE_FIELD_CONTEXT_HEADER = "_sg_source_field_context";
+
+    //headers passed on to other nodes as they are
+    private static final Set<String> PROPAGATED_HEADERS = ImmutableSet.of(
+            ConfigConstants.SG_CONF_REQUEST_HEADER,
+            ConfigConstants.SG_ORIGIN_HEADER,
+            ConfigConstants.SG_REMOTE_ADDRESS_HEADER,
+            ConfigConstants.SG_USER_HEADER,
+            ConfigConstants.SG_DLS_QUERY_HEADER,
+            ConfigConstants.SG_FLS_FIELDS_HEADER,
+            ConfigConstants.SG_MASKED_FIELD_HEADER,
+            Task.X_OPAQUE_ID);
+
     protected final Logger actionTrace = LogManager.getLogger("sg_action_trace");
     protected final Logger log = LogManager.getLogger(getClass());
     private BackendRegistry backendRegistry;
@@ -71,6 +88,10 @@ public class SearchGuardInterceptor {
     private final Settings settings;
     private final SslExceptionHandler sslExceptionHandler;
     private final ClusterInfoHolder clusterInfoHolder;
+    private final boolean javaHeaderSerialization;
+    private final HeaderDeduplicator headerDeduplicator;
+    private final String clusterName;
+    private final boolean tribeNodeClient;
 
     public SearchGuardInterceptor(final Settings settings,
             final ThreadPool threadPool, final BackendRegistry backendRegistry,
@@ -88,12 +109,18 @@ public class SearchGuardInterceptor {
         this.settings = settings;
         this.sslExceptionHandler = sslExceptionHandler;
         this.clusterInfoHolder = clusterInfoHolder;
+        this.javaHeaderSerialization = settings.getAsBoolean(ConfigConstants.SEARCHGUARD_COMPAT_JAVA_HEADER_SERIALIZATION, false);
+        this.clusterName = cs.getClusterName().value();
+        this.tribeNodeClient = settings.get("tribe.name", null) == null && settings.getByPrefix("tribe").size() > 0;
+        this.headerDeduplicator = settings.getAsBoolean(ConfigConstants.SEARCHGUARD_TRANSPORT_HEADER_DEDUP_ENABLED, false)
+                ? new HeaderDeduplicator(settings.getAsTime(ConfigConstants.SEARCHGUARD_TRANSPORT_HEADER_DEDUP_WINDOW, TimeValue.timeValueMinutes(1)))
+                : null;
     }
 
     public <T extends TransportRequest> SearchGuardRequestHandler<T> getHandler(String action,
             TransportRequestHandler<T> actualHandler) {
         return new SearchGuardRequestHandler<T>(action, actualHandler, threadPool, backendRegistry, auditLog,
-                principalExtractor, requestEvalProvider, cs, sslExceptionHandler);
+                principalExtractor, requestEvalProvider, cs, sslExceptionHandler, settings.getAsBoolean(ConfigConstants.SEARCHGUARD_AUTH_ASYNC, true));
     }
 
     public <T extends TransportResponse> void sendRequestDecorate(AsyncSender sender, Connection connection, String action,
@@ -111,31 +138,22 @@ public class SearchGuardInterceptor {
         try (ThreadContext.StoredContext stashedContext = getThreadContext().stashContext()) {
             
             final TransportResponseHandler<T> restoringHandler = new RestoringTransportResponseHandler<T>(handler, stashedContext);
-            getThreadContext().putHeader("_sg_remotecn", cs.getClusterName().value());
+            getThreadContext().putHeader("_sg_remotecn", clusterName);
 
-            if(this.settings.get("tribe.name", null) == null
-                    && settings.getByPrefix("tribe").size() > 0) {
+            if(tribeNodeClient) {
                 getThreadContext().putHeader("_sg_header_tn", "true");
             }
                         
-            final Map<String, String> headerMap = new HashMap<>(Maps.filterKeys(origHeaders0, k->k!=null && (
-                    k.equals(ConfigConstants.SG_CONF_REQUEST_HEADER)
-                    || k.equals(ConfigConstants.SG_ORIGIN_HEADER)
-                    || k.equals(ConfigConstants.SG_REMOTE_ADDRESS_HEADER)
-                    || k.equals(ConfigConstants.SG_USER_HEADER)
-                    || k.equals(ConfigConstants.SG_DLS_QUERY_HEADER)
-                    || k.equals(ConfigConstants.SG_FLS_FIELDS_HEADER)
-                    || k.equals(ConfigConstants.SG_MASKED_FIELD_HEADER)
-                    || (k.equals("_sg_source_field_context") && ! (request instanceof SearchRequest) && !(request instanceof GetRequest))
-                    || k.startsWith("_sg_trace")
-                    || k.startsWith(ConfigConstants.SG_INITIAL_ACTION_CLASS_HEADER)
-                    || k.equals(Task.X_OPAQUE_ID)
-                    )));
-            
-            if (SearchGuardPlugin.GuiceHolder.getRemoteClusterService().isCrossClusterSearchEnabled() 
-                    && clusterInfoHolder.isInitialized()
-                    && action.startsWith(ClusterSearchShardsAction.NAME) 
-                    && !clusterInfoHolder.hasNode(connection.getNode())) {
+            final Map<String, String> headerMap = propagatedHeaders(origHeaders0,
+                    !(request instanceof SearchRequest) && !(request instanceof GetRequest));
+
+            final DiscoveryNode node = connection.getNode();
+            final boolean crossClusterRequest = clusterInfoHolder.isInitialized()
+                    && Boolean.FALSE.equals(clusterInfoHolder.hasNode(node))
+                    && SearchGuardPlugin.GuiceHolder.getRemoteClusterService().isCrossClusterSearchEnabled();
+
+            if (crossClusterRequest
+                    && action.startsWith(ClusterSearchShardsAction.NAME)) {
                 if (log.isDebugEnabled()) {
                     log.debug("remove dls/fls/mf because we sent a ccs request to a remote cluster");
                 }
@@ -144,11 +162,9 @@ public class SearchGuardInterceptor {
                 headerMap.remove(ConfigConstants.SG_FLS_FIELDS_HEADER);
             }
             
-            if (SearchGuardPlugin.GuiceHolder.getRemoteClusterService().isCrossClusterSearchEnabled() 
-                  && clusterInfoHolder.isInitialized()
+            if (crossClusterRequest
                   && !action.startsWith("internal:") 
-                  && !action.startsWith(ClusterSearchShardsAction.NAME) 
-                  && !clusterInfoHolder.hasNode(connection.getNode())) {
+                  && !action.startsWith(ClusterSearchShardsAction.NAME)) {
                 
                 if (log.isDebugEnabled()) {
                     log.debug("add dls/fls/mf from transient");
@@ -165,18 +181,64 @@ public class SearchGuardInterceptor {
                 }
             }
 
+            //received references are resolved, the target node may not know them
+            HeaderDeduplicator.expand(headerMap);
+
             getThreadContext().putHeader(headerMap);
 
             ensureCorrectHeaders(remoteAdress0, user0, origin0);
 
             if(actionTrace.isTraceEnabled()) {
-                getThreadContext().putHeader("_sg_trace"+System.currentTimeMillis()+"#"+UUID.randomUUID().toString(), Thread.currentThread().getName()+" IC -> "+action+" "+getThreadContext().getHeaders().entrySet().stream().filter(p->!p.getKey().startsWith("_sg_trace")).collect(Collectors.toMap(p -> p.getKey(), p -> p.getValue())));
+                getThreadContext().putHeader(TRACE_HEADER_PREFIX+System.currentTimeMillis()+"#"+UUID.randomUUID().toString(), Thread.currentThread().getName()+" IC -> "+action+" "+getThreadContext().getHeaders().entrySet().stream().filter(p->!p.getKey().startsWith(TRACE_HEADER_PREFIX)).collect(Collectors.toMap(p -> p.getKey(), p -> p.getValue())));
+            }
+
+            if (headerDeduplicator != null
+                    && clusterInfoHolder.isInitialized()
+                    && Boolean.TRUE.equals(clusterInfoHolder.hasNode(node))
+                    && !node.equals(cs.localNode())) {
+
+                final Map<String, String> fullHeaders = getThreadContext().getHeaders();
+                final Map<String, String> deduplicatedHeaders = headerDeduplicator.deduplicate(node, fullHeaders);
+
+                if (deduplicatedHeaders != null) {
+                    try (ThreadContext.StoredContext fullContext = getThreadContext().stashContext()) {
+                        getThreadContext().putHeader(deduplicatedHeaders);
+                        sender.sendRequest(connection, action, request, options,
+                                new RetryOnUnknownReferenceHandler<T>(restoringHandler, fullHeaders, headerDeduplicator, getThreadContext(),
+                                        sender, connection, action, request, options));
+                    }
+                    return;
+                }
             }
 
             sender.sendRequest(connection, action, request, options, restoringHandler);
         }
     }
 
+    /**
+     * @return the headers of the current context which are passed on to other nodes
+     */
+    private static Map<String, String> propagatedHeaders(final Map<String, String> headers, final boolean withSourceFieldContext) {
+        final Map<String, String> result = new HashMap<>();
+
+        for (final Map.Entry<String, String> header : headers.entrySet()) {
+            final String k = header.getKey();
+
+            if (k == null) {
+                continue;
+            }
+
+            if (PROPAGATED_HEADERS.contains(k)
+                    || (withSourceFieldContext && k.equals(SOURCE_FIELD_CONTEXT_HEADER))
+                    || k.startsWith(TRACE_HEADER_PREFIX)
+                    || k.startsWith(ConfigConstants.SG_INITIAL_ACTION_CLASS_HEADER)) {
+                result.put(k, header.getValue());
+            }
+        }
+
+        return result;
+    }
+
     private void ensureCorrectHeaders(final Object remoteAdr, final User origUser, final String origin) {
         // keep original address
 
@@ -193,7 +255,7 @@ public class SearchGuardInterceptor {
             String remoteAddressHeader = getThreadContext().getHeader(ConfigConstants.SG_REMOTE_ADDRESS_HEADER);
 
             if(remoteAddressHeader == null) {
-                getThreadContext().putHeader(ConfigConstants.SG_REMOTE_ADDRESS_HEADER, Base64Helper.serializeObject(((TransportAddress) remoteAdr).address()));
+                getThreadContext().putHeader(ConfigConstants.SG_REMOTE_ADDRESS_HEADER, Base64Helper.serializeObject(((TransportAddress) remoteAdr).address(), javaHeaderSerialization));
             }
         }
 
@@ -201,7 +263,7 @@ public class SearchGuardInterceptor {
             String userHeader = getThreadContext().getHeader(ConfigConstants.SG_USER_HEADER);
 
             if(userHeader == null) {
-                getThreadContext().putHeader(ConfigConstants.SG_USER_HEADER, Base64Helper.serializeObject(origUser));
+                getThreadContext().putHeader(ConfigConstants.SG_USER_HEADER, Base64Helper.serializeObject(origUser, javaHeaderSerialization));
             }
         }
     }
@@ -31,6 +31,7 @@ import org.elasticsearch.action.bulk.BulkShardRequest;
 import org.elasticsearch.action.support.replication.TransportReplicationAction.ConcreteShardRequest;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.search.internal.ShardSearchTransportRequest;
 import org.elasticsearch.tasks.Task;
@@ -38,6 +39,7 @@ import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportChannel;
 import org.elasticsearch.transport.TransportRequest;
 import org.elasticsearch.transport.TransportRequestHandler;
+import org.elasticsearch.transport.Transports;
 
 import com.floragunn.searchguard.action.whoami.WhoAmIAction;
 import com.floragunn.searchguard.auditlog.AuditLog;
@@ -48,8 +50,8 @@ import com.floragunn.searchguard.ssl.transport.PrincipalExtractor;
 import com.floragunn.searchguard.ssl.transport.SearchGuardSSLRequestHandler;
 import com.floragunn.searchguard.ssl.util.ExceptionUtils;
 import com.floragunn.searchguard.ssl.util.SSLRequestHelper;
-import com.floragunn.searchguard.support.Base64Helper;
 import com.floragunn.searchguard.support.ConfigConstants;
+import com.floragunn.searchguard.support.HeaderCache;
 import com.floragunn.searchguard.support.HeaderHelper;
 import com.floragunn.searchguard.user.User;
 import com.google.common.base.Strings;
@@ -61,6 +63,8 @@ public class SearchGuardRequestHandler<T extends TransportRequest> extends Searc
     private final AuditLog auditLog;
     private final InterClusterRequestEvaluator requestEvalProvider;
     private final ClusterService cs;
+    private final ThreadPool threadPool;
+    private final boolean asyncAuth;
 
     SearchGuardRequestHandler(String action,
             final TransportRequestHandler<T> actualHandler,
@@ -70,12 +74,15 @@ public class SearchGuardRequestHandler<T extends TransportRequest> extends Searc
             final PrincipalExtractor principalExtractor,
             final InterClusterRequestEvaluator requestEvalProvider,
             final ClusterService cs,
-            final SslExceptionHandler sslExceptionHandler) {
+            final SslExceptionHandler sslExceptionHandler,
+            final boolean asyncAuth) {
         super(action, actualHandler, threadPool, principalExtractor, sslExceptionHandler);
         this.backendRegistry = backendRegistry;
         this.auditLog = auditLog;
         this.requestEvalProvider = requestEvalProvider;
         this.cs = cs;
+        this.threadPool = threadPool;
+        this.asyncAuth = asyncAuth;
     }
 
     @Override
@@ -129,13 +136,13 @@ public class SearchGuardRequestHandler<T extends TransportRequest> extends Searc
                 final String userHeader = getThreadContext().getHeader(ConfigConstants.SG_USER_HEADER);
 
                 if(!Strings.isNullOrEmpty(userHeader)) {
-                    getThreadContext().putTransient(ConfigConstants.SG_USER, Objects.requireNonNull((User) Base64Helper.deserializeObject(userHeader)));
+                    getThreadContext().putTransient(ConfigConstants.SG_USER, Objects.requireNonNull((User) HeaderCache.deserializeObject(userHeader)));
                 }
 
                 final String originalRemoteAddress = getThreadContext().getHeader(ConfigConstants.SG_REMOTE_ADDRESS_HEADER);
 
                 if(!Strings.isNullOrEmpty(originalRemoteAddress)) {
-                    getThreadContext().putTransient(ConfigConstants.SG_REMOTE_ADDRESS, new TransportAddress((InetSocketAddress) Base64Helper.deserializeObject(originalRemoteAddress)));
+                    getThreadContext().putTransient(ConfigConstants.SG_REMOTE_ADDRESS, new TransportAddress((InetSocketAddress) HeaderCache.deserializeObject(originalRemoteAddress)));
                 }
 
                 if(actionTrace.isTraceEnabled()) {
@@ -183,19 +190,21 @@ public class SearchGuardRequestHandler<T extends TransportRequest> extends Searc
                 if(HeaderHelper.isInterClusterRequest(getThreadContext())
                         || HeaderHelper.isTrustedClusterRequest(getThreadContext())) {
 
+                    HeaderDeduplicator.received(getThreadContext());
+
                     final String userHeader = getThreadContext().getHeader(ConfigConstants.SG_USER_HEADER);
 
                     if(Strings.isNullOrEmpty(userHeader)) {
                         //user can be null when a node client wants connect
                         //getThreadContext().putTransient(ConfigConstants.SG_USER, User.SG_INTERNAL);
                     } else {
-                        getThreadContext().putTransient(ConfigConstants.SG_USER, Objects.requireNonNull((User) Base64Helper.deserializeObject(userHeader)));
+                        getThreadContext().putTransient(ConfigConstants.SG_USER, Objects.requireNonNull((User) HeaderCache.deserializeObject(userHeader)));
                     }
 
                     String originalRemoteAddress = getThreadContext().getHeader(ConfigConstants.SG_REMOTE_ADDRESS_HEADER);
 
                     if(!Strings.isNullOrEmpty(originalRemoteAddress)) {
-                        getThreadContext().putTransient(ConfigConstants.SG_REMOTE_ADDRESS, new TransportAddress((InetSocketAddress) Base64Helper.deserializeObject(originalRemoteAddress)));
+                        getThreadContext().putTransient(ConfigConstants.SG_REMOTE_ADDRESS, new TransportAddress((InetSocketAddress) HeaderCache.deserializeObject(originalRemoteAddress)));
                     } else {
                         getThreadContext().putTransient(ConfigConstants.SG_REMOTE_ADDRESS, request.remoteAddress());
                     }
@@ -213,59 +222,36 @@ public class SearchGuardRequestHandler<T extends TransportRequest> extends Searc
                         return;
                     }
 
-                    //TODO SG6 exception handling, introduce authexception
+                    if(asyncAuth && Transports.isTransportThread(Thread.currentThread())) {
+                        //authentication backends may block (e.g. ldap), so do not occupy a network thread with it
+                        final String transportPrincipal = principal;
+                        final String actionClass = resolvedActionClass;
+                        threadPool.executor(ConfigConstants.SG_AUTH_THREAD_POOL).execute(new AbstractRunnable() {
 
-                    User user;
-                    //try {
-                        if((user = backendRegistry.authenticate(request, principal, task, task.getAction())) == null) {
-                            org.apache.logging.log4j.ThreadContext.remove("user");
-                           
-                            if(task.getAction().equals(WhoAmIAction.NAME)) {
-                                super.messageReceivedDecorate(request, handler, transportChannel, task);
-                                return;
+                            @Override
+                            protected void doRun() throws Exception {
+                                authenticateAndHandle(request, handler, transportChannel, task, transportPrincipal, initialActionClassValue, actionClass);
                             }
 
-                            if(task.getAction().equals("cluster:monitor/nodes/liveness")
-                                    || task.getAction().equals("internal:transport/handshake")) {
-                                super.messageReceivedDecorate(request, handler, transportChannel, task);
-                                return;
+                            @Override
+                            public void onFailure(Exception e) {
+                                log.error("Error while authenticating transport request", e);
+                                try {
+                                    transportChannel.sendResponse(e);
+                                } catch (Exception inner) {
+                                    inner.addSuppressed(e);
+                                    log.error("Failed to send failure response", inner);
+                                }
                             }
-
-
-                            log.error("Cannot authenticate {} for {}", getThreadContext().getTransient(ConfigConstants.SG_USER), task.getAction());
-                            transportChannel.sendResponse(new ElasticsearchSecurityException("Cannot authenticate "+getThreadContext().getTransient(ConfigConstants.SG_USER)));
-                            return;
-                        } else {
-                            // make it possible to filter logs by username
-                            org.apache.logging.log4j.ThreadContext.put("user", user.getName());
-                        }
-                    //} catch (Exception e) {
-                        //    log.error("Error authentication transport user "+e, e);
-                        //auditLog.logFailedLogin(principal, false, null, request);
-                        //transportChannel.sendResponse(ExceptionsHelper.convertToElastic(e));
-                        //return;
-                        //}
-
-                    getThreadContext().putTransient(ConfigConstants.SG_USER, user);
-                    TransportAddress originalRemoteAddress = request.remoteAddress();
-
-                    if(originalRemoteAddress != null && (originalRemoteAddress instanceof TransportAddress)) {
-                        getThreadContext().putTransient(ConfigConstants.SG_REMOTE_ADDRESS, originalRemoteAddress);
-                    } else {
-                        log.error("Request has no proper remote address {}", originalRemoteAddress);
-                        transportChannel.sendResponse(new ElasticsearchException("Request has no proper remote address"));
+                        });
                         return;
                     }
-                }
 
-                if(actionTrace.isTraceEnabled()) {
-                    getThreadContext().putHeader("_sg_trace"+System.currentTimeMillis()+"#"+UUID.randomUUID().toString(), Thread.currentThread().getName()+" NETTI -> "+transportChannel.getChannelType()+" "+getThreadContext().getHeaders().entrySet().stream().filter(p->!p.getKey().startsWith("_sg_trace")).collect(Collectors.toMap(p -> p.getKey(), p -> p.getValue())));
+                    authenticateAndHandle(request, handler, transportChannel, task, principal, initialActionClassValue, resolvedActionClass);
+                    return;
                 }
 
-                
-                putInitialActionClassHeader(initialActionClassValue, resolvedActionClass);
-                
-                super.messageReceivedDecorate(request, handler, transportChannel, task);
+                handle(request, handler, transportChannel, task, initialActionClassValue, resolvedActionClass);
             }
         } finally {
 
@@ -279,6 +265,72 @@ public class SearchGuardRequestHandler<T extends TransportRequest> extends Searc
         }
     }
     
+    /**
+     * Authenticates a request from a transport client and hands it to the actual handler.
+     */
+    private void authenticateAndHandle(final T request, final TransportRequestHandler<T> handler, final TransportChannel transportChannel,
+            final Task task, final String principal, final String initialActionClassValue, final String resolvedActionClass) throws Exception {
+
+        //TODO SG6 exception handling, introduce authexception
+
+        User user;
+        //try {
+        if((user = backendRegistry.authenticate(request, principal, task, task.getAction())) == null) {
+            org.apache.logging.log4j.ThreadContext.remove("user");
+           
+            if(task.getAction().equals(WhoAmIAction.NAME)) {
+                super.messageReceivedDecorate(request, handler, transportChannel, task);
+                return;
+            }
+
+            if(task.getAction().equals("cluster:monitor/nodes/liveness")
+                    || task.getAction().equals("internal:transport/handshake")) {
+                super.messageReceivedDecorate(request, handler, transportChannel, task);
+                return;
+            }
+
+
+            log.error("Cannot authenticate {} for {}", getThreadContext().getTransient(ConfigConstants.SG_USER), task.getAction());
+            transportChannel.sendResponse(new ElasticsearchSecurityException("Cannot authenticate "+getThreadContext().getTransient(ConfigConstants.SG_USER)));
+            return;
+        } else {
+            // make it possible to filter logs by username
+            org.apache.logging.log4j.ThreadContext.put("user", user.getName());
+        }
+        //} catch (Exception e) {
+        //    log.error("Error authentication transport user "+e, e);
+        //auditLog.logFailedLogin(principal, false, null, request);
+        //transportChannel.sendResponse(ExceptionsHelper.convertToElastic(e));
+        //return;
+        //}
+
+        getThreadContext().putTransient(ConfigConstants.SG_USER, user);
+        TransportAddress originalRemoteAddress = request.remoteAddress();
+
+        if(originalRemoteAddress != null && (originalRemoteAddress instanceof TransportAddress)) {
+            getThreadContext().putTransient(ConfigConstants.SG_REMOTE_ADDRESS, originalRemoteAddress);
+        } else {
+            log.error("Request has no proper remote address {}", originalRemoteAddress);
+            transportChannel.sendResponse(new ElasticsearchException("Request has no proper remote address"));
+            return;
+        }
+
+        handle(request, handler, transportChannel, task, initialActionClassValue, resolvedActionClass);
+    }
+
+    private void handle(final T request, final TransportRequestHandler<T> handler, final TransportChannel transportChannel,
+            final Task task, final String initialActionClassValue, final String resolvedActionClass) throws Exception {
+
+        if(actionTrace.isTraceEnabled()) {
+            getThreadContext().putHeader("_sg_trace"+System.currentTimeMillis()+"#"+UUID.randomUUID().toString(), Thread.currentThread().getName()+" NETTI -> "+transportChannel.getChannelType()+" "+getThreadContext().getHeaders().entrySet().stream().filter(p->!p.getKey().startsWith("_sg_trace")).collect(Collectors.toMap(p -> p.getKey(), p -> p.getValue())));
+        }
+
+        
+        putInitialActionClassHeader(initialActionClassValue, resolvedActionClass);
+        
+        super.messageReceivedDecorate(request, handler, transportChannel, task);
+    }
+
     private void putInitialActionClassHeader(String initialActionClassValue, String resolvedActionClass) {
         if(initialActionClassValue == null) {
             if(getThreadContext().getHeader(ConfigConstants.SG_INITIAL_ACTION_CLASS_HEADER) == null) {
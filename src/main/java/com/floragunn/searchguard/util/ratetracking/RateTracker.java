@@ -24,10 +24,14 @@ public interface RateTracker<ClientIdType> {
     void reset(ClientIdType clientId);
 
     static <ClientIdType> RateTracker<ClientIdType> create(long timeWindowMs, int allowedTries, int maxEntries) {
+        return create(timeWindowMs, allowedTries, maxEntries, 4);
+    }
+
+    static <ClientIdType> RateTracker<ClientIdType> create(long timeWindowMs, int allowedTries, int maxEntries, int concurrencyLevel) {
         if (allowedTries == 1) {
             return new SingleTryRateTracker<ClientIdType>();
         } else if (allowedTries > 1) {
-            return new HeapBasedRateTracker<ClientIdType>(timeWindowMs, allowedTries, maxEntries);
+            return new SlidingWindowRateTracker<ClientIdType>(timeWindowMs, allowedTries, maxEntries, concurrencyLevel);
         } else {
             throw new IllegalArgumentException("allowedTries must be > 0: " + allowedTries);
         }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015-2019 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.floragunn.searchguard.util.ratetracking;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * Lock free rate tracker. Every client keeps the (monotonic) timestamps of its last allowedTries - 1 tries
+ * in a ring buffer. A try exceeds the rate if the oldest of these is still within the time window.
+ */
+public class SlidingWindowRateTracker<ClientIdType> implements RateTracker<ClientIdType> {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final Logger log = LogManager.getLogger(this.getClass());
+
+    private final Cache<ClientIdType, ClientRecord> cache;
+    private final long timeWindowNanos;
+    private final int maxTimestamps;
+
+    public SlidingWindowRateTracker(long timeWindowMs, int allowedTries, int maxEntries) {
+        this(timeWindowMs, allowedTries, maxEntries, 4);
+    }
+
+    public SlidingWindowRateTracker(long timeWindowMs, int allowedTries, int maxEntries, int concurrencyLevel) {
+        if (allowedTries < 2) {
+            throw new IllegalArgumentException("allowedTries must be >= 2");
+        }
+
+        this.timeWindowNanos = TimeUnit.MILLISECONDS.toNanos(timeWindowMs);
+        this.maxTimestamps = allowedTries - 1;
+        this.cache = CacheBuilder.newBuilder().expireAfterAccess(timeWindowMs, TimeUnit.MILLISECONDS).maximumSize(maxEntries)
+                .concurrencyLevel(concurrencyLevel).removalListener(new RemovalListener<ClientIdType, ClientRecord>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<ClientIdType, ClientRecord> notification) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Removing " + notification.getKey());
+                        }
+                    }
+                }).build();
+    }
+
+    @Override
+    public boolean track(ClientIdType clientId) {
+        ClientRecord clientRecord = this.cache.getIfPresent(clientId);
+
+        if (clientRecord == null) {
+            try {
+                clientRecord = this.cache.get(clientId, () -> new ClientRecord());
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        boolean result = clientRecord.track(System.nanoTime());
+
+        if (log.isDebugEnabled()) {
+            log.debug("track(" + clientId + "): " + result);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void reset(ClientIdType clientId) {
+        this.cache.invalidate(clientId);
+    }
+
+    private class ClientRecord {
+        private final AtomicLongArray timestamps = new AtomicLongArray(maxTimestamps);
+        private final AtomicLong tries = new AtomicLong();
+
+        ClientRecord() {
+            for (int i = 0; i < maxTimestamps; i++) {
+                timestamps.set(i, EMPTY);
+            }
+        }
+
+        boolean track(long timestamp) {
+            //the slot holds the try which happened maxTimestamps tries before this one
+            final int slot = (int) (tries.getAndIncrement() % maxTimestamps);
+            final long oldest = timestamps.getAndSet(slot, timestamp);
+            return oldest != EMPTY && timestamp - oldest < timeWindowNanos;
+        }
+    }
+
+}
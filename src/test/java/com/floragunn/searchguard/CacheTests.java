@@ -0,0 +1,369 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.floragunn.searchguard;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.elasticsearch.action.admin.cluster.node.info.NodeInfo;
+import org.elasticsearch.action.admin.cluster.node.info.NodesInfoRequest;
+import org.elasticsearch.action.admin.cluster.node.stats.NodeStats;
+import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.settings.SecureSettings;
+import org.elasticsearch.common.settings.SecureString;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.threadpool.ThreadPoolStats;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.floragunn.searchguard.action.cachestats.CacheStatsAction;
+import com.floragunn.searchguard.action.cachestats.CacheStatsNodeResponse;
+import com.floragunn.searchguard.action.cachestats.CacheStatsRequest;
+import com.floragunn.searchguard.action.configupdate.ConfigUpdateAction;
+import com.floragunn.searchguard.action.configupdate.ConfigUpdateRequest;
+import com.floragunn.searchguard.action.configupdate.ConfigUpdateResponse;
+import com.floragunn.searchguard.auth.LocalSharedAuthenticationCache;
+import com.floragunn.searchguard.support.ConfigConstants;
+import com.floragunn.searchguard.test.DynamicSgConfig;
+import com.floragunn.searchguard.test.SingleClusterTest;
+import com.floragunn.searchguard.test.helper.file.FileHelper;
+import com.floragunn.searchguard.test.helper.rest.RestHelper;
+import com.floragunn.searchguard.test.helper.rest.RestHelper.HttpResponse;
+
+public class CacheTests extends SingleClusterTest {
+
+    @Test
+    public void testCacheStats() throws Exception {
+        setup(Settings.EMPTY, new DynamicSgConfig(), Settings.EMPTY);
+
+        RestHelper rh = nonSslRestHelper();
+        HttpResponse res;
+
+        Assert.assertEquals(HttpStatus.SC_FORBIDDEN, rh.executeGetRequest("_searchguard/cache/stats", encodeBasicHeader("worf", "worf")).getStatusCode());
+
+        Assert.assertEquals(HttpStatus.SC_OK, (res = rh.executeGetRequest("_searchguard/cache/stats", encodeBasicHeader("nagilum", "nagilum"))).getStatusCode());
+        final Map<String, Object> nodes = nodes(res);
+        Assert.assertEquals(clusterInfo.numNodes, nodes.size());
+        for (Object node : nodes.values()) {
+            Assert.assertTrue(((Map<?, ?>) node).containsKey("rest_authorization_headers"));
+            Assert.assertTrue(((Map<?, ?>) node).containsKey("transport_headers"));
+        }
+    }
+
+    @Test
+    public void testRestFastPathAfterConfigReload() throws Exception {
+        setup(Settings.EMPTY, new DynamicSgConfig(), Settings.EMPTY);
+
+        RestHelper rh = nonSslRestHelper();
+
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(1, restUserLoads());
+
+        //no basic auth domain anymore, the cached header must not be accepted
+        initialize(clusterInfo, new DynamicSgConfig().setSgConfig("sg_config_clientcert.yml"));
+        Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+
+        initialize(clusterInfo, new DynamicSgConfig());
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(2, restUserLoads());
+    }
+
+    @Test
+    public void testRestFastPathAfterUserCacheInvalidation() throws Exception {
+        setup(Settings.EMPTY, new DynamicSgConfig(), Settings.EMPTY);
+
+        RestHelper rh = nonSslRestHelper();
+
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(1, restUserLoads());
+
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeDeleteRequest("_searchguard/cache/users/nagilum", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+
+        //the header is still cached for the fast path but the user is not, so the backend is asked again
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(2, restUserLoads());
+    }
+
+    @Test
+    public void testRestFastPathBlockedUser() throws Exception {
+        setup(Settings.EMPTY, new DynamicSgConfig().setSgConfig("sg_config_auth_ratelimiting.yml"), Settings.EMPTY, true);
+
+        RestHelper rh = nonSslRestHelper();
+
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(1, restUserLoads());
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, rh.executeGetRequest("", encodeBasicHeader("nagilum", "wrong")).getStatusCode());
+        }
+
+        Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("worf", "worf")).getStatusCode());
+    }
+
+    @Test
+    public void testRestFastPathBlockedIp() throws Exception {
+        setup(Settings.EMPTY, new DynamicSgConfig().setSgConfig("sg_config_auth_ratelimiting.yml"), Settings.EMPTY, true);
+
+        RestHelper rh = nonSslRestHelper();
+
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(1, restUserLoads());
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, rh.executeGetRequest("", encodeBasicHeader("x" + i, "wrong")).getStatusCode());
+        }
+
+        Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+    }
+
+    @Test
+    public void testInternalUsersUpdateInvalidatesChangedUsersOnly() throws Exception {
+        setup(Settings.EMPTY, new DynamicSgConfig().setSgInternalUsers("sg_internal_users_username.yml"), Settings.EMPTY);
+
+        RestHelper rh = nonSslRestHelper();
+
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("jtk", "kirk")).getStatusCode());
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("worf", "worf")).getStatusCode());
+        Assert.assertEquals(3, restUserLoads());
+
+        //nagilum gets a new password, the alternate username of captain changes from jtk to jamestkirk
+        try (TransportClient tc = getInternalTransportClient()) {
+            tc.index(new IndexRequest("searchguard").type("sg").setRefreshPolicy(RefreshPolicy.IMMEDIATE).id("internalusers")
+                    .source("internalusers", FileHelper.readYamlContent("sg_internal_users_username_changed.yml"))).actionGet();
+            ConfigUpdateResponse cur = tc.execute(ConfigUpdateAction.INSTANCE, new ConfigUpdateRequest(new String[] { "internalusers" })).actionGet();
+            Assert.assertFalse(cur.hasFailures());
+        }
+
+        Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, rh.executeGetRequest("", encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("nagilum", "sarek")).getStatusCode());
+        Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, rh.executeGetRequest("", encodeBasicHeader("jtk", "kirk")).getStatusCode());
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("jamestkirk", "kirk")).getStatusCode());
+        Assert.assertEquals(5, restUserLoads());
+
+        //unchanged, still served from the cache
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("", encodeBasicHeader("worf", "worf")).getStatusCode());
+        Assert.assertEquals(5, restUserLoads());
+    }
+
+    @Test
+    public void testInvalidateUserOnAllNodes() throws Exception {
+        setup(Settings.EMPTY, new DynamicSgConfig(), Settings.EMPTY);
+
+        RestHelper rh = nonSslRestHelper();
+
+        try (TransportClient tc = getInternalTransportClient()) {
+            for (NodeInfo nodeInfo : tc.admin().cluster().nodesInfo(new NodesInfoRequest()).actionGet().getNodes()) {
+                final TransportAddress address = nodeInfo.getHttp().address().publishAddress();
+                HttpResponse res = rh.executeRequest(new HttpGet("http://" + address.getAddress() + ":" + address.getPort() + "/"),
+                        encodeBasicHeader("nagilum", "nagilum"));
+                Assert.assertEquals(HttpStatus.SC_OK, res.getStatusCode());
+            }
+        }
+
+        Assert.assertEquals(clusterInfo.numNodes, restUserLoads());
+        for (CacheStatsNodeResponse nodeResponse : cacheStats()) {
+            Assert.assertEquals(1, nodeResponse.getSizes().get("rest_users").longValue());
+        }
+
+        HttpResponse res = rh.executeDeleteRequest("_searchguard/cache/users/nagilum", encodeBasicHeader("nagilum", "nagilum"));
+        Assert.assertEquals(HttpStatus.SC_OK, res.getStatusCode());
+        Assert.assertEquals(clusterInfo.numNodes, nodes(res).size());
+
+        for (CacheStatsNodeResponse nodeResponse : cacheStats()) {
+            Assert.assertEquals(0, nodeResponse.getSizes().get("rest_users").longValue());
+            Assert.assertEquals(0, nodeResponse.getSizes().get("rest_authorization_headers").longValue());
+        }
+    }
+
+    @Test
+    public void testSharedAuthenticationCache() throws Exception {
+        final Settings settings = Settings.builder()
+                .put(ConfigConstants.SEARCHGUARD_CACHE_SHARED_IMPL, LocalSharedAuthenticationCache.class.getName())
+                .setSecureSettings(new SingleSecureSetting(ConfigConstants.SEARCHGUARD_CACHE_SHARED_SECRET, "shared cache secret"))
+                .build();
+        setup(Settings.EMPTY, new DynamicSgConfig(), settings);
+
+        RestHelper rh = nonSslRestHelper();
+        final String[] nodeIds = new String[3];
+        final String[] nodeUrls = new String[3];
+
+        try (TransportClient tc = getInternalTransportClient()) {
+            final List<NodeInfo> nodeInfos = tc.admin().cluster().nodesInfo(new NodesInfoRequest()).actionGet().getNodes();
+            Assert.assertTrue(nodeInfos.size() >= 3);
+            for (int i = 0; i < 3; i++) {
+                final TransportAddress address = nodeInfos.get(i).getHttp().address().publishAddress();
+                nodeIds[i] = nodeInfos.get(i).getNode().getId();
+                nodeUrls[i] = "http://" + address.getAddress() + ":" + address.getPort() + "/";
+            }
+        }
+
+        //authenticated against the backend on the first node only
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeRequest(new HttpGet(nodeUrls[0]), encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeRequest(new HttpGet(nodeUrls[1]), encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Map<String, Long> checks = passwordChecks();
+        Assert.assertEquals(1, checks.get(nodeIds[0]).longValue());
+        Assert.assertEquals(0, checks.get(nodeIds[1]).longValue());
+
+        //a wrong password does not match the shared entry
+        Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED,
+                rh.executeRequest(new HttpGet(nodeUrls[1]), encodeBasicHeader("nagilum", "wrong")).getStatusCode());
+        Assert.assertEquals(1, passwordChecks().get(nodeIds[1]).longValue());
+
+        Assert.assertEquals(HttpStatus.SC_OK,
+                rh.executeRequest(new HttpDelete(nodeUrls[0] + "_searchguard/cache/users/nagilum"), encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+
+        //the shared entry is gone as well
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeRequest(new HttpGet(nodeUrls[2]), encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(1, passwordChecks().get(nodeIds[2]).longValue());
+    }
+
+    @Test
+    public void testClusterSharedAuthenticationCache() throws Exception {
+        final Settings settings = Settings.builder()
+                .put(ConfigConstants.SEARCHGUARD_CACHE_SHARED_ENABLED, true)
+                .put(ConfigConstants.SEARCHGUARD_CACHE_SHARED_PROPAGATION_INTERVAL, "10ms")
+                .setSecureSettings(new SingleSecureSetting(ConfigConstants.SEARCHGUARD_CACHE_SHARED_SECRET, "shared cache secret"))
+                .build();
+        setup(Settings.EMPTY, new DynamicSgConfig(), settings);
+
+        RestHelper rh = nonSslRestHelper();
+        final String[] nodeIds = new String[3];
+        final String[] nodeUrls = new String[3];
+
+        try (TransportClient tc = getInternalTransportClient()) {
+            final List<NodeInfo> nodeInfos = tc.admin().cluster().nodesInfo(new NodesInfoRequest()).actionGet().getNodes();
+            Assert.assertTrue(nodeInfos.size() >= 3);
+            for (int i = 0; i < 3; i++) {
+                final TransportAddress address = nodeInfos.get(i).getHttp().address().publishAddress();
+                nodeIds[i] = nodeInfos.get(i).getNode().getId();
+                nodeUrls[i] = "http://" + address.getAddress() + ":" + address.getPort() + "/";
+            }
+        }
+
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeRequest(new HttpGet(nodeUrls[0]), encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+
+        //wait for the entry to be sent to the other nodes
+        Thread.sleep(1000);
+
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeRequest(new HttpGet(nodeUrls[1]), encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Map<String, Long> checks = passwordChecks();
+        Assert.assertEquals(1, checks.get(nodeIds[0]).longValue());
+        Assert.assertEquals(0, checks.get(nodeIds[1]).longValue());
+
+        Assert.assertEquals(HttpStatus.SC_OK,
+                rh.executeRequest(new HttpDelete(nodeUrls[0] + "_searchguard/cache/users/nagilum"), encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+
+        //invalidated on all nodes
+        Assert.assertEquals(HttpStatus.SC_OK, rh.executeRequest(new HttpGet(nodeUrls[2]), encodeBasicHeader("nagilum", "nagilum")).getStatusCode());
+        Assert.assertEquals(1, passwordChecks().get(nodeIds[2]).longValue());
+    }
+
+    /**
+     * @return completed bcrypt password checks by node id
+     */
+    private Map<String, Long> passwordChecks() {
+        final Map<String, Long> checks = new HashMap<>();
+        try (TransportClient tc = getInternalTransportClient()) {
+            for (NodeStats nodeStats : tc.admin().cluster().nodesStats(new NodesStatsRequest().threadPool(true)).actionGet().getNodes()) {
+                for (ThreadPoolStats.Stats stats : nodeStats.getThreadPool()) {
+                    if (stats.getName().equals(ConfigConstants.SG_BCRYPT_THREAD_POOL)) {
+                        checks.put(nodeStats.getNode().getId(), stats.getCompleted());
+                    }
+                }
+            }
+        }
+        return checks;
+    }
+
+    /**
+     * @return number of users successfully loaded from the authentication backends by REST requests on all nodes
+     */
+    private long restUserLoads() {
+        long loads = 0;
+        for (CacheStatsNodeResponse nodeResponse : cacheStats()) {
+            loads += nodeResponse.getStats().get("rest_users").loadSuccessCount();
+        }
+        return loads;
+    }
+
+    private List<CacheStatsNodeResponse> cacheStats() {
+        try (TransportClient tc = getInternalTransportClient()) {
+            return tc.execute(CacheStatsAction.INSTANCE, new CacheStatsRequest()).actionGet().getNodes();
+        }
+    }
+
+    private static class SingleSecureSetting implements SecureSettings {
+
+        private final String name;
+        private final String value;
+
+        SingleSecureSetting(final String name, final String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public boolean isLoaded() {
+            return true;
+        }
+
+        @Override
+        public Set<String> getSettingNames() {
+            return Collections.singleton(name);
+        }
+
+        @Override
+        public SecureString getString(final String setting) {
+            return name.equals(setting) ? new SecureString(value.toCharArray()) : null;
+        }
+
+        @Override
+        public InputStream getFile(final String setting) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> nodes(HttpResponse res) {
+        return (Map<String, Object>) XContentHelper.convertToMap(new BytesArray(res.getBody()), false, XContentType.JSON).v2().get("nodes");
+    }
+}
@@ -19,11 +19,15 @@ package com.floragunn.searchguard;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 
 import org.apache.http.HttpStatus;
 import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
 import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
@@ -31,7 +35,9 @@ import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.cluster.health.ClusterHealthStatus;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.indices.InvalidIndexNameException;
 import org.elasticsearch.indices.InvalidTypeNameException;
@@ -126,6 +132,89 @@ public class IndexIntegrationTests extends SingleClusterTest {
         
     }
 
+    @Test
+    public void testBulkShardDecisions() throws Exception {
+
+        setup(Settings.EMPTY, new DynamicSgConfig().setSgRoles("sg_roles_bs.yml"), Settings.EMPTY, true);
+        final RestHelper rh = nonSslRestHelper();
+
+        try (TransportClient tc = getInternalTransportClient()) {
+            //one shard per index, so that all items of an index are in one shard request
+            for (String index : new String[] { "test", "lorem" }) {
+                tc.admin().indices().create(new CreateIndexRequest(index).settings(Settings.builder().put("index.number_of_shards", 1))).actionGet();
+                tc.index(new IndexRequest(index).type("type1").id("init").setRefreshPolicy(RefreshPolicy.IMMEDIATE).source("{\"field2\":\"init\"}", XContentType.JSON)).actionGet();
+            }
+        }
+
+        //worf may do anything on test, but only index on lorem
+        Map<String, Integer> items = bulk(rh, "worf",
+                bulkItem("index", "test", "t1"),
+                bulkItem("delete", "test", "init"),
+                bulkItem("index", "lorem", "l1"));
+        Assert.assertEquals(items.toString(), Integer.valueOf(201), items.get("index/test/t1"));
+        Assert.assertEquals(items.toString(), Integer.valueOf(200), items.get("delete/test/init"));
+        Assert.assertEquals(items.toString(), Integer.valueOf(201), items.get("index/lorem/l1"));
+
+        //the granted index decision for test must not be applied to the delete items on lorem
+        items = bulk(rh, "worf",
+                bulkItem("index", "test", "t2"),
+                bulkItem("delete", "lorem", "l1"));
+        Assert.assertEquals(items.toString(), Integer.valueOf(201), items.get("index/test/t2"));
+        Assert.assertEquals(items.toString(), Integer.valueOf(403), items.get("delete/lorem/l1"));
+
+        //the granted index decision for lorem must not be applied to a shard request with index and delete items
+        items = bulk(rh, "worf",
+                bulkItem("index", "lorem", "l2"),
+                bulkItem("index", "lorem", "l3"),
+                bulkItem("delete", "lorem", "l1"),
+                bulkItem("delete", "test", "t1"));
+        Assert.assertEquals(items.toString(), Integer.valueOf(403), items.get("index/lorem/l2"));
+        Assert.assertEquals(items.toString(), Integer.valueOf(403), items.get("index/lorem/l3"));
+        Assert.assertEquals(items.toString(), Integer.valueOf(403), items.get("delete/lorem/l1"));
+        Assert.assertEquals(items.toString(), Integer.valueOf(200), items.get("delete/test/t1"));
+
+        //after a roles reload decisions are made with the new roles
+        initialize(clusterInfo, new DynamicSgConfig().setSgRoles("sg_roles_bs_delete.yml"));
+
+        items = bulk(rh, "worf",
+                bulkItem("index", "test", "t3"),
+                bulkItem("delete", "lorem", "l1"));
+        Assert.assertEquals(items.toString(), Integer.valueOf(201), items.get("index/test/t3"));
+        Assert.assertEquals(items.toString(), Integer.valueOf(200), items.get("delete/lorem/l1"));
+
+        initialize(clusterInfo, new DynamicSgConfig().setSgRoles("sg_roles_bs.yml"));
+
+        items = bulk(rh, "worf",
+                bulkItem("index", "test", "t4"),
+                bulkItem("delete", "lorem", "init"));
+        Assert.assertEquals(items.toString(), Integer.valueOf(201), items.get("index/test/t4"));
+        Assert.assertEquals(items.toString(), Integer.valueOf(403), items.get("delete/lorem/init"));
+    }
+
+    private static String bulkItem(String opType, String index, String id) {
+        final String action = "{ \"" + opType + "\" : { \"_index\" : \"" + index + "\", \"_type\" : \"type1\", \"_id\" : \"" + id + "\" } }"
+                + System.lineSeparator();
+        return "delete".equals(opType) ? action : action + "{ \"field2\" : \"value\" }" + System.lineSeparator();
+    }
+
+    /**
+     * @return the status of each bulk item, keyed by "optype/index/id"
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Integer> bulk(RestHelper rh, String user, String... items) throws Exception {
+        final HttpResponse res = rh.executePostRequest("_bulk?refresh=true", String.join("", items), encodeBasicHeader(user, user));
+        Assert.assertEquals(res.getBody(), HttpStatus.SC_OK, res.getStatusCode());
+
+        final Map<String, Integer> result = new HashMap<>();
+        for (Object item : (List<Object>) XContentHelper.convertToMap(JsonXContent.jsonXContent, res.getBody(), false).get("items")) {
+            for (Map.Entry<String, Object> op : ((Map<String, Object>) item).entrySet()) {
+                final Map<String, Object> itemResponse = (Map<String, Object>) op.getValue();
+                result.put(op.getKey() + "/" + itemResponse.get("_index") + "/" + itemResponse.get("_id"), (Integer) itemResponse.get("status"));
+            }
+        }
+        return result;
+    }
+
     @Test
     public void testCreateIndex() throws Exception {
     
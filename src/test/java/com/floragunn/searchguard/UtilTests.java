@@ -21,16 +21,33 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.Serializable;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 import org.bouncycastle.crypto.generators.OpenBSDBCrypt;
+import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.common.settings.Settings;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.floragunn.searchguard.support.ActionBitSet;
+import com.floragunn.searchguard.support.Base64Helper;
+import com.floragunn.searchguard.support.CompiledPattern;
 import com.floragunn.searchguard.support.ConfigConstants;
+import com.floragunn.searchguard.support.HeaderCache;
+import com.floragunn.searchguard.support.PatternSet;
 import com.floragunn.searchguard.support.SgUtils;
 import com.floragunn.searchguard.support.WildcardMatcher;
+import com.floragunn.searchguard.user.User;
 
 public class UtilTests {
     
@@ -61,6 +78,80 @@ public class UtilTests {
         Assert.assertTrue(WildcardMatcher.containsWildcard("/(\\d{3}-\\d{2}-?\\d{4})/"));
     }
 
+    @Test
+    public void testActionBitSet() {
+        final PatternSet perms = PatternSet.compile(Arrays.asList("cluster:monitor/*", "indices:data/read/search", "/indices:admin/(create|delete)/"));
+        final ActionBitSet bits = new ActionBitSet(perms::matches);
+        final String[] actions = new String[] { "cluster:monitor/health", "cluster:admin/settings/update", "indices:data/read/search",
+                "indices:data/read/get", "indices:admin/create", "indices:admin/open", null };
+
+        //evaluate twice, the second round is answered from the bits
+        for (int i = 0; i < 2; i++) {
+            for (String action : actions) {
+                assertEquals(action, perms.matches(action), bits.test(action));
+            }
+        }
+
+        assertTrue(bits.testAll(new String[] { "cluster:monitor/health", "indices:admin/delete" }));
+        Assert.assertFalse(bits.testAll(new String[] { "cluster:monitor/health", "indices:admin/open" }));
+    }
+
+    @Test
+    public void testCompiledPatterns() {
+        //pattern, candidate, expected match, expected case insensitive match
+        final Object[][] cases = new Object[][] {
+                { "a*?", "a", false, false },
+                { "a*?", "aa", true, true },
+                { "a*?", "ab", true, true },
+                { "*my*index", "myindex", true, true },
+                { "*my*index", "this_is_my_great_index", true, true },
+                { "*my*index", "MYindex", false, true },
+                { "*my*index?", "myindex1", true, true },
+                { "*my*index?", "myindex", false, false },
+                { "?kibana", ".kibana", true, true },
+                { "?kibana", "kibana", false, false },
+                { "?kibana?", "?kibana.", true, true },
+                { "?kibana?", ".kibana", false, false },
+                { "/(\\d{3}-?\\d{2}-?\\d{4})/", "123-45-6789", true, true },
+                { "/(\\d{3}-?\\d{2}-?\\d{4})/", "abc", false, false },
+                { "/\\S*/", "", true, true },
+                { "/\\S*/", "abc", true, false }, //the pattern is lower cased as well, \S becomes \s
+                { "abc", "abc", true, true },
+                { "abc", "ABC", false, true },
+                { "abc", "abcdef", false, false },
+                { "ABC", "abc", false, true },
+                { "abc*", "abcdef", true, true },
+                { "abc*", "ABC", false, true },
+                { "*", "", true, true },
+                { "*", "abc", true, true },
+                { "logs-*-2019", "logs-app-2019", true, true },
+                { "logs-*-2019", "logs-2019", false, false },
+                { "/", "/", true, true },
+                { "/", "abc", false, false }
+        };
+
+        for (Object[] c : cases) {
+            final String p = (String) c[0];
+            final String candidate = (String) c[1];
+            Assert.assertEquals(p + " / " + candidate, c[2], CompiledPattern.compile(p).matches(candidate));
+            Assert.assertEquals(p + " / " + candidate, c[3], CompiledPattern.compile(p, true).matches(candidate));
+            Assert.assertEquals(p + " / " + candidate, c[2], WildcardMatcher.match(p, candidate));
+            Assert.assertEquals(p + " / " + candidate, c[3], WildcardMatcher.match(p, candidate, true));
+            Assert.assertEquals(p + " / " + candidate, c[2], PatternSet.compile(Arrays.asList(p, "x")).matches(candidate));
+        }
+
+        final PatternSet set = PatternSet.compile(Arrays.asList("abc", "ab*", "*c", "/a.c/", "xyz"));
+        Assert.assertEquals(4, set.getMatchingPatterns("abc").size());
+        Assert.assertTrue(set.getMatchingPatterns("xy").isEmpty());
+        Assert.assertTrue(set.matchesAll(new String[] { "abc", "xyz", "abd" }));
+        Assert.assertFalse(set.matchesAll(new String[] { "abc", "xy" }));
+        Assert.assertTrue(PatternSet.compile(Arrays.asList("CN=node-*")).matchesAny(Arrays.asList("x", "CN=node-1")));
+        Assert.assertFalse(PatternSet.compile(Arrays.asList("CN=node-*")).matches("cn=node-1"));
+        Assert.assertTrue(PatternSet.compile(Arrays.asList("CN=node-*"), true).matches("cn=NODE-1"));
+        Assert.assertFalse(PatternSet.EMPTY.matches("abc"));
+        Assert.assertFalse(CompiledPattern.compile("*").matches(null));
+    }
+
     @Test
     public void testMapFromArray() {
         Map<Object, Object> map = SgUtils.mapFromArray((Object)null);
@@ -146,4 +237,114 @@ public class UtilTests {
             Assert.assertEquals("abv${env."+k+":-k182765ggh}xyz", SgUtils.replaceEnvVars("abv${env."+k+":-k182765ggh}xyz",settings));
         }
     }
+
+    @Test
+    public void testHeaderSerialization() throws Exception {
+        final User user = new User("user", Arrays.asList("role1", "role2"), null);
+        user.setRequestedTenant("tenant");
+        user.getCustomAttributesMap().put("attr.x", "y");
+        user.setInjected(true);
+
+        final Map<String, Set<String>> dls = new HashMap<>();
+        dls.put("index*", new HashSet<>(Arrays.asList("{\"term\":{\"a\":1}}", "{\"term\":{\"b\":2}}")));
+        dls.put("other", Collections.emptySet());
+
+        final Serializable[] objects = new Serializable[] { user, new User("nameonly"),
+                new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 9300), new InetSocketAddress(InetAddress.getByName("::1"), 9301),
+                (Serializable) dls };
+
+        for (final Serializable object : objects) {
+            final String binary = Base64Helper.serializeObject(object);
+            final String java = Base64Helper.serializeObject(object, true);
+            Assert.assertNotEquals(java, binary);
+            Assert.assertTrue(binary.length() < java.length());
+
+            for (final String serialized : new String[] { binary, java }) {
+                final Serializable deserialized = Base64Helper.deserializeObject(serialized);
+                if (object instanceof User) {
+                    final User deserializedUser = (User) deserialized;
+                    assertEquals(((User) object).getName(), deserializedUser.getName());
+                    assertEquals(((User) object).getRoles(), deserializedUser.getRoles());
+                    assertEquals(((User) object).getCustomAttributesMap(), deserializedUser.getCustomAttributesMap());
+                    assertEquals(((User) object).getRequestedTenant(), deserializedUser.getRequestedTenant());
+                    assertEquals(((User) object).isInjected(), deserializedUser.isInjected());
+                } else {
+                    assertEquals(object, deserialized);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInetSocketAddressHeaderSerialization() throws Exception {
+        final InetSocketAddress named = new InetSocketAddress(InetAddress.getByAddress("node1.example.com", new byte[] { 10, 0, 0, 1 }), 9300);
+        final InetSocketAddress literal = new InetSocketAddress(InetAddress.getByName("10.0.0.2"), 9300);
+        final InetSocketAddress scoped = new InetSocketAddress(
+                Inet6Address.getByAddress("node3", InetAddress.getByName("fe80::1").getAddress(), 5), 9301);
+
+        for (final InetSocketAddress address : new InetSocketAddress[] { named, literal, scoped }) {
+            final InetSocketAddress deserialized = (InetSocketAddress) Base64Helper.deserializeObject(Base64Helper.serializeObject(address));
+            assertEquals(address, deserialized);
+            assertEquals(address.getHostString(), deserialized.getHostString());
+            assertEquals(address.getAddress().getHostAddress(), deserialized.getAddress().getHostAddress());
+            assertEquals(address.getPort(), deserialized.getPort());
+        }
+
+        assertEquals("node1.example.com", ((InetSocketAddress) Base64Helper.deserializeObject(Base64Helper.serializeObject(named))).getHostString());
+        assertEquals(5, ((Inet6Address) ((InetSocketAddress) Base64Helper.deserializeObject(Base64Helper.serializeObject(scoped))).getAddress())
+                .getScopeId());
+    }
+
+    @Test
+    public void testHeaderCache() throws Exception {
+        final Map<String, Set<String>> fls = new HashMap<>();
+        fls.put("index*", new HashSet<>(Arrays.asList("a", "~b")));
+
+        final String header = Base64Helper.serializeObject((Serializable) fls);
+        final Serializable first = HeaderCache.deserializeObject(header);
+
+        assertEquals(fls, first);
+        Assert.assertSame(first, HeaderCache.deserializeObject(header));
+        Assert.assertSame(first, HeaderCache.deserializeObject(new String(header)));
+
+        try {
+            @SuppressWarnings("unchecked")
+            final Map<String, Set<String>> cached = (Map<String, Set<String>>) first;
+            cached.get("index*").add("c");
+            Assert.fail("cached header values must not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testHeaderReferences() throws Exception {
+        final Map<String, Set<String>> dls = new HashMap<>();
+        dls.put("index*", new HashSet<>(Arrays.asList("{\"term\": {\"dept\": \"" + UUID.randomUUID() + "\"}}")));
+        dls.put("logs-*", new HashSet<>(Arrays.asList("{\"bool\": {\"must_not\": {\"term\": {\"level\": \"debug\"}}}}")));
+
+        final String header = Base64Helper.serializeObject((Serializable) dls);
+        final String reference = HeaderCache.reference(header);
+
+        Assert.assertNotNull(reference);
+        Assert.assertTrue(HeaderCache.isReference(reference));
+        Assert.assertTrue(reference.length() < header.length());
+        assertEquals(reference, HeaderCache.reference(new String(header)));
+        Assert.assertNull(HeaderCache.reference(reference));
+        Assert.assertNull(HeaderCache.reference("short"));
+        Assert.assertNull(HeaderCache.resolve(reference));
+
+        try {
+            HeaderCache.deserializeObject(reference);
+            Assert.fail("unknown references must not be resolved");
+        } catch (ElasticsearchException e) {
+            Assert.assertTrue(HeaderCache.isUnknownReference(e));
+        }
+
+        HeaderCache.remember(header);
+
+        assertEquals(header, HeaderCache.resolve(reference));
+        assertEquals(header, HeaderCache.resolve(header));
+        assertEquals(dls, HeaderCache.deserializeObject(reference));
+    }
 }
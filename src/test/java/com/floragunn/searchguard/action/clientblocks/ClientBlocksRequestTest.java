@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015-2019 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.floragunn.searchguard.action.clientblocks;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClientBlocksRequestTest {
+
+    @Test
+    public void testSerialization() throws Exception {
+        final Map<String, Map<String, Integer>> failures = new HashMap<>();
+        final Map<String, Integer> ipFailures = new HashMap<>();
+        ipFailures.put("10.0.0.1", 3);
+        ipFailures.put("2001:db8::1", 1);
+        failures.put("ip", ipFailures);
+        failures.put("user", Collections.singletonMap("bob", 200));
+        failures.put("empty", Collections.emptyMap());
+
+        final Map<String, Set<String>> blocks = new HashMap<>();
+        blocks.put("ip", new HashSet<>(Arrays.asList("10.0.0.1", "10.0.0.2")));
+        blocks.put("user", Collections.emptySet());
+
+        final ClientBlocksRequest request = new ClientBlocksRequest("node_1", failures, blocks);
+
+        final BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+
+        final ClientBlocksRequest read = new ClientBlocksRequest();
+        try (StreamInput in = out.bytes().streamInput()) {
+            read.readFrom(in);
+            Assert.assertEquals(0, in.available());
+        }
+
+        Assert.assertEquals("node_1", read.getOriginNodeId());
+        Assert.assertEquals(failures, read.getFailures());
+        Assert.assertEquals(blocks, read.getBlocks());
+        Assert.assertNull(read.validate());
+    }
+
+    @Test
+    public void testValidate() throws Exception {
+        Assert.assertNotNull(new ClientBlocksRequest().validate());
+    }
+}
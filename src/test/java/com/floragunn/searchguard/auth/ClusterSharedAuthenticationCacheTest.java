@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.auth;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.client.support.AbstractClient;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.floragunn.searchguard.action.sharedcache.SharedCacheEntriesRequest;
+import com.floragunn.searchguard.auth.SharedAuthenticationCache.Entry;
+import com.floragunn.searchguard.test.AbstractSGUnitTest;
+
+public class ClusterSharedAuthenticationCacheTest {
+
+    private final RecordingClient client = new RecordingClient();
+
+    @Test
+    public void testFlushSendsOneBatch() throws Exception {
+        final ClusterSharedAuthenticationCache cache = cache(3);
+        final Entry bob = entry("bob", 60_000);
+        final Entry alice = entry("alice", 60_000);
+
+        cache.put("k1", bob);
+        cache.put("k2", alice);
+        Assert.assertSame(bob, cache.get("k1"));
+        cache.flush();
+
+        Assert.assertEquals(1, client.requests.size());
+        Assert.assertEquals("node_0", client.requests.get(0).getOriginNodeId());
+        Assert.assertEquals(2, client.requests.get(0).getEntries().size());
+        Assert.assertSame(bob, client.requests.get(0).getEntries().get("k1"));
+
+        //nothing new, nothing sent
+        cache.flush();
+        Assert.assertEquals(1, client.requests.size());
+    }
+
+    @Test
+    public void testInvalidationDropsPendingEntries() throws Exception {
+        final ClusterSharedAuthenticationCache cache = cache(3);
+
+        cache.put("k1", entry("bob", 60_000));
+        cache.put("k2", entry("alice", 60_000));
+        cache.invalidateUsers(Collections.singleton("bob"));
+        Assert.assertNull(cache.get("k1"));
+        cache.flush();
+
+        Assert.assertEquals(Collections.singleton("k2"), client.requests.get(0).getEntries().keySet());
+
+        cache.put("k3", entry("carol", 60_000));
+        cache.invalidateAll();
+        Assert.assertNull(cache.get("k2"));
+        cache.flush();
+
+        Assert.assertEquals(1, client.requests.size());
+    }
+
+    @Test
+    public void testPutRemote() throws Exception {
+        final ClusterSharedAuthenticationCache cache = cache(3);
+        final Map<String, Entry> remote = new HashMap<>();
+        remote.put("k1", entry("bob", 60_000));
+        remote.put("k2", entry("alice", -1_000));
+
+        Assert.assertEquals(1, cache.putRemote(remote));
+        Assert.assertEquals("bob", cache.get("k1").getUsername());
+        Assert.assertNull(cache.get("k2"));
+
+        //remote entries are not sent on
+        cache.flush();
+        Assert.assertTrue(client.requests.isEmpty());
+    }
+
+    @Test
+    public void testNothingSentOnSingleNode() throws Exception {
+        final ClusterSharedAuthenticationCache cache = cache(1);
+
+        cache.put("k1", entry("bob", 60_000));
+        cache.flush();
+
+        Assert.assertTrue(client.requests.isEmpty());
+        Assert.assertEquals("bob", cache.get("k1").getUsername());
+    }
+
+    @Test
+    public void testRequestSerialization() throws Exception {
+        final Map<String, Entry> entries = new HashMap<>();
+        entries.put("k1", entry("bob", 60_000));
+
+        final BytesStreamOutput out = new BytesStreamOutput();
+        new SharedCacheEntriesRequest("node_0", entries).writeTo(out);
+        final SharedCacheEntriesRequest read = new SharedCacheEntriesRequest();
+        read.readFrom(out.bytes().streamInput());
+
+        final Entry entry = read.getEntries().get("k1");
+        Assert.assertEquals("node_0", read.getOriginNodeId());
+        Assert.assertEquals("bob", entry.getUsername());
+        Assert.assertEquals(entries.get("k1").getExpiresAt(), entry.getExpiresAt());
+        Assert.assertEquals("user bob", entry.getUser());
+        Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, entry.getSignature());
+    }
+
+    private static Entry entry(final String username, final long expiresInMs) {
+        return new Entry(username, System.currentTimeMillis() + expiresInMs, "user " + username, new byte[] { 1, 2, 3 });
+    }
+
+    private ClusterSharedAuthenticationCache cache(final int nodeCount) {
+        final DiscoveryNodes.Builder nodes = DiscoveryNodes.builder();
+        for (int i = 0; i < nodeCount; i++) {
+            nodes.add(new DiscoveryNode("node_" + i, new TransportAddress(TransportAddress.META_ADDRESS, 9300 + i), Version.CURRENT));
+        }
+        nodes.localNodeId("node_0");
+        final ClusterState state = ClusterState.builder(ClusterName.DEFAULT).nodes(nodes).build();
+
+        final ClusterService clusterService = mock(ClusterService.class);
+        when(clusterService.state()).thenReturn(state);
+        when(clusterService.localNode()).thenReturn(state.nodes().getLocalNode());
+
+        //long interval, the tests flush explicitly
+        return new ClusterSharedAuthenticationCache(AbstractSGUnitTest.MOCK_POOL, client, clusterService, TimeValue.timeValueHours(1), 1000);
+    }
+
+    private static class RecordingClient extends AbstractClient {
+
+        final List<SharedCacheEntriesRequest> requests = new ArrayList<>();
+
+        RecordingClient() {
+            super(Settings.EMPTY, AbstractSGUnitTest.MOCK_POOL);
+        }
+
+        @Override
+        protected <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>> void doExecute(
+                Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+            requests.add((SharedCacheEntriesRequest) request);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
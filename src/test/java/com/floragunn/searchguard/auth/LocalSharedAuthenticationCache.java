@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.floragunn.searchguard.auth;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.settings.Settings;
+
+/**
+ * Store shared by all nodes of the same cluster running in the same JVM, like the nodes of an embedded test cluster
+ */
+public class LocalSharedAuthenticationCache implements SharedAuthenticationCache {
+
+    //cluster name to entries
+    private static final Map<String, Map<String, Entry>> STORES = new ConcurrentHashMap<>();
+
+    private final Map<String, Entry> entries;
+
+    public LocalSharedAuthenticationCache(final Settings settings) {
+        super();
+        this.entries = STORES.computeIfAbsent(ClusterName.CLUSTER_NAME_SETTING.get(settings).value(), k -> new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public Entry get(final String key) {
+        final Entry entry = entries.get(key);
+
+        if (entry != null && entry.getExpiresAt() < System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+
+        return entry;
+    }
+
+    @Override
+    public void put(final String key, final Entry entry) {
+        entries.put(key, entry);
+    }
+
+    @Override
+    public void invalidateUsers(final Set<String> usernames) {
+        entries.values().removeIf(entry -> usernames.contains(entry.getUsername()));
+    }
+
+    @Override
+    public void invalidateAll() {
+        entries.clear();
+    }
+}
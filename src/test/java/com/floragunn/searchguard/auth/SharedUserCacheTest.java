@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015-2019 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.floragunn.searchguard.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.floragunn.searchguard.auth.internal.NoOpAuthenticationBackend;
+import com.floragunn.searchguard.user.AuthCredentials;
+import com.floragunn.searchguard.user.User;
+
+public class SharedUserCacheTest {
+
+    private static final byte[] SECRET = "secret".getBytes(StandardCharsets.UTF_8);
+
+    private final AuthDomain authDomain = new AuthDomain(new NoOpAuthenticationBackend(Settings.EMPTY, null), null, false, 0);
+    private final MapStore store = new MapStore();
+    private final SharedUserCache cache = new SharedUserCache(store, SECRET, 60);
+
+    @Test
+    public void testSharedUser() throws Exception {
+        cache.put("rest", authDomain, credentials("alice", "password"), new User("alice", Arrays.asList("role1"), null));
+
+        final User user = cache.get("rest", authDomain, credentials("alice", "password"));
+        Assert.assertEquals("alice", user.getName());
+        Assert.assertEquals(Collections.singleton("role1"), user.getRoles());
+    }
+
+    @Test
+    public void testWrongPasswordMisses() throws Exception {
+        cache.put("rest", authDomain, credentials("alice", "password"), new User("alice"));
+
+        Assert.assertNull(cache.get("rest", authDomain, credentials("alice", "wrong")));
+        Assert.assertNull(cache.get("transport", authDomain, credentials("alice", "password")));
+        Assert.assertNull(cache.get("rest", new AuthDomain(new NoOpAuthenticationBackend(Settings.EMPTY, null), null, false, 1),
+                credentials("alice", "password")));
+    }
+
+    @Test
+    public void testCredentialsWithoutPasswordAreNotShared() throws Exception {
+        cache.put("rest", authDomain, new AuthCredentials("alice", "role1"), new User("alice", Arrays.asList("role1"), null));
+
+        Assert.assertTrue(store.entries.isEmpty());
+        Assert.assertNull(cache.get("rest", authDomain, new AuthCredentials("alice", "role2")));
+    }
+
+    @Test
+    public void testTamperedEntryIsRejected() throws Exception {
+        cache.put("rest", authDomain, credentials("alice", "password"), new User("alice"));
+        cache.put("rest", authDomain, credentials("bob", "password"), new User("bob", Arrays.asList("admin"), null));
+
+        final String aliceKey = keyOf("alice");
+        final SharedAuthenticationCache.Entry alice = store.entries.get(aliceKey);
+        final SharedAuthenticationCache.Entry bob = store.entries.get(keyOf("bob"));
+
+        //roles of another user
+        store.entries.put(aliceKey, new SharedAuthenticationCache.Entry("alice", alice.getExpiresAt(), bob.getUser(), alice.getSignature()));
+        Assert.assertNull(cache.get("rest", authDomain, credentials("alice", "password")));
+
+        //extended expiry
+        store.entries.put(aliceKey, new SharedAuthenticationCache.Entry("alice", alice.getExpiresAt() + 1, alice.getUser(), alice.getSignature()));
+        Assert.assertNull(cache.get("rest", authDomain, credentials("alice", "password")));
+
+        store.entries.put(aliceKey, alice);
+        Assert.assertEquals("alice", cache.get("rest", authDomain, credentials("alice", "password")).getName());
+
+        //signed with another secret
+        Assert.assertNull(new SharedUserCache(store, "other".getBytes(StandardCharsets.UTF_8), 60).get("rest", authDomain,
+                credentials("alice", "password")));
+    }
+
+    @Test
+    public void testExpiredEntryIsIgnored() throws Exception {
+        new SharedUserCache(store, SECRET, 0).put("rest", authDomain, credentials("alice", "password"), new User("alice"));
+        Thread.sleep(5);
+        Assert.assertNull(cache.get("rest", authDomain, credentials("alice", "password")));
+    }
+
+    @Test
+    public void testInvalidateUsers() throws Exception {
+        cache.put("rest", authDomain, credentials("alice", "password"), new User("alice"));
+        cache.put("rest", authDomain, credentials("bob", "password"), new User("bob"));
+
+        cache.invalidateUsers(Collections.singleton("alice"));
+
+        Assert.assertNull(cache.get("rest", authDomain, credentials("alice", "password")));
+        Assert.assertEquals("bob", cache.get("rest", authDomain, credentials("bob", "password")).getName());
+    }
+
+    @Test
+    public void testLocalStoreIsSharedPerCluster() throws Exception {
+        final SharedUserCache node1 = new SharedUserCache(new LocalSharedAuthenticationCache(clusterSettings("shared_a")), SECRET, 60);
+        final SharedUserCache node2 = new SharedUserCache(new LocalSharedAuthenticationCache(clusterSettings("shared_a")), SECRET, 60);
+        final SharedUserCache otherCluster = new SharedUserCache(new LocalSharedAuthenticationCache(clusterSettings("shared_b")), SECRET, 60);
+
+        node1.put("rest", authDomain, credentials("alice", "password"), new User("alice"));
+
+        Assert.assertEquals("alice", node2.get("rest", authDomain, credentials("alice", "password")).getName());
+        Assert.assertNull(otherCluster.get("rest", authDomain, credentials("alice", "password")));
+
+        node2.invalidateAll();
+        Assert.assertNull(node1.get("rest", authDomain, credentials("alice", "password")));
+    }
+
+    private String keyOf(final String username) {
+        return store.entries.entrySet().stream().filter(e -> e.getValue().getUsername().equals(username)).findFirst().get().getKey();
+    }
+
+    private static AuthCredentials credentials(final String username, final String password) {
+        return new AuthCredentials(username, password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Settings clusterSettings(final String clusterName) {
+        return Settings.builder().put("cluster.name", clusterName).build();
+    }
+
+    private static class MapStore implements SharedAuthenticationCache {
+
+        final Map<String, Entry> entries = new HashMap<>();
+
+        @Override
+        public Entry get(final String key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public void put(final String key, final Entry entry) {
+            entries.put(key, entry);
+        }
+
+        @Override
+        public void invalidateUsers(final Set<String> usernames) {
+            entries.values().removeIf(entry -> usernames.contains(entry.getUsername()));
+        }
+
+        @Override
+        public void invalidateAll() {
+            entries.clear();
+        }
+    }
+}
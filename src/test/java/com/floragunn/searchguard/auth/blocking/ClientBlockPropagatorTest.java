@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015-2019 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.floragunn.searchguard.auth.blocking;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.client.support.AbstractClient;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.floragunn.searchguard.action.clientblocks.ClientBlocksRequest;
+import com.floragunn.searchguard.test.AbstractSGUnitTest;
+
+public class ClientBlockPropagatorTest {
+
+    private final RecordingClient client = new RecordingClient();
+
+    @Test
+    public void testFlushSendsOneBatch() throws Exception {
+        final ClientBlockPropagator propagator = propagator(3);
+
+        propagator.addFailure("ip", "10.0.0.1");
+        propagator.addFailure("ip", "10.0.0.1");
+        propagator.addFailure("ip", "10.0.0.2");
+        propagator.addFailure("user", "bob");
+        propagator.addBlock("ip", "10.0.0.1");
+        propagator.addBlock("ip", "10.0.0.1");
+        propagator.flush();
+
+        Assert.assertEquals(1, client.requests.size());
+        final ClientBlocksRequest request = client.requests.get(0);
+        Assert.assertEquals("node_0", request.getOriginNodeId());
+        final Map<String, Integer> ipFailures = new HashMap<>();
+        ipFailures.put("10.0.0.1", 2);
+        ipFailures.put("10.0.0.2", 1);
+        Assert.assertEquals(ipFailures, request.getFailures().get("ip"));
+        Assert.assertEquals(Collections.singletonMap("bob", 1), request.getFailures().get("user"));
+        Assert.assertEquals(Collections.singletonMap("ip", Collections.singleton("10.0.0.1")), request.getBlocks());
+
+        //the next batch only holds what happened after the flush
+        propagator.addFailure("user", "alice");
+        propagator.flush();
+
+        Assert.assertEquals(2, client.requests.size());
+        Assert.assertEquals(Collections.singletonMap("user", Collections.singletonMap("alice", 1)), client.requests.get(1).getFailures());
+        Assert.assertTrue(client.requests.get(1).getBlocks().isEmpty());
+    }
+
+    @Test
+    public void testMaxPendingClients() throws Exception {
+        final ClientBlockPropagator propagator = propagator(3);
+
+        for (int i = 0; i < 10_001; i++) {
+            propagator.addFailure("ip", "client" + i);
+        }
+        //clients already pending are still counted
+        propagator.addFailure("ip", "client0");
+        propagator.addBlock("ip", "client10000");
+        propagator.flush();
+
+        final ClientBlocksRequest request = client.requests.get(0);
+        Assert.assertEquals(10_000, request.getFailures().get("ip").size());
+        Assert.assertFalse(request.getFailures().get("ip").containsKey("client10000"));
+        Assert.assertEquals(2, request.getFailures().get("ip").get("client0").intValue());
+        Assert.assertEquals(Collections.singleton("client10000"), request.getBlocks().get("ip"));
+
+        //the limit applies per batch
+        propagator.addFailure("ip", "client10000");
+        propagator.flush();
+        Assert.assertEquals(Collections.singletonMap("client10000", 1), client.requests.get(1).getFailures().get("ip"));
+    }
+
+    @Test
+    public void testNothingSentOnSingleNode() throws Exception {
+        final ClientBlockPropagator propagator = propagator(1);
+
+        propagator.addFailure("ip", "10.0.0.1");
+        propagator.addBlock("ip", "10.0.0.1");
+        propagator.flush();
+
+        Assert.assertTrue(client.requests.isEmpty());
+    }
+
+    private ClientBlockPropagator propagator(final int nodeCount) {
+        final DiscoveryNodes.Builder nodes = DiscoveryNodes.builder();
+        for (int i = 0; i < nodeCount; i++) {
+            nodes.add(new DiscoveryNode("node_" + i, new TransportAddress(TransportAddress.META_ADDRESS, 9300 + i), Version.CURRENT));
+        }
+        nodes.localNodeId("node_0");
+        final ClusterState state = ClusterState.builder(ClusterName.DEFAULT).nodes(nodes).build();
+
+        final ClusterService clusterService = mock(ClusterService.class);
+        when(clusterService.state()).thenReturn(state);
+        when(clusterService.localNode()).thenReturn(state.nodes().getLocalNode());
+
+        //long interval, the tests flush explicitly
+        return new ClientBlockPropagator(AbstractSGUnitTest.MOCK_POOL, client, clusterService, TimeValue.timeValueHours(1));
+    }
+
+    private static class RecordingClient extends AbstractClient {
+
+        final List<ClientBlocksRequest> requests = new ArrayList<>();
+
+        RecordingClient() {
+            super(Settings.EMPTY, AbstractSGUnitTest.MOCK_POOL);
+        }
+
+        @Override
+        protected <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>> void doExecute(
+                Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+            requests.add((ClientBlocksRequest) request);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015-2019 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.floragunn.searchguard.auth.blocking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import org.elasticsearch.common.network.InetAddresses;
+import org.junit.Test;
+
+public class IpPrefixClientBlockRegistryTest {
+
+    @Test
+    public void simpleTest() throws Exception {
+        IpPrefixClientBlockRegistry registry = new IpPrefixClientBlockRegistry(10000, 100);
+
+        assertFalse(registry.isBlocked(ip("10.0.0.1")));
+        registry.block(ip("10.0.0.1"));
+        assertTrue(registry.isBlocked(ip("10.0.0.1")));
+        assertFalse(registry.isBlocked(ip("10.0.0.2")));
+
+        registry.block(ip("2001:db8::1"));
+        assertTrue(registry.isBlocked(ip("2001:db8::1")));
+        assertFalse(registry.isBlocked(ip("2001:db8::2")));
+    }
+
+    @Test
+    public void cidrTest() throws Exception {
+        IpPrefixClientBlockRegistry registry = new IpPrefixClientBlockRegistry(10000, 100);
+
+        registry.block("192.168.16.0/20");
+        assertTrue(registry.isBlocked(ip("192.168.16.1")));
+        assertTrue(registry.isBlocked(ip("192.168.31.255")));
+        assertFalse(registry.isBlocked(ip("192.168.32.0")));
+        assertFalse(registry.isBlocked(ip("192.168.15.255")));
+
+        registry.block("2001:db8:0:ff00::/72");
+        assertTrue(registry.isBlocked(ip("2001:db8:0:ff00::1")));
+        assertTrue(registry.isBlocked(ip("2001:db8:0:ff00:ff:ffff:ffff:ffff")));
+        assertFalse(registry.isBlocked(ip("2001:db8:0:ff00:100::")));
+
+        registry.block("0.0.0.0/0");
+        assertTrue(registry.isBlocked(ip("8.8.8.8")));
+        assertFalse(registry.isBlocked(ip("2001:db8::1")));
+    }
+
+    @Test
+    public void networkTest() throws Exception {
+        assertEquals(ip("10.1.2.0"), IpPrefixClientBlockRegistry.network(ip("10.1.2.3"), 24));
+        assertEquals(ip("10.1.0.0"), IpPrefixClientBlockRegistry.network(ip("10.1.2.3"), 17));
+        assertEquals(ip("2001:db8::"), IpPrefixClientBlockRegistry.network(ip("2001:db8::1"), 64));
+    }
+
+    @Test
+    public void expiryTest() throws Exception {
+        IpPrefixClientBlockRegistry registry = new IpPrefixClientBlockRegistry(50, 100);
+
+        registry.block(ip("10.0.0.1"));
+        assertTrue(registry.isBlocked(ip("10.0.0.1")));
+        Thread.sleep(55);
+        assertFalse(registry.isBlocked(ip("10.0.0.1")));
+    }
+
+    @Test
+    public void maxEntriesTest() throws Exception {
+        IpPrefixClientBlockRegistry registry = new IpPrefixClientBlockRegistry(50, 3);
+
+        registry.block(ip("10.0.0.1"));
+        registry.block(ip("10.0.0.2"));
+        registry.block(ip("10.0.0.3"));
+        registry.block(ip("10.0.0.4"));
+
+        // existing blocks are kept instead of being evicted
+        assertTrue(registry.isBlocked(ip("10.0.0.1")));
+        assertFalse(registry.isBlocked(ip("10.0.0.4")));
+
+        Thread.sleep(55);
+        registry.block(ip("10.0.0.4"));
+        assertTrue(registry.isBlocked(ip("10.0.0.4")));
+    }
+
+    @Test
+    public void manyEntriesTest() throws Exception {
+        IpPrefixClientBlockRegistry registry = new IpPrefixClientBlockRegistry(10000, 100_000);
+
+        for (int i = 0; i < 50_000; i++) {
+            registry.block(ip("10." + (i >> 16) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF)));
+        }
+
+        for (int i = 0; i < 50_000; i++) {
+            assertTrue(registry.isBlocked(ip("10." + (i >> 16) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF))));
+        }
+
+        assertFalse(registry.isBlocked(ip("10.1.195.80")));
+    }
+
+    private static InetAddress ip(String address) {
+        return InetAddresses.forString(address);
+    }
+}
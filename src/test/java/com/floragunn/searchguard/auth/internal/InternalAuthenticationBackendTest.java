@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015-2019 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.floragunn.searchguard.auth.internal;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+
+import org.bouncycastle.crypto.generators.OpenBSDBCrypt;
+import org.elasticsearch.ElasticsearchSecurityException;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.floragunn.searchguard.configuration.ConfigurationRepository;
+import com.floragunn.searchguard.support.ConfigConstants;
+import com.floragunn.searchguard.user.AuthCredentials;
+import com.floragunn.searchguard.user.User;
+
+public class InternalAuthenticationBackendTest {
+
+    private final ConfigurationRepository configurationRepository = mock(ConfigurationRepository.class);
+    private final InternalAuthenticationBackend backend = new InternalAuthenticationBackend(configurationRepository);
+
+    @Test
+    public void testChangedHashInvalidatesVerifiedPassword() throws Exception {
+        setInternalUsers(Settings.builder().put("alice.hash", hash("secret1")).build());
+
+        Assert.assertEquals("alice", backend.authenticate(credentials("alice", "secret1")).getName());
+        Assert.assertEquals("alice", backend.authenticate(credentials("alice", "secret1")).getName());
+
+        setInternalUsers(Settings.builder().put("alice.hash", hash("secret2")).build());
+
+        assertNotAuthenticated("alice", "secret1");
+        Assert.assertEquals("alice", backend.authenticate(credentials("alice", "secret2")).getName());
+    }
+
+    @Test
+    public void testWrongPasswordIsNeverVerifiedFromCache() throws Exception {
+        setInternalUsers(Settings.builder().put("alice.hash", hash("secret")).put("bob.hash", hash("secret")).build());
+
+        Assert.assertEquals("alice", backend.authenticate(credentials("alice", "secret")).getName());
+
+        assertNotAuthenticated("alice", "wrong");
+        assertNotAuthenticated("alice", "secret ");
+        //same password, but verified for another user only
+        assertNotAuthenticated("carol", "secret");
+        Assert.assertEquals("bob", backend.authenticate(credentials("bob", "secret")).getName());
+        Assert.assertEquals("alice", backend.authenticate(credentials("alice", "secret")).getName());
+    }
+
+    @Test
+    public void testAlternateUsernames() throws Exception {
+        setInternalUsers(Settings.builder().put("alice.hash", hash("secret")).put("alice.username", "alice@example.com").build());
+
+        final User user = backend.authenticate(credentials("alice@example.com", "secret"));
+        Assert.assertEquals("alice@example.com", user.getName());
+        assertNotAuthenticated("alice@example.com", "wrong");
+
+        //the index is rebuilt for a new config
+        setInternalUsers(Settings.builder().put("alice.hash", hash("secret")).put("alice.username", "alice@example.org").build());
+
+        assertNotAuthenticated("alice@example.com", "secret");
+        Assert.assertEquals("alice@example.org", backend.authenticate(credentials("alice@example.org", "secret")).getName());
+        Assert.assertEquals("alice", backend.authenticate(credentials("alice", "secret")).getName());
+    }
+
+    private void setInternalUsers(final Settings internalUsers) {
+        when(configurationRepository.getConfiguration(ConfigConstants.CONFIGNAME_INTERNAL_USERS)).thenReturn(internalUsers);
+    }
+
+    private void assertNotAuthenticated(final String username, final String password) {
+        try {
+            backend.authenticate(credentials(username, password));
+            Assert.fail(username + " must not be authenticated");
+        } catch (ElasticsearchSecurityException e) {
+            //expected
+        }
+    }
+
+    private static AuthCredentials credentials(final String username, final String password) {
+        return new AuthCredentials(username, password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hash(final String password) {
+        return OpenBSDBCrypt.generate(password.toCharArray(), new byte[16], 4);
+    }
+}
@@ -20,6 +20,7 @@ package com.floragunn.searchguard.auth.limiting;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import org.elasticsearch.common.network.InetAddresses;
 import org.elasticsearch.common.settings.Settings;
 import org.junit.Test;
 
@@ -44,4 +45,42 @@ public class AddressBasedRateLimiterTest {
         assertTrue(rateLimiter.isBlocked("a"));
 
     }
+
+    @Test
+    public void prefixTest() throws Exception {
+        Settings settings = Settings.builder().put("allowed_tries", 3).put("ipv4_prefix_length", 24).build();
+
+        AddressBasedRateLimiter rateLimiter = new AddressBasedRateLimiter(settings, null);
+
+        rateLimiter.onAuthFailure(InetAddresses.forString("10.1.1.1"), new AuthCredentials("a", PASSWORD), null);
+        rateLimiter.onAuthFailure(InetAddresses.forString("10.1.1.2"), new AuthCredentials("a", PASSWORD), null);
+        assertFalse(rateLimiter.isBlocked(InetAddresses.forString("10.1.1.1")));
+        rateLimiter.onAuthFailure(InetAddresses.forString("10.1.1.3"), new AuthCredentials("a", PASSWORD), null);
+        assertTrue(rateLimiter.isBlocked(InetAddresses.forString("10.1.1.1")));
+        assertTrue(rateLimiter.isBlocked(InetAddresses.forString("10.1.1.200")));
+        assertFalse(rateLimiter.isBlocked(InetAddresses.forString("10.1.2.1")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidIpv4PrefixLengthTest() throws Exception {
+        new AddressBasedRateLimiter(Settings.builder().put("ipv4_prefix_length", 33).build(), null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidIpv6PrefixLengthTest() throws Exception {
+        new AddressBasedRateLimiter(Settings.builder().put("ipv6_prefix_length", -1).build(), null);
+    }
+
+    @Test
+    public void prefixLengthBoundsTest() throws Exception {
+        Settings settings = Settings.builder().put("allowed_tries", 1).put("ipv4_prefix_length", 0).put("ipv6_prefix_length", 128).build();
+
+        AddressBasedRateLimiter rateLimiter = new AddressBasedRateLimiter(settings, null);
+
+        rateLimiter.onAuthFailure(InetAddresses.forString("10.1.1.1"), new AuthCredentials("a", PASSWORD), null);
+        assertTrue(rateLimiter.isBlocked(InetAddresses.forString("192.168.1.1")));
+        rateLimiter.onAuthFailure(InetAddresses.forString("::1"), new AuthCredentials("a", PASSWORD), null);
+        assertTrue(rateLimiter.isBlocked(InetAddresses.forString("::1")));
+        assertFalse(rateLimiter.isBlocked(InetAddresses.forString("::2")));
+    }
 }
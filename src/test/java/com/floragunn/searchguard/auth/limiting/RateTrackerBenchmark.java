@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015-2019 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.floragunn.searchguard.auth.limiting;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.floragunn.searchguard.util.ratetracking.HeapBasedRateTracker;
+import com.floragunn.searchguard.util.ratetracking.RateTracker;
+import com.floragunn.searchguard.util.ratetracking.SlidingWindowRateTracker;
+
+/**
+ * Compares the rate trackers under contention, either all threads tracking the same client
+ * (credential stuffing against one user) or spread over many clients.
+ * <p/>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.floragunn.searchguard.auth.limiting.RateTrackerBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class RateTrackerBenchmark {
+
+    @Param({ "heap", "sliding_window" })
+    public String tracker;
+
+    @Param({ "1", "10000" })
+    public int clients;
+
+    private RateTracker<Integer> rateTracker;
+
+    @Setup
+    public void setup() {
+        if ("heap".equals(tracker)) {
+            rateTracker = new HeapBasedRateTracker<>(60 * 60 * 1000, 10, 100_000);
+        } else {
+            rateTracker = new SlidingWindowRateTracker<>(60 * 60 * 1000, 10, 100_000, 16);
+        }
+    }
+
+    @Benchmark
+    public boolean track() {
+        return rateTracker.track(clients == 1 ? 0 : ThreadLocalRandom.current().nextInt(clients));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(RateTrackerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015-2019 floragunn GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.floragunn.searchguard.auth.limiting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.floragunn.searchguard.util.ratetracking.SlidingWindowRateTracker;
+
+public class SlidingWindowRateTrackerTest {
+    
+    @Test
+    public void simpleTest() throws Exception {   
+        SlidingWindowRateTracker<String> tracker = new SlidingWindowRateTracker<>(100, 5, 100_000);
+        
+        assertFalse(tracker.track("a"));
+        assertFalse(tracker.track("a"));
+        assertFalse(tracker.track("a"));
+        assertFalse(tracker.track("a"));
+        assertTrue(tracker.track("a"));
+
+    }
+    
+    @Test
+    public void expiryTest() throws Exception {   
+        SlidingWindowRateTracker<String> tracker = new SlidingWindowRateTracker<>(100, 5, 100_000);
+        
+        assertFalse(tracker.track("a"));
+        assertFalse(tracker.track("a"));
+        assertFalse(tracker.track("a"));
+        assertFalse(tracker.track("a"));
+        assertTrue(tracker.track("a"));
+
+        assertFalse(tracker.track("b"));
+        assertFalse(tracker.track("b"));
+        assertFalse(tracker.track("b"));
+        assertFalse(tracker.track("b"));
+        assertTrue(tracker.track("b"));
+        
+        assertFalse(tracker.track("c"));    
+        
+        Thread.sleep(50);
+        
+        assertFalse(tracker.track("c"));   
+        assertFalse(tracker.track("c"));      
+        assertFalse(tracker.track("c"));   
+        
+        Thread.sleep(55); 
+        
+        assertFalse(tracker.track("c"));        
+        assertTrue(tracker.track("c"));        
+
+        assertFalse(tracker.track("a"));     
+        
+        Thread.sleep(55);
+        assertFalse(tracker.track("c"));        
+        assertFalse(tracker.track("c"));        
+        assertTrue(tracker.track("c"));        
+
+        
+    }
+    
+    @Test
+    public void maxTwoTriesTest() throws Exception {   
+        SlidingWindowRateTracker<String> tracker = new SlidingWindowRateTracker<>(100, 2, 100_000);
+        
+        assertFalse(tracker.track("a"));
+        assertTrue(tracker.track("a"));
+        
+        assertFalse(tracker.track("b"));
+        Thread.sleep(50);
+        assertTrue(tracker.track("b"));
+
+        Thread.sleep(55);
+        assertTrue(tracker.track("b"));
+
+        Thread.sleep(105);
+        assertFalse(tracker.track("b"));
+        assertTrue(tracker.track("b"));
+
+    }
+
+    @Test
+    public void concurrentTest() throws Exception {
+        SlidingWindowRateTracker<String> tracker = new SlidingWindowRateTracker<>(60_000, 1000, 100_000, 8);
+        AtomicInteger exceeded = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int k = 0; k < 500; k++) {
+                    if (tracker.track("a")) {
+                        exceeded.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        //4000 tries, the first 999 are allowed
+        assertEquals(4000 - 999, exceeded.get());
+    }
+}
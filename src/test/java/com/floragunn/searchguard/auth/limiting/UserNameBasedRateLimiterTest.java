@@ -42,4 +42,20 @@ public class UserNameBasedRateLimiterTest {
         assertTrue(rateLimiter.isBlocked(InetAddress.getByAddress(new byte[] { 1, 2, 3, 4 })));
 
     }
+
+    @Test
+    public void remoteTest() throws Exception {
+        Settings settings = Settings.builder().put("allowed_tries", 3).build();
+
+        UserNameBasedRateLimiter rateLimiter = new UserNameBasedRateLimiter(settings, null);
+
+        rateLimiter.onRemoteFailures("a", 2);
+        assertFalse(rateLimiter.isBlocked("a"));
+        rateLimiter.onRemoteFailures("a", 1);
+        assertTrue(rateLimiter.isBlocked("a"));
+
+        assertFalse(rateLimiter.isBlocked("b"));
+        rateLimiter.onRemoteBlock("b");
+        assertTrue(rateLimiter.isBlocked("b"));
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.privileges;
+
+import static org.mockito.Mockito.mock;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemRequest;
+import org.elasticsearch.action.bulk.BulkShardRequest;
+import org.elasticsearch.action.delete.DeleteAction;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexAction;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.tasks.TaskId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.floragunn.searchguard.sgconf.ConfigModel.SgRoles;
+import com.google.common.collect.ImmutableSet;
+
+public class BulkDecisionKeyTest {
+
+    private static final TaskId BULK_TASK = new TaskId("node1", 42);
+
+    @Test
+    public void testItemGroups() {
+        final BulkItemGroups indexItems = BulkItemGroups.of(shardRequest("test", 0, new IndexRequest("test", "type1", "1"),
+                new IndexRequest("test", "type1", "2")));
+        final BulkItemGroups mixedItems = BulkItemGroups.of(shardRequest("test", 1, new IndexRequest("test", "type1", "3"),
+                new DeleteRequest("test", "type1", "4")));
+
+        Assert.assertEquals(ImmutableSet.of(IndexAction.NAME), indexItems.getActions());
+        Assert.assertEquals(ImmutableSet.of(IndexAction.NAME, DeleteAction.NAME), mixedItems.getActions());
+        Assert.assertEquals(ImmutableSet.of("type1"), mixedItems.getTypes());
+
+        //another shard of the same index with the same kind of items
+        Assert.assertEquals(indexItems, BulkItemGroups.of(shardRequest("test", 2, new IndexRequest("test", "type1", "5"))));
+    }
+
+    @Test
+    public void testDecisionIsNotSharedAcrossIndicesOrOperations() {
+        final SgRoles sgRoles = mock(SgRoles.class);
+
+        final BulkDecisionKey testIndex = key(sgRoles, shardRequest("test", 0, new IndexRequest("test", "type1", "1")));
+        final BulkDecisionKey testIndexOtherShard = key(sgRoles, shardRequest("test", 3, new IndexRequest("test", "type1", "2")));
+        final BulkDecisionKey testDelete = key(sgRoles, shardRequest("test", 0, new DeleteRequest("test", "type1", "1")));
+        final BulkDecisionKey testMixed = key(sgRoles, shardRequest("test", 0, new IndexRequest("test", "type1", "1"),
+                new DeleteRequest("test", "type1", "2")));
+        final BulkDecisionKey loremIndex = key(sgRoles, shardRequest("lorem", 0, new IndexRequest("lorem", "type1", "1")));
+        final BulkDecisionKey loremDelete = key(sgRoles, shardRequest("lorem", 0, new DeleteRequest("lorem", "type1", "1")));
+
+        Assert.assertEquals(testIndex, testIndexOtherShard);
+        Assert.assertEquals(testIndex.hashCode(), testIndexOtherShard.hashCode());
+
+        Assert.assertNotEquals(testIndex, testDelete);
+        Assert.assertNotEquals(testIndex, testMixed);
+        Assert.assertNotEquals(testDelete, testMixed);
+        Assert.assertNotEquals(testIndex, loremIndex);
+        Assert.assertNotEquals(testDelete, loremDelete);
+        Assert.assertNotEquals(loremIndex, loremDelete);
+    }
+
+    @Test
+    public void testDecisionIsNotSharedAcrossBulksUsersOrRoles() {
+        final SgRoles sgRoles = mock(SgRoles.class);
+        final BulkShardRequest request = shardRequest("test", 0, new IndexRequest("test", "type1", "1"));
+        final BulkItemGroups groups = BulkItemGroups.of(request);
+
+        final BulkDecisionKey key = new BulkDecisionKey(BULK_TASK, "worf", sgRoles, groups, false);
+
+        Assert.assertEquals(key, new BulkDecisionKey(new TaskId("node1", 42), "worf", sgRoles, groups, false));
+        Assert.assertNotEquals(key, new BulkDecisionKey(new TaskId("node1", 43), "worf", sgRoles, groups, false));
+        Assert.assertNotEquals(key, new BulkDecisionKey(BULK_TASK, "spock", sgRoles, groups, false));
+        Assert.assertNotEquals(key, new BulkDecisionKey(BULK_TASK, "worf", sgRoles, groups, true));
+
+        //a roles reload creates new role views, decisions made with the previous roles must not be used anymore
+        final SgRoles reloadedRoles = mock(SgRoles.class);
+        Assert.assertNotEquals(key, new BulkDecisionKey(BULK_TASK, "worf", reloadedRoles, groups, false));
+    }
+
+    private static BulkDecisionKey key(final SgRoles sgRoles, final BulkShardRequest request) {
+        return new BulkDecisionKey(BULK_TASK, "worf", sgRoles, BulkItemGroups.of(request), false);
+    }
+
+    private static BulkShardRequest shardRequest(final String index, final int shard, final DocWriteRequest<?>... items) {
+        final BulkItemRequest[] itemRequests = new BulkItemRequest[items.length];
+        for (int i = 0; i < items.length; i++) {
+            itemRequests[i] = new BulkItemRequest(i, items[i]);
+        }
+        return new BulkShardRequest(new ShardId(index, index + "-uuid", shard), RefreshPolicy.NONE, itemRequests);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015-2018 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.sgconf;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResolvedIndexPatternCacheTest {
+
+    private final ResolvedIndexPatternCache cache = new ResolvedIndexPatternCache();
+    private final AtomicInteger resolutions = new AtomicInteger();
+
+    @Test
+    public void testCachedPerMetaDataVersion() throws Exception {
+        final ClusterState state = state(1);
+
+        Assert.assertArrayEquals(new String[] { "logs-1", "logs-*" }, get("logs-*", state));
+        Assert.assertArrayEquals(new String[] { "logs-1", "logs-*" }, get("logs-*", state));
+        Assert.assertEquals(1, resolutions.get());
+
+        get("logs-*", state(2));
+        Assert.assertEquals(2, resolutions.get());
+    }
+
+    @Test
+    public void testDateMathIsNotCached() throws Exception {
+        final ClusterState state = state(1);
+
+        get("<logs-{now/d}>", state);
+        get("<logs-{now/d}>", state);
+
+        //resolves to another index after the date rolled over, even if the metadata did not change
+        Assert.assertEquals(2, resolutions.get());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testIsDateMath() throws Exception {
+        Assert.assertTrue(ResolvedIndexPatternCache.isDateMath("<logs-{now/d}>"));
+        Assert.assertTrue(ResolvedIndexPatternCache.isDateMath("<logs-${user.name}-{now/M{yyyy.MM}}>"));
+        Assert.assertFalse(ResolvedIndexPatternCache.isDateMath("logs-*"));
+        Assert.assertFalse(ResolvedIndexPatternCache.isDateMath("<logs"));
+    }
+
+    private String[] get(final String pattern, final ClusterState state) {
+        return cache.get(pattern, state, () -> {
+            resolutions.incrementAndGet();
+            return new String[] { "logs-" + state.metaData().version(), pattern };
+        });
+    }
+
+    private static ClusterState state(final long metaDataVersion) {
+        return ClusterState.builder(ClusterName.DEFAULT).metaData(MetaData.builder().version(metaDataVersion)).build();
+    }
+}
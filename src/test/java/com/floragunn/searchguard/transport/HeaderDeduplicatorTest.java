@@ -0,0 +1,314 @@
+/*
+ * Copyright 2015-2017 floragunn GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.floragunn.searchguard.transport;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.Version;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.RemoteTransportException;
+import org.elasticsearch.transport.Transport.Connection;
+import org.elasticsearch.transport.TransportException;
+import org.elasticsearch.transport.TransportInterceptor.AsyncSender;
+import org.elasticsearch.transport.TransportRequest;
+import org.elasticsearch.transport.TransportRequestOptions;
+import org.elasticsearch.transport.TransportResponse;
+import org.elasticsearch.transport.TransportResponseHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.floragunn.searchguard.support.Base64Helper;
+import com.floragunn.searchguard.support.ConfigConstants;
+import com.floragunn.searchguard.support.HeaderCache;
+
+public class HeaderDeduplicatorTest {
+
+    private final DiscoveryNode node = new DiscoveryNode("node1", new TransportAddress(TransportAddress.META_ADDRESS, 9300), Version.CURRENT);
+
+    @Test
+    public void testUnknownDlsReferenceFailsRequest() throws Exception {
+        final String dlsHeader = dlsHeader();
+        final String reference = HeaderCache.reference(dlsHeader);
+        final ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+        threadContext.putHeader(ConfigConstants.SG_DLS_QUERY_HEADER, reference);
+
+        try {
+            HeaderDeduplicator.resolveReferences(threadContext);
+            Assert.fail("unknown DLS reference must fail before the request is dispatched");
+        } catch (ElasticsearchException e) {
+            Assert.assertTrue(HeaderCache.isUnknownReference(e));
+            //this is how the failure arrives at the sending node, which then resends the request in full
+            Assert.assertTrue(HeaderCache.isUnknownReference(new RemoteTransportException("node1", e)));
+        }
+
+        HeaderCache.remember(dlsHeader);
+        HeaderDeduplicator.resolveReferences(threadContext);
+    }
+
+    @Test
+    public void testFullValuesAreNotResolved() throws Exception {
+        final ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+        threadContext.putHeader(ConfigConstants.SG_DLS_QUERY_HEADER, dlsHeader());
+        HeaderDeduplicator.resolveReferences(threadContext);
+    }
+
+    @Test
+    public void testDeduplicate() throws Exception {
+        final HeaderDeduplicator deduplicator = new HeaderDeduplicator(TimeValue.timeValueMinutes(1));
+        final String dlsHeader = dlsHeader();
+        final Map<String, String> headers = new HashMap<>();
+        headers.put(ConfigConstants.SG_DLS_QUERY_HEADER, dlsHeader);
+
+        final Map<String, String> first = deduplicator.deduplicate(node, headers);
+        Assert.assertEquals(dlsHeader, first.get(ConfigConstants.SG_DLS_QUERY_HEADER));
+        Assert.assertEquals(ConfigConstants.SG_DLS_QUERY_HEADER, first.get(ConfigConstants.SG_HEADER_DEDUP_FULL_HEADER));
+        HeaderCache.remember(dlsHeader);
+
+        final Map<String, String> second = deduplicator.deduplicate(node, headers);
+        Assert.assertEquals(HeaderCache.reference(dlsHeader), second.get(ConfigConstants.SG_DLS_QUERY_HEADER));
+        Assert.assertNull(second.get(ConfigConstants.SG_HEADER_DEDUP_FULL_HEADER));
+
+        HeaderDeduplicator.expand(second);
+        Assert.assertEquals(dlsHeader, second.get(ConfigConstants.SG_DLS_QUERY_HEADER));
+
+        deduplicator.forget(node);
+        Assert.assertEquals(dlsHeader, deduplicator.deduplicate(node, headers).get(ConfigConstants.SG_DLS_QUERY_HEADER));
+    }
+
+    @Test
+    public void testReferenceArrivesBeforeFullValue() throws Exception {
+        final HeaderDeduplicator deduplicator = new HeaderDeduplicator(TimeValue.timeValueMinutes(1));
+        final ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+        final ReceivingNode receivingNode = new ReceivingNode(threadContext);
+        final CountingHandler handler = new CountingHandler();
+        final Map<String, String> fullHeaders = new HashMap<>();
+        fullHeaders.put(ConfigConstants.SG_DLS_QUERY_HEADER, dlsHeader());
+
+        //a shard fan-out: the first request carries the full value, the others refer to it
+        for (int i = 0; i < 3; i++) {
+            try (ThreadContext.StoredContext ctx = threadContext.stashContext()) {
+                threadContext.putHeader(deduplicator.deduplicate(node, fullHeaders));
+                receivingNode.sendRequest(receivingNode, "indices:data/read/search[phase/query]", TransportRequest.Empty.INSTANCE,
+                        TransportRequestOptions.EMPTY, new RetryOnUnknownReferenceHandler<>(handler, fullHeaders, deduplicator, threadContext,
+                                receivingNode, receivingNode, "indices:data/read/search[phase/query]", TransportRequest.Empty.INSTANCE,
+                                TransportRequestOptions.EMPTY));
+            }
+        }
+
+        Assert.assertTrue(HeaderCache.isReference(receivingNode.pending.get(1).headers.get(ConfigConstants.SG_DLS_QUERY_HEADER)));
+        Assert.assertTrue(HeaderCache.isReference(receivingNode.pending.get(2).headers.get(ConfigConstants.SG_DLS_QUERY_HEADER)));
+
+        //both references overtake the full value on other connections and fail at about the same time
+        receivingNode.deliver(2);
+        receivingNode.deliver(1);
+
+        Assert.assertEquals(3, receivingNode.pending.size());
+        Assert.assertEquals(0, handler.responses);
+        Assert.assertEquals(0, handler.failures);
+
+        //the retries carry the full value only, never a reference again
+        for (final Sent retry : receivingNode.pending.subList(1, 3)) {
+            Assert.assertEquals(fullHeaders.get(ConfigConstants.SG_DLS_QUERY_HEADER), retry.headers.get(ConfigConstants.SG_DLS_QUERY_HEADER));
+            Assert.assertEquals(ConfigConstants.SG_DLS_QUERY_HEADER, retry.headers.get(ConfigConstants.SG_HEADER_DEDUP_FULL_HEADER));
+        }
+
+        //the retries arrive before the original full value
+        receivingNode.deliver(2);
+        receivingNode.deliver(1);
+        receivingNode.deliver(0);
+
+        Assert.assertEquals(0, receivingNode.pending.size());
+        Assert.assertEquals(3, handler.responses);
+        Assert.assertEquals(0, handler.failures);
+    }
+
+    @Test
+    public void testConcurrentRetriesSendFullValues() throws Exception {
+        final HeaderDeduplicator deduplicator = new HeaderDeduplicator(TimeValue.timeValueMinutes(1));
+        final ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+        final ReceivingNode receivingNode = new ReceivingNode(threadContext);
+        final Map<String, String> fullHeaders = new HashMap<>();
+        fullHeaders.put(ConfigConstants.SG_DLS_QUERY_HEADER, dlsHeader());
+        final String reference = HeaderCache.reference(fullHeaders.get(ConfigConstants.SG_DLS_QUERY_HEADER));
+        deduplicator.deduplicate(node, fullHeaders);
+
+        final int threads = 8;
+        final int retriesPerThread = 200;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<?>> futures = new ArrayList<>();
+
+        //many requests referring to the value fail at about the same time
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                barrier.await();
+                for (int i = 0; i < retriesPerThread; i++) {
+                    new RetryOnUnknownReferenceHandler<>(new CountingHandler(), fullHeaders, deduplicator, threadContext,
+                            receivingNode, receivingNode, "indices:data/read/search[phase/query]", TransportRequest.Empty.INSTANCE,
+                            TransportRequestOptions.EMPTY).handleException(unknownReference(reference));
+                }
+                return null;
+            }));
+        }
+
+        for (final Future<?> future : futures) {
+            future.get();
+        }
+
+        executor.shutdown();
+
+        Assert.assertEquals(threads * retriesPerThread, receivingNode.pending.size());
+
+        for (final Sent retry : receivingNode.pending) {
+            Assert.assertEquals(fullHeaders.get(ConfigConstants.SG_DLS_QUERY_HEADER), retry.headers.get(ConfigConstants.SG_DLS_QUERY_HEADER));
+        }
+    }
+
+    private static TransportException unknownReference(final String reference) {
+        try {
+            HeaderCache.deserializeObject(reference);
+        } catch (ElasticsearchException e) {
+            return new RemoteTransportException("node1", e);
+        }
+        throw new IllegalStateException("reference must be unknown");
+    }
+
+    private static String dlsHeader() {
+        final Map<String, Set<String>> dls = new HashMap<>();
+        dls.put("index*", new HashSet<>(Arrays.asList("{\"term\": {\"dept\": \"" + UUID.randomUUID() + "\"}}")));
+        dls.put("logs-*", new HashSet<>(Arrays.asList("{\"bool\": {\"must_not\": {\"term\": {\"level\": \"debug\"}}}}")));
+        return Base64Helper.serializeObject((Serializable) dls);
+    }
+
+    private static class Sent {
+        private final Map<String, String> headers;
+        private final TransportResponseHandler<?> handler;
+
+        private Sent(Map<String, String> headers, TransportResponseHandler<?> handler) {
+            this.headers = headers;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * Collects the sent requests and handles them in the order chosen by the test, like the receiving node
+     * does for requests arriving over several connections
+     */
+    private class ReceivingNode implements AsyncSender, Connection {
+
+        private final ThreadContext senderContext;
+        private final List<Sent> pending = Collections.synchronizedList(new ArrayList<>());
+
+        private ReceivingNode(ThreadContext senderContext) {
+            this.senderContext = senderContext;
+        }
+
+        @Override
+        public <T extends TransportResponse> void sendRequest(Connection connection, String action, TransportRequest request,
+                TransportRequestOptions options, TransportResponseHandler<T> handler) {
+            pending.add(new Sent(new HashMap<>(senderContext.getHeaders()), handler));
+        }
+
+        @SuppressWarnings("unchecked")
+        private void deliver(int index) {
+            final Sent sent = pending.remove(index);
+            final TransportResponseHandler<TransportResponse> handler = (TransportResponseHandler<TransportResponse>) sent.handler;
+            final ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+            threadContext.putHeader(sent.headers);
+
+            try {
+                HeaderDeduplicator.received(threadContext);
+            } catch (ElasticsearchException e) {
+                handler.handleException(new RemoteTransportException(node.getName(), e));
+                return;
+            }
+
+            handler.handleResponse(TransportResponse.Empty.INSTANCE);
+        }
+
+        @Override
+        public DiscoveryNode getNode() {
+            return node;
+        }
+
+        @Override
+        public void sendRequest(long requestId, String action, TransportRequest request, TransportRequestOptions options) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addCloseListener(ActionListener<Void> listener) {
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class CountingHandler implements TransportResponseHandler<TransportResponse.Empty> {
+
+        private int responses;
+        private int failures;
+
+        @Override
+        public TransportResponse.Empty read(StreamInput in) {
+            return TransportResponse.Empty.INSTANCE;
+        }
+
+        @Override
+        public void handleResponse(TransportResponse.Empty response) {
+            responses++;
+        }
+
+        @Override
+        public void handleException(TransportException exp) {
+            failures++;
+        }
+
+        @Override
+        public String executor() {
+            return ThreadPool.Names.SAME;
+        }
+    }
+}